@@ -1,24 +1,52 @@
 package api;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import lucene.IActionQueue;
+import lucene.IBulkBuilder;
 import lucene.IIndex;
 import lucene.IIndexFactory;
+import lucene.action.AckMode;
 import lucene.action.BaseAction;
+import lucene.action.BulkIndexAction;
 import lucene.spec.FieldSpec;
 import lucene.spec.IndexSpec;
+import lucene.spec.MaintenancePolicy;
 
 import org.apache.commons.lang3.StringUtils;
 
 import play.Logger;
 import util.IndexException;
 import util.IndexUtils;
+import util.QueueFullException;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.ddth.commons.utils.DPathUtils;
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * High level index APIs.
@@ -49,14 +77,194 @@ public class IndexApi {
         return this;
     }
 
+    private long ackTimeoutMs = 30000;
+
+    public long getAckTimeoutMs() {
+        return ackTimeoutMs;
+    }
+
+    /**
+     * Default max time to wait for a write request to be acknowledged (when
+     * ack mode is other than {@code queued}).
+     * 
+     * @param ackTimeoutMs
+     * @return
+     */
+    public IndexApi setAckTimeoutMs(long ackTimeoutMs) {
+        this.ackTimeoutMs = ackTimeoutMs;
+        return this;
+    }
+
+    private int bulkBatchSize = 1000;
+
+    public int getBulkBatchSize() {
+        return bulkBatchSize;
+    }
+
+    /**
+     * Number of documents per batch handed to the write path by the streaming
+     * bulk API.
+     * 
+     * @param bulkBatchSize
+     * @return
+     */
+    public IndexApi setBulkBatchSize(int bulkBatchSize) {
+        this.bulkBatchSize = bulkBatchSize;
+        return this;
+    }
+
+    private String bulkBuildTempDir = System.getProperty("java.io.tmpdir");
+    private int bulkBuildThreads = 0;
+    private double bulkBuildRamBufferMB = 256;
+
+    public String getBulkBuildTempDir() {
+        return bulkBuildTempDir;
+    }
+
+    /**
+     * Local directory to store temporary content of offline bulk builds.
+     * 
+     * @param bulkBuildTempDir
+     * @return
+     */
+    public IndexApi setBulkBuildTempDir(String bulkBuildTempDir) {
+        this.bulkBuildTempDir = bulkBuildTempDir;
+        return this;
+    }
+
+    public int getBulkBuildThreads() {
+        return bulkBuildThreads;
+    }
+
+    /**
+     * Default number of parallel builders of offline bulk builds.
+     * 
+     * @param bulkBuildThreads
+     *            value less than 1 means "number of available processors"
+     * @return
+     */
+    public IndexApi setBulkBuildThreads(int bulkBuildThreads) {
+        this.bulkBuildThreads = bulkBuildThreads;
+        return this;
+    }
+
+    public double getBulkBuildRamBufferMB() {
+        return bulkBuildRamBufferMB;
+    }
+
+    /**
+     * RAM buffer size (MB) of each parallel builder of offline bulk builds.
+     * 
+     * @param bulkBuildRamBufferMB
+     * @return
+     */
+    public IndexApi setBulkBuildRamBufferMB(double bulkBuildRamBufferMB) {
+        this.bulkBuildRamBufferMB = bulkBuildRamBufferMB;
+        return this;
+    }
+
+    private long bulkBuildIdleTimeoutMs = 600000;
+
+    public long getBulkBuildIdleTimeoutMs() {
+        return bulkBuildIdleTimeoutMs;
+    }
+
+    /**
+     * Max idle time (ms) of an offline bulk build sent in several requests,
+     * after which it is aborted.
+     * 
+     * @param bulkBuildIdleTimeoutMs
+     * @return
+     */
+    public IndexApi setBulkBuildIdleTimeoutMs(long bulkBuildIdleTimeoutMs) {
+        this.bulkBuildIdleTimeoutMs = bulkBuildIdleTimeoutMs;
+        return this;
+    }
+
+    private boolean parallelApply = false;
+
+    public boolean isParallelApply() {
+        return parallelApply;
+    }
+
+    /**
+     * Enables intra-index parallel apply: actions of the same index that are
+     * partitionable (see {@link IIndex#getPartitionKey(BaseAction)}) are
+     * partitioned among update workers by key, so that they are performed
+     * concurrently while actions with the same key stay in order; a batch is
+     * keyed by all of its document ids (see
+     * {@link IIndex#getPartitionKeys(BulkIndexAction)}). Other actions are
+     * performed after, and before, all actions of their index. Actions that
+     * have to wait are held back per index, the dispatch of other indices'
+     * actions is never delayed.
+     * 
+     * @param parallelApply
+     * @return
+     */
+    public IndexApi setParallelApply(boolean parallelApply) {
+        this.parallelApply = parallelApply;
+        return this;
+    }
+
+    private int numUpdateWorkers = Runtime.getRuntime().availableProcessors();
+
+    public int getNumUpdateWorkers() {
+        return numUpdateWorkers;
+    }
+
+    /**
+     * Number of update workers. Actions are partitioned among workers by
+     * index name, so different indices are updated in parallel while actions
+     * of the same index are still performed in order.
+     * 
+     * @param numUpdateWorkers
+     *            value less than 1 means "number of available processors"
+     * @return
+     */
+    public IndexApi setNumUpdateWorkers(int numUpdateWorkers) {
+        this.numUpdateWorkers = numUpdateWorkers;
+        return this;
+    }
+
+    private long shutdownTimeoutMs = 30000;
+
+    public long getShutdownTimeoutMs() {
+        return shutdownTimeoutMs;
+    }
+
+    /**
+     * Max time to wait, on shutdown, for update workers to perform the
+     * actions they have already been dispatched.
+     * 
+     * @param shutdownTimeoutMs
+     * @return
+     */
+    public IndexApi setShutdownTimeoutMs(long shutdownTimeoutMs) {
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        return this;
+    }
+
     /**
      * Init method.
      * 
      * @return
      */
     public IndexApi init() {
-        updateThread = new UpdateThread();
-        updateThread.start();
+        int numWorkers = numUpdateWorkers > 0 ? numUpdateWorkers : Runtime.getRuntime()
+                .availableProcessors();
+        updateWorkers = new UpdateWorker[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+            updateWorkers[i] = new UpdateWorker(i);
+            updateWorkers[i].start();
+        }
+        dispatchThread = new DispatchThread();
+        dispatchThread.start();
+
+        try {
+            indexFactory.recoverIndices(actionQueue);
+        } catch (Exception e) {
+            Logger.error("Error while recovering indices from translog: " + e.getMessage(), e);
+        }
         return this;
     }
 
@@ -64,25 +272,253 @@ public class IndexApi {
      * Destroy method.
      */
     public void destroy() {
-        if (updateThread != null) {
+        if (dispatchThread != null) {
+            // the dispatcher exits within a queue poll, workers must not stop
+            // before it has dispatched its last action
+            dispatchThread.stopExecution();
             try {
-                updateThread.stopExecution();
-            } catch (Exception e) {
-                // EMPTY
-            } finally {
-                updateThread = null;
+                dispatchThread.join(shutdownTimeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
+            dispatchThread = null;
         }
+        if (updateWorkers != null) {
+            // workers are not interrupted (an interrupt during IO closes the
+            // index's file channels), they perform their pending actions and
+            // exit
+            for (UpdateWorker worker : updateWorkers) {
+                worker.stopExecution();
+            }
+            long deadline = System.currentTimeMillis() + shutdownTimeoutMs;
+            for (UpdateWorker worker : updateWorkers) {
+                try {
+                    worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            for (UpdateWorker worker : updateWorkers) {
+                int backlog = worker.backlog();
+                if (worker.isAlive() && backlog > 0) {
+                    Logger.warn("[" + worker.getName() + "] still has " + backlog
+                            + " action(s) to perform after " + shutdownTimeoutMs + "ms");
+                }
+            }
+            updateWorkers = null;
+        }
+        synchronized (openBuilds) {
+            for (OpenBuild build : openBuilds.values()) {
+                build.builder.abort();
+            }
+            openBuilds.clear();
+        }
+    }
+
+    private DispatchThread dispatchThread;
+    private UpdateWorker[] updateWorkers;
+
+    /**
+     * Actions of an index being performed by update workers, and actions held
+     * back until they can be performed without breaking the order of the
+     * index's actions (parallel apply mode only).
+     */
+    private final static class IndexLane {
+        private boolean barrier = false;
+        /* in-flight actions, and update workers performing keys of in-flight actions */
+        private Map<BaseAction, Dispatch> inFlight = new IdentityHashMap<BaseAction, Dispatch>();
+        private Map<String, KeyOwner> keyOwners = new HashMap<String, KeyOwner>();
+        private LinkedList<Dispatch> held = new LinkedList<Dispatch>();
+    }
+
+    private final static class KeyOwner {
+        private final int worker;
+        private int numActions = 0;
+
+        private KeyOwner(int worker) {
+            this.worker = worker;
+        }
+    }
+
+    /**
+     * An action to dispatch, with the keys it touches ({@code null} for a
+     * barrier).
+     */
+    private final static class Dispatch {
+        private final BaseAction action;
+        private final Collection<String> keys;
+
+        private Dispatch(BaseAction action, Collection<String> keys) {
+            this.action = action;
+            this.keys = keys;
+        }
+    }
+
+    private ConcurrentMap<String, IndexLane> indexLanes =
+            new ConcurrentHashMap<String, IndexLane>();
+
+    /* number of held actions, update workers do not exit until they are dispatched */
+    private AtomicInteger numHeldActions = new AtomicInteger(0);
+
+    private IndexLane getIndexLane(String indexName) {
+        IndexLane result = indexLanes.get(indexName);
+        if (result == null) {
+            IndexLane existing = indexLanes.putIfAbsent(indexName, result = new IndexLane());
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result;
     }
 
-    private UpdateThread updateThread;
+    private int workerOf(String indexName) {
+        return (indexName.hashCode() & 0x7FFFFFFF) % updateWorkers.length;
+    }
 
-    private final class UpdateThread extends Thread {
-        private boolean running = true;
+    /**
+     * Computes keys of the documents an action touches (see
+     * {@link IIndex#getPartitionKey(BaseAction)} and
+     * {@link IIndex#getPartitionKeys(BulkIndexAction)}).
+     * 
+     * @param action
+     * @return {@code null} if the action must be performed in order with all
+     *         other actions of its index
+     * @throws IOException
+     */
+    private Collection<String> partitionKeysOf(BaseAction action) throws IOException {
+        IIndex index = indexFactory.createIndex(IndexSpec.newInstance(action.indexName()),
+                actionQueue);
+        if (index == null) {
+            return null;
+        }
+        String key = index.getPartitionKey(action);
+        if (key != null) {
+            return Collections.singleton(key);
+        }
+        List<String> keys = action instanceof BulkIndexAction ? index
+                .getPartitionKeys((BulkIndexAction) action) : null;
+        if (keys == null) {
+            return null;
+        }
+        Set<String> result = new HashSet<String>(keys);
+        // documents without key do not replace existing ones
+        result.remove(null);
+        return result;
+    }
+
+    /**
+     * Dispatches an action to an update worker if it does not break the order
+     * of its index's actions, must be called while holding the lane's monitor.
+     * 
+     * <p>
+     * A barrier waits for all in-flight actions of its index, other actions
+     * wait for an in-flight barrier. An action that touches a key of in-flight
+     * actions goes to the update worker performing them (so that they stay in
+     * order), it waits if the keys it touches are being performed by more than
+     * one update worker. Other actions go to the least loaded update worker.
+     * </p>
+     * 
+     * @return {@code false} if the action must be held back
+     */
+    private boolean tryDispatch(IndexLane lane, Dispatch dispatch) {
+        if (lane.barrier || (dispatch.keys == null && !lane.inFlight.isEmpty())) {
+            return false;
+        }
+        int worker = -1;
+        if (dispatch.keys == null) {
+            worker = workerOf(dispatch.action.indexName());
+        } else {
+            for (String key : dispatch.keys) {
+                KeyOwner owner = lane.keyOwners.get(key);
+                if (owner != null) {
+                    if (worker >= 0 && worker != owner.worker) {
+                        return false;
+                    }
+                    worker = owner.worker;
+                }
+            }
+            if (worker < 0) {
+                worker = 0;
+                for (int i = 1; i < updateWorkers.length; i++) {
+                    if (updateWorkers[i].load() < updateWorkers[worker].load()) {
+                        worker = i;
+                    }
+                }
+            }
+            for (String key : dispatch.keys) {
+                KeyOwner owner = lane.keyOwners.get(key);
+                if (owner == null) {
+                    lane.keyOwners.put(key, owner = new KeyOwner(worker));
+                }
+                owner.numActions++;
+            }
+        }
+        lane.barrier = dispatch.keys == null;
+        lane.inFlight.put(dispatch.action, dispatch);
+        updateWorkers[worker].dispatch(dispatch.action);
+        return true;
+    }
+
+    /**
+     * Dispatches an action to update workers, never blocks: in parallel apply
+     * mode, an action that cannot be performed yet is held back in its
+     * index's lane (along with all actions of the index that come after it)
+     * and is dispatched when in-flight actions are done.
+     * 
+     * @param action
+     * @throws IOException
+     */
+    private void dispatch(BaseAction action) throws IOException {
+        if (!parallelApply) {
+            updateWorkers[workerOf(action.indexName())].dispatch(action);
+            return;
+        }
+        Dispatch dispatch = new Dispatch(action, partitionKeysOf(action));
+        IndexLane lane = getIndexLane(action.indexName());
+        synchronized (lane) {
+            if (!lane.held.isEmpty() || !tryDispatch(lane, dispatch)) {
+                numHeldActions.incrementAndGet();
+                lane.held.add(dispatch);
+            }
+        }
+    }
+
+    private void onActionDone(BaseAction action) {
+        if (parallelApply) {
+            IndexLane lane = getIndexLane(action.indexName());
+            synchronized (lane) {
+                Dispatch dispatch = lane.inFlight.remove(action);
+                if (dispatch != null && dispatch.keys != null) {
+                    for (String key : dispatch.keys) {
+                        KeyOwner owner = lane.keyOwners.get(key);
+                        if (owner != null && --owner.numActions <= 0) {
+                            lane.keyOwners.remove(key);
+                        }
+                    }
+                }
+                if (lane.inFlight.isEmpty()) {
+                    lane.barrier = false;
+                }
+                while (!lane.held.isEmpty() && tryDispatch(lane, lane.held.getFirst())) {
+                    lane.held.removeFirst();
+                    numHeldActions.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes actions from the action queue and dispatches them to update
+     * workers, partitioned by index name (and by document id in parallel
+     * apply mode).
+     */
+    private final class DispatchThread extends Thread {
+        private volatile boolean running = true;
         private IActionQueue actionQueue;
 
-        public UpdateThread() {
-            super("UpdateThread");
+        public DispatchThread() {
+            super("UpdateDispatchThread");
             actionQueue = getActionQueue();
             setDaemon(true);
         }
@@ -92,29 +528,178 @@ public class IndexApi {
         }
 
         public void run() {
-            while (running && !isInterrupted()) {
+            while (running && !isInterrupted() && actionQueue != null) {
                 try {
-                    BaseAction action = null;
-                    do {
-                        action = actionQueue != null ? actionQueue.take() : null;
-                        if (action != null) {
-                            final String indexName = action.indexName();
-                            IIndex index = createIndex(indexName, null);
-                            if (index != null) {
-                                index.performAction(action);
-                            } else {
-                                Logger.warn("Cannot create instance of index [" + indexName
-                                        + "] to perform async-action.");
-                            }
-                        }
-                    } while (action != null);
-                    Thread.sleep(1);
+                    BaseAction action = actionQueue.take(1000, TimeUnit.MILLISECONDS);
+                    if (action != null) {
+                        dispatch(action);
+                    }
+                } catch (InterruptedException e) {
+                    break;
                 } catch (Exception e) {
+                    Logger.warn(e.getMessage(), e);
                 }
             }
         }
     }
 
+    /**
+     * Performs actions assigned to its partition, in order.
+     * 
+     * <p>
+     * Dispatched actions are buffered without limit: they have been taken
+     * from the action queue but are not finished yet, so they still count
+     * toward the queue's capacity (producers get rejected instead). On stop,
+     * the worker performs the actions left in its buffer before exiting.
+     * </p>
+     */
+    private final class UpdateWorker extends Thread {
+        private volatile boolean running = true;
+        private BlockingQueue<BaseAction> actions = new LinkedBlockingQueue<BaseAction>();
+        private AtomicInteger load = new AtomicInteger(0);
+
+        public UpdateWorker(int id) {
+            super("UpdateWorker-" + id);
+            setDaemon(true);
+        }
+
+        public void stopExecution() {
+            this.running = false;
+        }
+
+        /**
+         * Dispatches an action to this worker, never blocks.
+         * 
+         * @param action
+         */
+        public void dispatch(BaseAction action) {
+            load.incrementAndGet();
+            actions.offer(action);
+        }
+
+        public int backlog() {
+            return actions.size();
+        }
+
+        /**
+         * Number of dispatched actions that have not been performed yet.
+         * 
+         * @return
+         */
+        public int load() {
+            return load.get();
+        }
+
+        public void run() {
+            while (true) {
+                BaseAction action;
+                try {
+                    action = actions.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (action == null) {
+                    if (!running && numHeldActions.get() == 0) {
+                        break;
+                    }
+                    continue;
+                }
+                // the index settles a performed action with the queue (see
+                // IIndex.performQueuedAction)
+                boolean settled = false;
+                try {
+                    final String indexName = action.indexName();
+                    // no spec update here, just get the (cached) index instance
+                    IIndex index = indexFactory.createIndex(IndexSpec.newInstance(indexName),
+                            actionQueue);
+                    if (index != null) {
+                        settled = true;
+                        index.performQueuedAction(action);
+                    } else {
+                        Logger.warn("Cannot create instance of index [" + indexName
+                                + "] to perform async-action.");
+                    }
+                } catch (Exception e) {
+                    Logger.warn(e.getMessage(), e);
+                } finally {
+                    if (!settled && actionQueue != null) {
+                        actionQueue.finish(action);
+                    }
+                    load.decrementAndGet();
+                    onActionDone(action);
+                }
+            }
+        }
+    }
+
+    /*----------------------------------------------------------------------*/
+
+    public final static String PARAM_ACK = "ack";
+    public final static String PARAM_ACK_TIMEOUT = "ack_timeout";
+
+    /**
+     * Parses ack mode of a write request, default is {@link AckMode#QUEUED}.
+     * 
+     * @param requestData
+     * @return
+     * @throws IndexException
+     */
+    public static AckMode parseAckMode(Map<String, Object> requestData) throws IndexException {
+        String ack = DPathUtils.getValue(requestData, PARAM_ACK, String.class);
+        try {
+            return AckMode.parse(ack, AckMode.QUEUED);
+        } catch (IllegalArgumentException e) {
+            throw new IndexException(400, "Invalid ack mode [" + ack
+                    + "], expected one of queued, applied, durable or visible");
+        }
+    }
+
+    /**
+     * Waits for a write request to be acknowledged.
+     * 
+     * @param future
+     * @param requestData
+     * @return the action's result
+     * @throws IndexException
+     */
+    private boolean waitForAck(ListenableFuture<Boolean> future, Map<String, Object> requestData)
+            throws IndexException {
+        return waitForAck(future, getAckTimeoutMs(requestData));
+    }
+
+    private long getAckTimeoutMs(Map<String, Object> requestData) {
+        Long timeout = DPathUtils.getValue(requestData, PARAM_ACK_TIMEOUT, Long.class);
+        return timeout != null && timeout.longValue() > 0 ? timeout.longValue() : ackTimeoutMs;
+    }
+
+    private boolean waitForAck(ListenableFuture<Boolean> future, long timeoutMs)
+            throws IndexException {
+        Boolean result = getAckResult(future, timeoutMs);
+        return result != null && result.booleanValue();
+    }
+
+    /**
+     * Waits for a write request to be acknowledged and gets its result.
+     */
+    private <T> T getAckResult(ListenableFuture<T> future, long timeoutMs) throws IndexException {
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IndexException(504, "Request has been accepted but not acknowledged after "
+                    + timeoutMs + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexException(500, "Interrupted while waiting for acknowledgement");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IndexException) {
+                throw (IndexException) cause;
+            }
+            throw new IndexException(cause != null ? cause.getMessage() : e.getMessage(),
+                    cause != null ? cause : e);
+        }
+    }
+
     /*----------------------------------------------------------------------*/
     /**
      * <pre>
@@ -124,8 +709,15 @@ public class IndexApi {
      *   "secret": "authkey",
      *   "fields": {
      *     "field_name_1": {"type": "id, or string, or long", "store" (optional): true/false, "index" (optional): true/false},
-     *     "field_name_2": {"type": "id, or string, or long", "store" (optional): true/false, "index" (optional): true/false}
+     *     "field_name_2": {"type": "id, or string, or long", "store" (optional): true/false, "index" (optional): true/false},
+     *     "field_name_3": {"type": "long", "docvalues": true},
+     *     "field_name_4": {"type": "string", "norms" (optional): true/false, "index_options" (optional): "docs, or freqs, or positions, or offsets", "term_vectors" (optional): "no, or yes, or with_positions, or with_offsets, or with_positions_offsets"},
+     *     "field_name_5": {"type": "long", "precision_step" (optional): 16}
      *   },
+     *   "commit_policy" (optional): {"refresh_interval_ms": 1000, "max_actions": 10000, "max_buffered_bytes": 8388608, "max_interval_ms": 30000, "adaptive": true},
+     *   "maintenance" (optional): {"deletes_pct_threshold": 0, "window": "01:00-05:00", "max_segments": 0, "io_mb_per_sec": 20, "check_interval_ms": 60000},
+     *   "tuning" (optional): {"profile": "default, or write_heavy, or read_mostly", "ram_buffer_mb": 16, "max_buffered_docs": -1, "max_merged_segment_mb": 5120, "floor_segment_mb": 2, "segments_per_tier": 10, "max_merge_at_once": 10, "merge_threads": 0, "compound_file": true},
+     *   "codec" (optional): {"stored_fields": "best_speed, or best_compression", "postings_formats": {"field_name": "Lucene50"}, "doc_values_formats": {"field_name": "Lucene50"}},
      *   "override" (optional): true/false
      * }
      * Output:
@@ -133,6 +725,18 @@ public class IndexApi {
      * Note:
      * - if "type" is not provided, default "string" type will be used.
      * - existing fields will not be changed, unless "override" is true.
+     * - "docvalues" (long fields only): the field is stored as a numeric doc value (not indexed, not stored), its value
+     *   can be updated in place without re-indexing the document, see "update" API.
+     * - "norms" (string fields, default true): false saves one byte per document per field, scoring ignores field length.
+     * - "index_options": "docs" only matches (no scoring by term frequency, no phrase queries), "freqs" no phrase queries,
+     *   "positions" (default for string fields), "offsets" also indexes character offsets (e.g. for highlighting).
+     * - "precision_step" (long/double fields, default 16): a larger step indexes fewer terms per value (smaller index,
+     *   faster indexing) but makes range queries slower; range queries must use the same step.
+     * - "commit_policy": searches see changes after each refresh, changes are committed (made durable) when a threshold is reached.
+     * - "maintenance": merges away deleted documents in the off-peak window and/or when the deleted documents ratio reaches the threshold.
+     * - "codec": "best_compression" for indices dominated by large stored text, "best_speed" (default) for faster
+     *   retrieval; formats are looked up by name on the classpath. Applies to new segments once the index is reopened.
+     * - "tuning": index writer settings; a profile's settings can be overridden one by one. Applied to a running index without reopening it (use "override": true to change an existing index's tuning).
      * </pre>
      */
     /*----------------------------------------------------------------------*/
@@ -170,6 +774,11 @@ public class IndexApi {
         }
 
         IndexSpec indexSpec = IndexSpec.newInstance(indexName, requestData);
+        try {
+            indexSpec.codec().validate();
+        } catch (IllegalArgumentException e) {
+            throw new IndexException(400, e.getMessage());
+        }
         Boolean override = DPathUtils.getValue(requestData, "override", Boolean.class);
         return createIndex(indexSpec, override != null ? override.booleanValue() : false);
     }
@@ -196,11 +805,15 @@ public class IndexApi {
      * Input:
      * {
      *   "secret": "authkey",
+     *   "ack" (optional): "queued" (default), "applied", "durable" or "visible",
+     *   "ack_timeout" (optional): max milliseconds to wait for ack,
      *   "docs": [
      *     {
      *       "field_name_1": (string field) "value for this field",
      *       "field_name_2": (id field) "value",
-     *       "field_name_3": (long field) 12345678
+     *       "field_name_3": (long field) 12345678,
+     *       "field_name_4": (pre-tokenized string field) {"value" (optional): "stored value", "tokens": ["term", {"term": "term", "position_increment": 1, "start_offset": 0, "end_offset": 4}, ...]},
+     *       "_version" (optional): external version, a non-negative long
      *     },
      *     {
      *       2nd document
@@ -209,53 +822,540 @@ public class IndexApi {
      *   ]
      * }
      * Output:
-     * {"status":200/400/403/500,"message":"successful or failed message"}
+     * {"status":200/400/403/500,"message":"successful or failed message","num_docs":number of documents scheduled,
+     *  "indexed":number of documents indexed, "failed":[{"index":position of the document in "docs","error":"message"}, ...]}
+     * Note:
+     * - index will be automatically created if not exist,
+     * - field's type will be automatically determined based on field's value,
+     * - error if field's new value's type does not match existing one,
+     * - "ack": "queued" returns as soon as documents are queued, "applied" waits until they are indexed,
+     *   "durable" until they survive a crash, "visible" until they are searchable (next refresh),
+     * - status 504 if not acknowledged within "ack_timeout" (documents are still being processed),
+     * - "_version": a document (with a single id field) whose version is not greater than the current version of the
+     *   same id is discarded; "_version" is returned with search results.
+     * - pre-tokenized string fields are indexed from the supplied tokens without analysis: terms must already be
+     *   normalized the way queries are analyzed (lower-cased); "value" (default: terms joined by spaces) is the stored value.
+     * - "indexed" and "failed" are only returned if "ack" is not "queued": documents that cannot be indexed do not fail
+     *   the rest of the request, they are reported in "failed".
+     * </pre>
+     */
+    /*----------------------------------------------------------------------*/
+    /**
+     * API: Indexes document(s).
+     * 
+     * @param indexName
+     * @param requestData
+     * @return {@code num_docs} (number of documents have been scheduled for
+     *         indexing), and {@code indexed} and {@code failed} if the request
+     *         waits for acknowledgement
+     * @throws IndexException
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> indexDocuments(String indexName, Map<String, Object> requestData)
+            throws IndexException, IOException {
+        // TODO verify secret
+
+        if (!IndexUtils.isValidName(indexName)) {
+            throw new IndexException(400, "InvalidIndexNameException: Invalid index name ["
+                    + indexName + "]");
+        }
+
+        // validate request data
+        List<Map<String, Object>> docs = DPathUtils.getValue(requestData, "docs", List.class);
+        if (docs == null || docs.size() == 0) {
+            final String logMsg = "Invalid or empty doc list to index";
+            throw new IndexException(400, logMsg);
+        }
+        IndexSpec spec = IndexSpec.newInstance(indexName);
+        IIndex index = indexFactory.createIndex(spec, actionQueue);
+        if (index == null) {
+            final String logMsg = "Cannot get index instance [" + indexName + "]";
+            throw new IndexException(500, logMsg);
+        }
+        for (Map<String, Object> doc : docs) {
+            if (!index.validateDocument(doc)) {
+                final String logMsg = "Invalid document: one or more fields' value do not match index's schema.";
+                throw new IndexException(400, logMsg);
+            }
+        }
+
+        Map<String, Object> result = new HashMap<String, Object>();
+        AckMode ackMode = parseAckMode(requestData);
+        if (ackMode == AckMode.QUEUED) {
+            result.put("num_docs", index.indexDocuments(docs));
+            return result;
+        }
+        Map<Integer, String> failures = getAckResult(index.indexDocuments(docs, ackMode),
+                getAckTimeoutMs(requestData));
+        List<Map<String, Object>> failed = new ArrayList<Map<String, Object>>();
+        for (Entry<Integer, String> failure : failures.entrySet()) {
+            failed.add(newFailure("index", failure.getKey(), failure.getValue()));
+        }
+        result.put("num_docs", docs.size());
+        result.put("indexed", docs.size() - failures.size());
+        result.put("failed", failed);
+        return result;
+    }
+
+    private static Map<String, Object> newFailure(String positionName, Object position,
+            String error) {
+        Map<String, Object> failure = new HashMap<String, Object>();
+        failure.put(positionName, position);
+        failure.put("error", error);
+        return failure;
+    }
+
+    /*----------------------------------------------------------------------*/
+    /**
+     * <pre>
+     * -= Bulk-index documents (streaming) =-
+     * Input: newline-delimited JSON (one document per line), e.g.
+     * {"field_name_1":"value","field_name_2":12345678}
+     * {2nd document}
+     * ...
+     * Request parameters (query string):
+     *   "ack" (optional): "queued" (default), "applied", "durable" or "visible",
+     *   "ack_timeout" (optional): max milliseconds to wait for ack
+     * Output:
+     * {"status":200/400/429/500/504,"message":"successful or failed message",
+     *  "num_docs":number of documents scheduled for indexing,
+     *  "num_batches":number of batches, "num_invalid":number of skipped documents,
+     *  "invalid_lines":[line numbers of (the first 100) skipped documents],
+     *  "indexed":number of documents indexed, "num_failed":number of documents that could not be indexed,
+     *  "failed":[{"line":line number,"error":"message"} of (the first 100) documents that could not be indexed]}
+     * Note:
+     * - documents are parsed incrementally and handed to the write path in batches
+     *   while parsing continues, memory usage does not depend on request size,
+     * - documents that do not match index's schema are skipped and reported,
+     * - "indexed", "num_failed" and "failed" are only returned if "ack" is not "queued",
+     * - malformed JSON stops the request with status 400; documents before it
+     *   have already been scheduled,
+     * - if the action queue is full, the request fails right away with status 429, a
+     *   "Retry-After" header and "num_docs" (documents before the failing batch have
+     *   been scheduled): resend the rest of the stream after that,
+     * - the request body is limited to MAX_BULK_REQUEST_SIZE (1 GB, larger requests fail
+     *   with status 413) and is received in full (spooled to disk) before parsing starts:
+     *   split larger loads into several requests at line boundaries, each request is
+     *   scheduled independently.
+     * </pre>
+     */
+    /*----------------------------------------------------------------------*/
+
+    /**
+     * Max size (bytes) of the request body of the streaming bulk and offline
+     * bulk build APIs, larger loads are split into several requests by the
+     * client.
+     */
+    public final static int MAX_BULK_REQUEST_SIZE = 1024 * 1024 * 1024;
+
+    private final static ObjectMapper BULK_MAPPER = new ObjectMapper();
+
+    /**
+     * Max number of batches waiting for acknowledgement at a time.
+     */
+    private final static int MAX_PENDING_ACKS = 16;
+
+    /**
+     * Max number of invalid line numbers reported.
+     */
+    private final static int MAX_INVALID_LINES = 100;
+
+    /**
+     * Handles batches of documents read by
+     * {@link IndexApi#readNdjson(IIndex, InputStream, int, BatchHandler)}.
+     */
+    private static interface BatchHandler {
+        /**
+         * @param batch
+         * @param lines
+         *            line numbers of the batch's documents
+         * @param numDocsBefore
+         */
+        public void handle(List<Map<String, Object>> batch, List<Long> lines, int numDocsBefore)
+                throws IndexException, IOException;
+    }
+
+    /**
+     * Reads documents from a newline-delimited JSON stream incrementally,
+     * validates them and hands valid ones to {@code handler} in batches.
+     * 
+     * @param index
+     * @param input
+     * @param batchSize
+     * @param handler
+     * @return stats: {@code num_docs}, {@code num_batches}, {@code num_invalid}
+     *         and {@code invalid_lines}
+     * @throws IndexException
+     *             status 400 if the stream is not well-formed
+     * @throws IOException
+     */
+    private static Map<String, Object> readNdjson(IIndex index, InputStream input,
+            int batchSize, BatchHandler handler) throws IndexException, IOException {
+        int numDocs = 0, numBatches = 0, numInvalid = 0;
+        List<Long> invalidLines = new ArrayList<Long>();
+        MappingIterator<Map<String, Object>> it = BULK_MAPPER.reader(Map.class).readValues(input);
+        try {
+            List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>(batchSize);
+            List<Long> lines = new ArrayList<Long>(batchSize);
+            while (true) {
+                Map<String, Object> doc;
+                long lineNr;
+                try {
+                    if (!it.hasNextValue()) {
+                        break;
+                    }
+                    doc = it.nextValue();
+                    lineNr = it.getParser().getCurrentLocation().getLineNr();
+                } catch (JsonProcessingException e) {
+                    long errorLine = e.getLocation() != null ? e.getLocation().getLineNr() : -1;
+                    throw new IndexException(400, "Malformed JSON at line " + errorLine + ", ["
+                            + numDocs + "] document(s) before it have been accepted");
+                }
+                boolean isValid;
+                try {
+                    isValid = index.validateDocument(doc);
+                } catch (IndexException e) {
+                    // e.g. empty document
+                    isValid = false;
+                }
+                if (!isValid) {
+                    numInvalid++;
+                    if (invalidLines.size() < MAX_INVALID_LINES) {
+                        invalidLines.add(lineNr);
+                    }
+                    continue;
+                }
+                batch.add(doc);
+                lines.add(lineNr);
+                if (batch.size() >= batchSize) {
+                    handler.handle(batch, lines, numDocs);
+                    numDocs += batch.size();
+                    numBatches++;
+                    batch = new ArrayList<Map<String, Object>>(batchSize);
+                    lines = new ArrayList<Long>(batchSize);
+                }
+            }
+            if (batch.size() > 0) {
+                handler.handle(batch, lines, numDocs);
+                numDocs += batch.size();
+                numBatches++;
+            }
+        } finally {
+            it.close();
+        }
+
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("num_docs", numDocs);
+        result.put("num_batches", numBatches);
+        result.put("num_invalid", numInvalid);
+        result.put("invalid_lines", invalidLines);
+        return result;
+    }
+
+    /**
+     * API: Bulk-indexes documents read from a newline-delimited JSON stream.
+     * 
+     * @param indexName
+     * @param input
+     * @param requestData
+     *            request parameters ({@code ack}, {@code ack_timeout})
+     * @return
+     * @throws IndexException
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public Map<String, Object> bulkIndexDocuments(String indexName, InputStream input,
+            Map<String, Object> requestData) throws IndexException, IOException {
+        // TODO verify secret
+
+        final IIndex index = getIndexForWrite(indexName);
+        final AckMode ackMode = parseAckMode(requestData);
+        final long timeoutMs = getAckTimeoutMs(requestData);
+        final BulkAcks acks = new BulkAcks();
+        Map<String, Object> result = readNdjson(index, input, bulkBatchSize > 0 ? bulkBatchSize
+                : 1000, new BatchHandler() {
+            @Override
+            public void handle(List<Map<String, Object>> batch, List<Long> lines,
+                    int numDocsBefore) throws IndexException, IOException {
+                submitBulkBatch(index, batch, lines, ackMode, timeoutMs, numDocsBefore, acks);
+            }
+        });
+        if (ackMode != AckMode.QUEUED) {
+            while (!acks.pending.isEmpty()) {
+                acks.waitForOldest(timeoutMs);
+            }
+            result.put("indexed", ((Number) result.get("num_docs")).longValue() - acks.numFailed);
+            result.put("num_failed", acks.numFailed);
+            result.put("failed", acks.failed);
+        }
+        return result;
+    }
+
+    /**
+     * Batches of the streaming bulk API waiting for acknowledgement, and
+     * documents that could not be indexed.
+     */
+    private final class BulkAcks {
+        private final LinkedList<ListenableFuture<Map<Integer, String>>> pending =
+                new LinkedList<ListenableFuture<Map<Integer, String>>>();
+        private final LinkedList<List<Long>> pendingLines = new LinkedList<List<Long>>();
+        private final List<Map<String, Object>> failed = new ArrayList<Map<String, Object>>();
+        private long numFailed = 0;
+
+        private void add(ListenableFuture<Map<Integer, String>> future, List<Long> lines) {
+            pending.addLast(future);
+            pendingLines.addLast(lines);
+        }
+
+        private void waitForOldest(long timeoutMs) throws IndexException {
+            List<Long> lines = pendingLines.removeFirst();
+            Map<Integer, String> failures = getAckResult(pending.removeFirst(), timeoutMs);
+            for (Entry<Integer, String> failure : failures.entrySet()) {
+                numFailed++;
+                if (failed.size() < MAX_INVALID_LINES) {
+                    failed.add(newFailure("line", lines.get(failure.getKey()),
+                            failure.getValue()));
+                }
+            }
+        }
+    }
+
+    private IIndex getIndexForWrite(String indexName) throws IndexException, IOException {
+        if (!IndexUtils.isValidName(indexName)) {
+            throw new IndexException(400, "InvalidIndexNameException: Invalid index name ["
+                    + indexName + "]");
+        }
+        IndexSpec spec = IndexSpec.newInstance(indexName);
+        IIndex index = indexFactory.createIndex(spec, actionQueue);
+        if (index == null) {
+            final String logMsg = "Cannot get index instance [" + indexName + "]";
+            throw new IndexException(500, logMsg);
+        }
+        return index;
+    }
+
+    /**
+     * Submits a batch of the streaming bulk API, and waits for the oldest
+     * batch to be acknowledged if there are too many batches waiting for
+     * acknowledgement. Never waits for queue space: a full queue fails the
+     * request right away with the number of documents scheduled so far, so
+     * that the client (not a request thread) backs off.
+     */
+    private void submitBulkBatch(IIndex index, List<Map<String, Object>> batch,
+            List<Long> lines, AckMode ackMode, long timeoutMs, int numDocsScheduled,
+            BulkAcks acks) throws IndexException, IOException {
+        try {
+            if (ackMode == AckMode.QUEUED) {
+                index.indexDocuments(batch);
+            } else {
+                acks.add(index.indexDocuments(batch, ackMode), lines);
+                if (acks.pending.size() > MAX_PENDING_ACKS) {
+                    acks.waitForOldest(timeoutMs);
+                }
+            }
+        } catch (QueueFullException e) {
+            throw new QueueFullException("Action queue is full, [" + numDocsScheduled
+                    + "] document(s) have been scheduled for indexing", e.getRetryAfterMs(),
+                    numDocsScheduled);
+        }
+    }
+
+    /*----------------------------------------------------------------------*/
+    /**
+     * <pre>
+     * -= (Re)build an index offline =-
+     * Input: newline-delimited JSON (one document per line), same as bulk-index.
+     * Request parameters (query string):
+     *   "threads" (optional): number of parallel builders, default is configured in IndexApi,
+     *   "replace" (optional): true (default) to replace index's content, false to append to it,
+     *   "build_id" (optional): id of a build sent in several requests,
+     *   "publish" (optional): false to keep the build open for more requests with the same
+     *                         "build_id", true (default) to publish it
+     * Output:
+     * {"status":200/400/409/500,"message":"successful or failed message",
+     *  "num_docs":number of documents published (number of documents added by this
+     *             request if the build is kept open),
+     *  "num_docs_added":number of documents added to the build so far (only if the build
+     *                   is kept open),
+     *  "num_invalid":number of skipped documents,
+     *  "invalid_lines":[line numbers of (the first 100) skipped documents]}
      * Note:
-     * - index will be automatically created if not exist,
-     * - field's type will be automatically determined based on field's value,
-     * - error if field's new value's type does not match existing one,
+     * - the request body is limited to MAX_BULK_REQUEST_SIZE (1 GB): larger loads are
+     *   sent in several requests with the same "build_id", all but the last one with
+     *   "publish=false"; requests of a build are sent one after another (a concurrent
+     *   request fails with status 409), "threads" is taken from the first one and
+     *   "replace" from the last one,
+     * - a build kept open and idle for longer than a configured timeout is aborted,
+     * - documents are split among several temporary local index writers, built in
+     *   parallel, merged into the index and published at once: searches see either
+     *   the old or the new content,
+     * - documents are only added: duplicated ids in the input result in duplicated documents,
+     * - with "replace", changes made via other APIs while building are discarded,
+     * - nothing is published if the input is malformed, the whole build is aborted.
      * </pre>
      */
     /*----------------------------------------------------------------------*/
+
+    public final static String PARAM_BUILD_THREADS = "threads";
+    public final static String PARAM_BUILD_REPLACE = "replace";
+    public final static String PARAM_BUILD_ID = "build_id";
+    public final static String PARAM_BUILD_PUBLISH = "publish";
+
     /**
-     * API: Indexes document(s).
+     * An offline bulk build sent in several requests.
+     */
+    private final static class OpenBuild {
+        private final IBulkBuilder builder;
+        private boolean busy = false;
+        private long lastUsed = System.currentTimeMillis();
+        private long numDocs = 0;
+
+        private OpenBuild(IBulkBuilder builder) {
+            this.builder = builder;
+        }
+    }
+
+    /* open builds, by index name and build id */
+    private final Map<String, OpenBuild> openBuilds = new HashMap<String, OpenBuild>();
+
+    /**
+     * API: (Re)builds an index offline from a newline-delimited JSON stream.
      * 
      * @param indexName
+     * @param input
      * @param requestData
-     * @return number of documents have been scheduled for indexing
+     *            request parameters ({@code threads}, {@code replace})
+     * @return
      * @throws IndexException
      * @throws IOException
+     * @since 0.1.1
      */
-    @SuppressWarnings("unchecked")
-    public int indexDocuments(String indexName, Map<String, Object> requestData)
-            throws IndexException, IOException {
+    public Map<String, Object> buildIndex(String indexName, InputStream input,
+            Map<String, Object> requestData) throws IndexException, IOException {
         // TODO verify secret
 
-        if (!IndexUtils.isValidName(indexName)) {
-            throw new IndexException(400, "InvalidIndexNameException: Invalid index name ["
-                    + indexName + "]");
+        IIndex index = getIndexForWrite(indexName);
+        Integer numThreads = DPathUtils.getValue(requestData, PARAM_BUILD_THREADS, Integer.class);
+        Boolean replace = DPathUtils.getValue(requestData, PARAM_BUILD_REPLACE, Boolean.class);
+        String buildId = DPathUtils.getValue(requestData, PARAM_BUILD_ID, String.class);
+        Boolean publish = DPathUtils.getValue(requestData, PARAM_BUILD_PUBLISH, Boolean.class);
+        boolean keepOpen = publish != null && !publish.booleanValue();
+        if (keepOpen && StringUtils.isBlank(buildId)) {
+            throw new IndexException(400, "Parameter [" + PARAM_BUILD_ID
+                    + "] is required to keep a build open");
         }
-
-        // validate request data
-        List<Map<String, Object>> docs = DPathUtils.getValue(requestData, "docs", List.class);
-        if (docs == null || docs.size() == 0) {
-            final String logMsg = "Invalid or empty doc list to index";
-            throw new IndexException(400, logMsg);
+        String buildKey = !StringUtils.isBlank(buildId) ? indexName + "/" + buildId : null;
+        OpenBuild build = buildKey != null ? acquireBuild(index, buildKey, numThreads)
+                : null;
+        final IBulkBuilder builder = build != null ? build.builder : newBulkBuilder(index,
+                numThreads);
+        boolean done = false;
+        try {
+            Map<String, Object> result = readNdjson(index, input, bulkBatchSize > 0 ? bulkBatchSize
+                    : 1000, new BatchHandler() {
+                @Override
+                public void handle(List<Map<String, Object>> batch, List<Long> lines,
+                        int numDocsBefore) throws IndexException, IOException {
+                    for (Map<String, Object> doc : batch) {
+                        builder.add(doc);
+                    }
+                }
+            });
+            result.remove("num_batches");
+            if (keepOpen) {
+                build.numDocs += ((Number) result.get("num_docs")).longValue();
+                result.put("num_docs_added", build.numDocs);
+                done = true;
+                return result;
+            }
+            long t1 = System.currentTimeMillis();
+            long numDocs = builder.publish(replace == null || replace.booleanValue());
+            done = true;
+            Logger.info("Index [" + indexName + "] has been built with [" + numDocs
+                    + "] document(s), published in " + (System.currentTimeMillis() - t1) + "ms");
+            result.put("num_docs", numDocs);
+            return result;
+        } finally {
+            if (!done) {
+                builder.abort();
+            }
+            if (buildKey != null) {
+                releaseBuild(buildKey, done && keepOpen);
+            }
         }
-        IndexSpec spec = IndexSpec.newInstance(indexName);
-        IIndex index = indexFactory.createIndex(spec, actionQueue);
-        if (index == null) {
-            final String logMsg = "Cannot get index instance [" + indexName + "]";
-            throw new IndexException(500, logMsg);
+    }
+
+    private IBulkBuilder newBulkBuilder(IIndex index, Integer numThreads) throws IndexException,
+            IOException {
+        return index.newBulkBuilder(new File(bulkBuildTempDir),
+                numThreads != null ? numThreads.intValue() : bulkBuildThreads,
+                bulkBuildRamBufferMB);
+    }
+
+    /**
+     * Gets an open build for a request, starts it if it does not exist.
+     * 
+     * @param index
+     * @param buildKey
+     * @param numThreads
+     * @return
+     * @throws IndexException
+     *             status 409 if the build is in use by another request
+     * @throws IOException
+     */
+    private OpenBuild acquireBuild(IIndex index, String buildKey, Integer numThreads)
+            throws IndexException, IOException {
+        synchronized (openBuilds) {
+            abortIdleBuilds();
+            OpenBuild build = openBuilds.get(buildKey);
+            if (build == null) {
+                build = new OpenBuild(newBulkBuilder(index, numThreads));
+                openBuilds.put(buildKey, build);
+            } else if (build.busy) {
+                throw new IndexException(409, "Build [" + buildKey
+                        + "] is in use by another request");
+            }
+            build.busy = true;
+            return build;
         }
-        for (Map<String, Object> doc : docs) {
-            if (!index.validateDocument(doc)) {
-                final String logMsg = "Invalid document: one or more fields' value do not match index's schema.";
-                throw new IndexException(400, logMsg);
+    }
+
+    /**
+     * Releases an open build after a request, keeps it open for more requests
+     * or forgets it (published or aborted).
+     * 
+     * @param buildKey
+     * @param keepOpen
+     */
+    private void releaseBuild(String buildKey, boolean keepOpen) {
+        synchronized (openBuilds) {
+            if (keepOpen) {
+                OpenBuild build = openBuilds.get(buildKey);
+                build.busy = false;
+                build.lastUsed = System.currentTimeMillis();
+            } else {
+                openBuilds.remove(buildKey);
             }
         }
+    }
 
-        return index.indexDocuments(docs);
+    /*
+     * Must be called while holding openBuilds' monitor.
+     */
+    private void abortIdleBuilds() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry<String, OpenBuild>> it = openBuilds.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry<String, OpenBuild> entry = it.next();
+            OpenBuild build = entry.getValue();
+            if (!build.busy && now - build.lastUsed > bulkBuildIdleTimeoutMs) {
+                Logger.warn("Build [" + entry.getKey() + "] has been idle for more than "
+                        + bulkBuildIdleTimeoutMs + "ms, aborted");
+                build.builder.abort();
+                it.remove();
+            }
+        }
     }
 
     /*----------------------------------------------------------------------*/
@@ -264,7 +1364,9 @@ public class IndexApi {
      * -= Truncate an index =-
      * Input:
      * {
-     *   "secret": "authkey"
+     *   "secret": "authkey",
+     *   "ack" (optional): "queued" (default), "applied", "durable" or "visible",
+     *   "ack_timeout" (optional): max milliseconds to wait for ack
      * }
      * Output:
      * {"status":200/400/403/500,"message":"successful or failed message"}
@@ -292,7 +1394,11 @@ public class IndexApi {
         IndexSpec spec = IndexSpec.newInstance(indexName);
         IIndex index = indexFactory.openIndex(spec, actionQueue);
         if (index != null) {
-            return index.truncate();
+            AckMode ackMode = parseAckMode(requestData);
+            if (ackMode == AckMode.QUEUED) {
+                return index.truncate();
+            }
+            return waitForAck(index.truncate(ackMode), requestData);
         }
         return false;
     }
@@ -304,6 +1410,8 @@ public class IndexApi {
      * Input:
      * {
      *   "secret": "authkey",
+     *   "ack" (optional): "queued" (default), "applied", "durable" or "visible",
+     *   "ack_timeout" (optional): max milliseconds to wait for ack,
      *   "query" : "query to match document(s) for deletion", or
      *   "terms" : {
      *       "field1": "value1",
@@ -341,10 +1449,12 @@ public class IndexApi {
         IndexSpec spec = IndexSpec.newInstance(indexName);
         IIndex index = indexFactory.openIndex(spec, actionQueue);
         if (index != null) {
+            AckMode ackMode = parseAckMode(requestData);
             String query = DPathUtils.getValue(requestData, "query", String.class);
             if (!StringUtils.isBlank(query)) {
                 if (index.validateQuery(query)) {
-                    return index.deleteDocuments(query);
+                    return ackMode == AckMode.QUEUED ? index.deleteDocuments(query)
+                            : waitForAck(index.deleteDocuments(query, ackMode), requestData);
                 } else {
                     throw new IndexException(400, "InvalidQueryException: Invalid query [" + query
                             + "]");
@@ -352,7 +1462,8 @@ public class IndexApi {
             }
             Map<String, Object> terms = DPathUtils.getValue(requestData, "terms", Map.class);
             if (terms != null && terms.size() > 0) {
-                return index.deleteDocuments(terms);
+                return ackMode == AckMode.QUEUED ? index.deleteDocuments(terms)
+                        : waitForAck(index.deleteDocuments(terms, ackMode), requestData);
             } else {
                 throw new IndexException(400, "InvalidQueryException: No query or terms supplied");
             }
@@ -360,6 +1471,132 @@ public class IndexApi {
         return false;
     }
 
+    /*----------------------------------------------------------------------*/
+    /**
+     * <pre>
+     * -= Delete documents by a list of ids =-
+     * Input:
+     * {
+     *   "secret": "authkey",
+     *   "ack" (optional): "queued" (default), "applied", "durable" or "visible",
+     *   "ack_timeout" (optional): max milliseconds to wait for ack,
+     *   "id_field" (optional): name of the id field, default is the index's (single) id field,
+     *   "ids" : ["id1", "id2", ...]
+     * }
+     * Output:
+     * {"status":200/400/403/500,"message":"successful or failed message","num_ids":..., "num_deleted":...}
+     * Note:
+     * - all ids are deleted in one single action.
+     * - "num_deleted" is -1 (unknown) with "ack" = "queued"; otherwise it is counted as of the last refresh:
+     *   documents indexed or deleted since then (not yet visible to searches) are not accounted for.
+     * </pre>
+     */
+    /*----------------------------------------------------------------------*/
+    public final static String PARAM_DELETE_IDS = "ids";
+    public final static String PARAM_DELETE_ID_FIELD = "id_field";
+
+    /**
+     * API: Deletes documents by a list of ids.
+     * 
+     * @param indexName
+     * @param requestData
+     * @return {@code num_ids} and {@code num_deleted}, or {@code null} if the
+     *         index does not exist
+     * @throws IndexException
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public Map<String, Object> deleteDocumentsByIds(String indexName,
+            Map<String, Object> requestData) throws IndexException, IOException {
+        // TODO verify secret
+
+        if (!IndexUtils.isValidName(indexName)) {
+            throw new IndexException(400, "InvalidIndexNameException: Invalid index name ["
+                    + indexName + "]");
+        }
+
+        List<?> ids = DPathUtils.getValue(requestData, PARAM_DELETE_IDS, List.class);
+        if (ids == null) {
+            throw new IndexException(400, "No ids supplied");
+        }
+        String idField = DPathUtils.getValue(requestData, PARAM_DELETE_ID_FIELD, String.class);
+
+        IndexSpec spec = IndexSpec.newInstance(indexName);
+        IIndex index = indexFactory.openIndex(spec, actionQueue);
+        if (index == null) {
+            return null;
+        }
+        AckMode ackMode = parseAckMode(requestData);
+        ListenableFuture<Long> future = index.deleteDocumentsByIds(
+                StringUtils.isBlank(idField) ? null : idField, ids, ackMode);
+        Long numDeleted = ackMode == AckMode.QUEUED ? Long.valueOf(-1) : getAckResult(future,
+                getAckTimeoutMs(requestData));
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("num_ids", ids.size());
+        result.put("num_deleted", numDeleted != null ? numDeleted.longValue() : -1);
+        return result;
+    }
+
+    /*----------------------------------------------------------------------*/
+    /**
+     * <pre>
+     * -= Update doc-values fields of document(s) in place =-
+     * Input:
+     * {
+     *   "secret": "authkey",
+     *   "ack" (optional): "queued" (default), "applied", "durable" or "visible",
+     *   "ack_timeout" (optional): max milliseconds to wait for ack,
+     *   "docs"  : [
+     *     {"id_field": "id value", "docvalues_field_1": long value, "docvalues_field_2": long value},
+     *     ...
+     *   ]
+     * }
+     * Output:
+     * {"status":200/400/403/500,"message":"successful or failed message"}
+     * Note:
+     * - each document must contain its id field(s) and only "docvalues" long fields,
+     * - the documents are not re-indexed: no delete/re-add, no new stored fields or postings,
+     * - documents that do not exist are ignored.
+     * </pre>
+     */
+    /*----------------------------------------------------------------------*/
+    /**
+     * API: Updates doc-values fields of document(s) in place.
+     * 
+     * @param indexName
+     * @param requestData
+     * @return number of documents have been scheduled for updating
+     * @throws IndexException
+     * @throws IOException
+     * @since 0.1.1
+     */
+    @SuppressWarnings("unchecked")
+    public int updateDocValues(String indexName, Map<String, Object> requestData)
+            throws IndexException, IOException {
+        // TODO verify secret
+
+        if (!IndexUtils.isValidName(indexName)) {
+            throw new IndexException(400, "InvalidIndexNameException: Invalid index name ["
+                    + indexName + "]");
+        }
+
+        List<Map<String, Object>> docs = DPathUtils.getValue(requestData, "docs", List.class);
+        if (docs == null || docs.size() == 0) {
+            throw new IndexException(400, "Invalid or empty doc list to update");
+        }
+        IndexSpec spec = IndexSpec.newInstance(indexName);
+        IIndex index = indexFactory.openIndex(spec, actionQueue);
+        if (index == null) {
+            return 0;
+        }
+
+        AckMode ackMode = parseAckMode(requestData);
+        if (ackMode == AckMode.QUEUED) {
+            return index.updateDocValues(docs) ? docs.size() : 0;
+        }
+        return waitForAck(index.updateDocValues(docs, ackMode), requestData) ? docs.size() : 0;
+    }
+
     /*----------------------------------------------------------------------*/
     /**
      * <pre>
@@ -446,4 +1683,173 @@ public class IndexApi {
         return index.searchDocuments(query, bookmark, start != null ? start.intValue() : 0,
                 limit != null ? limit.intValue() : 0);
     }
+
+    /*----------------------------------------------------------------------*/
+    /**
+     * <pre>
+     * -= Get index's statistics =-
+     * Output:
+     * {
+     *   "status"  : 200/400/403/500,
+     *   "message" : "successful or failed message",
+     *   "stats"   : {"num_docs":..., "num_commits":..., "commit_time_ms":..., "indexing_stall_ms":..., ...}
+     * }
+     * </pre>
+     */
+    /*----------------------------------------------------------------------*/
+    /**
+     * API: Gets index's statistics.
+     * 
+     * @param indexName
+     * @return
+     * @throws IndexException
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public Map<String, Object> getIndexStats(String indexName) throws IndexException, IOException {
+        if (!IndexUtils.isValidName(indexName)) {
+            throw new IndexException(400, "InvalidIndexNameException: Invalid index name ["
+                    + indexName + "]");
+        }
+
+        IndexSpec spec = IndexSpec.newInstance(indexName);
+        IIndex index = indexFactory.openIndex(spec, actionQueue);
+        if (index == null) {
+            throw new IndexException(400, "Index [" + indexName + "] does not exist");
+        }
+        return index.getStats();
+    }
+
+    /*----------------------------------------------------------------------*/
+    /**
+     * <pre>
+     * -= Get index's maintenance status =-
+     * Output:
+     * {
+     *   "status"      : 200/400/403/500,
+     *   "message"     : "successful or failed message",
+     *   "maintenance" : {"policy":{...}, "deletes_pct":..., "num_segments":..., "running":{..., "merges":{...}}, "last":{...}}
+     * }
+     * </pre>
+     */
+    /*----------------------------------------------------------------------*/
+    /**
+     * API: Gets index's maintenance status.
+     * 
+     * @param indexName
+     * @return
+     * @throws IndexException
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public Map<String, Object> getMaintenanceStatus(String indexName) throws IndexException,
+            IOException {
+        if (!IndexUtils.isValidName(indexName)) {
+            throw new IndexException(400, "InvalidIndexNameException: Invalid index name ["
+                    + indexName + "]");
+        }
+
+        IndexSpec spec = IndexSpec.newInstance(indexName);
+        IIndex index = indexFactory.openIndex(spec, actionQueue);
+        if (index == null) {
+            throw new IndexException(400, "Index [" + indexName + "] does not exist");
+        }
+        return index.getMaintenanceStatus();
+    }
+
+    /*----------------------------------------------------------------------*/
+    /**
+     * <pre>
+     * -= Run a maintenance job now =-
+     * Input:
+     * {
+     *   "secret": "authkey",
+     *   "job" (optional): "expunge_deletes" (default) or "force_merge",
+     *   "max_segments" (optional): number of segments to force-merge down to, default 1
+     * }
+     * Output:
+     * {"status":200/400/403/500,"message":"successful or failed message"}
+     * Note:
+     * - the job runs in background, see maintenance status for its progress.
+     * - merges are IO-throttled according to the index's maintenance policy ("io_mb_per_sec").
+     * </pre>
+     */
+    /*----------------------------------------------------------------------*/
+    public final static String PARAM_MAINTENANCE_JOB = "job";
+    public final static String PARAM_MAINTENANCE_MAX_SEGMENTS = "max_segments";
+
+    /**
+     * API: Requests a maintenance job.
+     * 
+     * @param indexName
+     * @param requestData
+     * @return {@code false} if a maintenance job is already requested or
+     *         running
+     * @throws IndexException
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public boolean requestMaintenance(String indexName, Map<String, Object> requestData)
+            throws IndexException, IOException {
+        // TODO verify secret
+
+        if (!IndexUtils.isValidName(indexName)) {
+            throw new IndexException(400, "InvalidIndexNameException: Invalid index name ["
+                    + indexName + "]");
+        }
+
+        String job = DPathUtils.getValue(requestData, PARAM_MAINTENANCE_JOB, String.class);
+        if (StringUtils.isBlank(job)) {
+            job = MaintenancePolicy.JOB_EXPUNGE_DELETES;
+        }
+        if (!MaintenancePolicy.isValidJob(job)) {
+            throw new IndexException(400, "Invalid maintenance job [" + job + "]");
+        }
+        Integer maxSegments = DPathUtils.getValue(requestData, PARAM_MAINTENANCE_MAX_SEGMENTS,
+                Integer.class);
+
+        IndexSpec spec = IndexSpec.newInstance(indexName);
+        IIndex index = indexFactory.openIndex(spec, actionQueue);
+        if (index == null) {
+            throw new IndexException(400, "Index [" + indexName + "] does not exist");
+        }
+        return index.requestMaintenance(job, maxSegments != null ? maxSegments.intValue() : 1);
+    }
+
+    /*----------------------------------------------------------------------*/
+    /**
+     * <pre>
+     * -= Get server's statistics =-
+     * Output:
+     * {
+     *   "status"  : 200/500,
+     *   "message" : "successful or failed message",
+     *   "queue"   : {"queue_size":..., "capacity":..., "drain_rate":..., "num_rejected":..., ...},
+     *   "update_workers": [backlog of worker 0, backlog of worker 1, ...]
+     * }
+     * </pre>
+     */
+    /*----------------------------------------------------------------------*/
+    /**
+     * API: Gets server's statistics (action queue's depth and drain rate,
+     * update workers' backlog).
+     * 
+     * @return
+     * @since 0.1.1
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new HashMap<String, Object>();
+        if (actionQueue != null) {
+            result.put("queue", actionQueue.getStats());
+        }
+        List<Integer> workers = new ArrayList<Integer>();
+        UpdateWorker[] updateWorkers = this.updateWorkers;
+        if (updateWorkers != null) {
+            for (UpdateWorker worker : updateWorkers) {
+                workers.add(worker.backlog());
+            }
+        }
+        result.put("update_workers", workers);
+        return result;
+    }
 }
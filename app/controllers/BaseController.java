@@ -1,6 +1,9 @@
 package controllers;
 
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -77,6 +80,26 @@ public class BaseController extends Controller {
         return requestContent;
     }
 
+    /**
+     * Opens request's raw body as a stream, without loading it into memory
+     * if it has been buffered to disk.
+     * 
+     * @return
+     * @throws IOException
+     * @since 0.1.1
+     */
+    protected static InputStream openRequestContent() throws IOException {
+        RawBuffer rawBuffer = request().body().asRaw();
+        if (rawBuffer == null) {
+            String requestContent = extractRequestContent();
+            return new ByteArrayInputStream(requestContent != null ? requestContent
+                    .getBytes(Constants.UTF8) : new byte[0]);
+        }
+        byte[] buffer = rawBuffer.asBytes();
+        return buffer != null ? new ByteArrayInputStream(buffer) : new FileInputStream(
+                rawBuffer.asFile());
+    }
+
     /**
      * Parses request into a Map.
      * 
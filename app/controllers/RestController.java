@@ -2,6 +2,8 @@ package controllers;
 
 import globals.Registry;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -11,6 +13,7 @@ import play.mvc.BodyParser;
 import play.mvc.Result;
 import util.Constants;
 import util.IndexException;
+import util.QueueFullException;
 import api.IndexApi;
 
 import com.github.ddth.commons.utils.SerializationUtils;
@@ -49,6 +52,50 @@ public class RestController extends BaseController {
         return ok(SerializationUtils.toJsonString(result));
     }
 
+    /**
+     * Responds to a rejected request with HTTP status 429 and a
+     * {@code Retry-After} header.
+     * 
+     * @param e
+     * @return
+     */
+    private static Result doResponseQueueFull(QueueFullException e) {
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put(Constants.RESPONSE_FIELD_STATUS, e.getStatus());
+        result.put(Constants.RESPONSE_FIELD_MESSAGE, e.getMessage());
+        result.put("retry_after_ms", e.getRetryAfterMs());
+        if (e.getNumScheduled() >= 0) {
+            result.put("num_docs", e.getNumScheduled());
+        }
+        response().setHeader(CONTENT_TYPE, "application/json");
+        response().setHeader(CONTENT_ENCODING, "utf-8");
+        response().setHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+        return status(e.getStatus(), SerializationUtils.toJsonString(result));
+    }
+
+    /**
+     * Parses a write request (index/delete/truncate); ack mode can also be
+     * specified via query string {@code ?ack=...&ack_timeout=...}.
+     * 
+     * @return
+     * @throws IOException
+     */
+    private static Map<String, Object> parseWriteRequest() throws IOException {
+        Map<String, Object> requestData = parseRequest();
+        if (requestData == null) {
+            requestData = new HashMap<String, Object>();
+        }
+        String ack = request().getQueryString(IndexApi.PARAM_ACK);
+        if (ack != null) {
+            requestData.put(IndexApi.PARAM_ACK, ack);
+        }
+        String ackTimeout = request().getQueryString(IndexApi.PARAM_ACK_TIMEOUT);
+        if (ackTimeout != null) {
+            requestData.put(IndexApi.PARAM_ACK_TIMEOUT, ackTimeout);
+        }
+        return requestData;
+    }
+
     /*----------------------------------------------------------------------*/
 
     /*
@@ -106,12 +153,146 @@ public class RestController extends BaseController {
 
     private static Result indexDocuments(final String indexName) {
         try {
-            Map<String, Object> requestData = parseRequest();
+            Map<String, Object> requestData = parseWriteRequest();
+            IndexApi indexApi = Registry.getIndexApi();
+            try {
+                Map<String, Object> result = indexApi.indexDocuments(indexName, requestData);
+                if (result.containsKey("indexed")) {
+                    return doResponse(200, "[" + result.get("indexed") + "] of ["
+                            + result.get("num_docs") + "] document(s) have been indexed", result);
+                }
+                return doResponse(200, "[" + result.get("num_docs")
+                        + "] document(s) have been scheduled for indexing", result);
+            } catch (QueueFullException e) {
+                Logger.warn(e.getMessage());
+                return doResponseQueueFull(e);
+            } catch (IndexException e) {
+                Logger.error(e.getMessage(), e);
+                return doResponse(e.getStatus(), e.getMessage());
+            }
+        } catch (Exception e) {
+            final String logMsg = "Exception [" + e.getClass() + "]: " + e.getMessage();
+            Logger.error(logMsg, e);
+            return doResponse(500, logMsg);
+        }
+    }
+
+    /*
+     * Handles POST/:indexName/_bulk
+     * 
+     * Body is newline-delimited JSON; Play buffers large bodies to disk, the
+     * body is then parsed as a stream. Loads larger than
+     * IndexApi.MAX_BULK_REQUEST_SIZE are split into several requests by the
+     * client.
+     */
+    @BodyParser.Of(value = BodyParser.Raw.class, maxLength = IndexApi.MAX_BULK_REQUEST_SIZE)
+    public static Result bulkIndexPost(final String indexName) {
+        try {
+            Map<String, Object> requestData = new HashMap<String, Object>();
+            String ack = request().getQueryString(IndexApi.PARAM_ACK);
+            if (ack != null) {
+                requestData.put(IndexApi.PARAM_ACK, ack);
+            }
+            String ackTimeout = request().getQueryString(IndexApi.PARAM_ACK_TIMEOUT);
+            if (ackTimeout != null) {
+                requestData.put(IndexApi.PARAM_ACK_TIMEOUT, ackTimeout);
+            }
+            IndexApi indexApi = Registry.getIndexApi();
+            InputStream input = openRequestContent();
+            try {
+                Map<String, Object> result = indexApi.bulkIndexDocuments(indexName, input,
+                        requestData);
+                if (result.containsKey("indexed")) {
+                    return doResponse(200, "[" + result.get("indexed") + "] of ["
+                            + result.get("num_docs") + "] document(s) have been indexed", result);
+                }
+                return doResponse(200, "[" + result.get("num_docs")
+                        + "] document(s) have been scheduled for indexing", result);
+            } catch (QueueFullException e) {
+                Logger.warn(e.getMessage());
+                return doResponseQueueFull(e);
+            } catch (IndexException e) {
+                Logger.error(e.getMessage(), e);
+                return doResponse(e.getStatus(), e.getMessage());
+            } finally {
+                input.close();
+            }
+        } catch (Exception e) {
+            final String logMsg = "Exception [" + e.getClass() + "]: " + e.getMessage();
+            Logger.error(logMsg, e);
+            return doResponse(500, logMsg);
+        }
+    }
+
+    /*
+     * Handles POST/:indexName/_build
+     * 
+     * Loads larger than IndexApi.MAX_BULK_REQUEST_SIZE are sent in several
+     * requests of the same build (see IndexApi.PARAM_BUILD_ID).
+     */
+    @BodyParser.Of(value = BodyParser.Raw.class, maxLength = IndexApi.MAX_BULK_REQUEST_SIZE)
+    public static Result buildIndexPost(final String indexName) {
+        try {
+            Map<String, Object> requestData = new HashMap<String, Object>();
+            String threads = request().getQueryString(IndexApi.PARAM_BUILD_THREADS);
+            if (threads != null) {
+                requestData.put(IndexApi.PARAM_BUILD_THREADS, threads);
+            }
+            String replace = request().getQueryString(IndexApi.PARAM_BUILD_REPLACE);
+            if (replace != null) {
+                requestData.put(IndexApi.PARAM_BUILD_REPLACE, replace);
+            }
+            String buildId = request().getQueryString(IndexApi.PARAM_BUILD_ID);
+            if (buildId != null) {
+                requestData.put(IndexApi.PARAM_BUILD_ID, buildId);
+            }
+            String publish = request().getQueryString(IndexApi.PARAM_BUILD_PUBLISH);
+            if (publish != null) {
+                requestData.put(IndexApi.PARAM_BUILD_PUBLISH, publish);
+            }
             IndexApi indexApi = Registry.getIndexApi();
+            InputStream input = openRequestContent();
             try {
-                int numDocs = indexApi.indexDocuments(indexName, requestData);
-                return doResponse(200, "[" + numDocs
-                        + "] document(s) have been scheduled for indexing");
+                Map<String, Object> result = indexApi.buildIndex(indexName, input, requestData);
+                if (result.containsKey("num_docs_added")) {
+                    return doResponse(200, "[" + result.get("num_docs")
+                            + "] document(s) have been added to build [" + buildId + "]", result);
+                }
+                return doResponse(200, "Index [" + indexName + "] has been built with ["
+                        + result.get("num_docs") + "] document(s)", result);
+            } catch (IndexException e) {
+                Logger.error(e.getMessage(), e);
+                return doResponse(e.getStatus(), e.getMessage());
+            } finally {
+                input.close();
+            }
+        } catch (Exception e) {
+            final String logMsg = "Exception [" + e.getClass() + "]: " + e.getMessage();
+            Logger.error(logMsg, e);
+            return doResponse(500, logMsg);
+        }
+    }
+
+    /*----------------------------------------------------------------------*/
+
+    /*
+     * Handles POST/:indexName/update
+     */
+    public static Result updateDocValuesPost(final String indexName) {
+        try {
+            Map<String, Object> requestData = parseWriteRequest();
+            IndexApi indexApi = Registry.getIndexApi();
+            try {
+                int numDocs = indexApi.updateDocValues(indexName, requestData);
+                if (numDocs > 0) {
+                    return doResponse(200, "[" + numDocs + "] document(s) of index [" + indexName
+                            + "] have been scheduled for updating");
+                }
+                return doResponse(200, "Cannot update documents of index [" + indexName
+                        + "], maybe it doesnot exist?");
+            } catch (QueueFullException e) {
+                Logger.warn(e.getMessage());
+                return doResponseQueueFull(e);
             } catch (IndexException e) {
                 Logger.error(e.getMessage(), e);
                 return doResponse(e.getStatus(), e.getMessage());
@@ -130,7 +311,7 @@ public class RestController extends BaseController {
      */
     public static Result truncateIndexPost(final String indexName) {
         try {
-            Map<String, Object> requestData = parseRequest();
+            Map<String, Object> requestData = parseWriteRequest();
             IndexApi indexApi = Registry.getIndexApi();
             try {
                 if (indexApi.truncateIndex(indexName, requestData)) {
@@ -140,6 +321,9 @@ public class RestController extends BaseController {
                     return doResponse(200, "Index [" + indexName
                             + "] has not been scheduled for truncating, maybe it doesnot exist?");
                 }
+            } catch (QueueFullException e) {
+                Logger.warn(e.getMessage());
+                return doResponseQueueFull(e);
             } catch (IndexException e) {
                 Logger.error(e.getMessage(), e);
                 return doResponse(e.getStatus(), e.getMessage());
@@ -168,9 +352,19 @@ public class RestController extends BaseController {
 
     private static Result deleteDocuments(final String indexName) {
         try {
-            Map<String, Object> requestData = parseRequest();
+            Map<String, Object> requestData = parseWriteRequest();
             IndexApi indexApi = Registry.getIndexApi();
             try {
+                if (requestData != null && requestData.get(IndexApi.PARAM_DELETE_IDS) != null) {
+                    Map<String, Object> result = indexApi.deleteDocumentsByIds(indexName,
+                            requestData);
+                    if (result != null) {
+                        return doResponse(200, "Documents of index [" + indexName
+                                + "] have been scheduled for deleting", result);
+                    }
+                    return doResponse(200, "Cannot delete documents from index [" + indexName
+                            + "], maybe it doesnot exist?");
+                }
                 if (indexApi.deleteDocuments(indexName, requestData)) {
                     return doResponse(200, "Documents of index [" + indexName
                             + "] have been scheduled for deleting");
@@ -178,6 +372,9 @@ public class RestController extends BaseController {
                     return doResponse(200, "Cannot delete documents from index [" + indexName
                             + "], maybe it doesnot exist?");
                 }
+            } catch (QueueFullException e) {
+                Logger.warn(e.getMessage());
+                return doResponseQueueFull(e);
             } catch (IndexException e) {
                 Logger.error(e.getMessage(), e);
                 return doResponse(e.getStatus(), e.getMessage());
@@ -253,4 +450,87 @@ public class RestController extends BaseController {
         }
     }
 
+    /*----------------------------------------------------------------------*/
+    /*
+     * Handles GET/:indexName/stats
+     */
+    public static Result indexStatsGet(final String indexName) {
+        try {
+            IndexApi indexApi = Registry.getIndexApi();
+            try {
+                Map<String, Object> result = new HashMap<String, Object>();
+                result.put("stats", indexApi.getIndexStats(indexName));
+                return doResponse(200, "Successful", result);
+            } catch (IndexException e) {
+                Logger.error(e.getMessage(), e);
+                return doResponse(e.getStatus(), e.getMessage());
+            }
+        } catch (Exception e) {
+            final String logMsg = "Exception [" + e.getClass() + "]: " + e.getMessage();
+            Logger.error(logMsg, e);
+            return doResponse(500, logMsg);
+        }
+    }
+
+    /*----------------------------------------------------------------------*/
+    /*
+     * Handles GET/:indexName/maintenance
+     */
+    public static Result maintenanceGet(final String indexName) {
+        try {
+            IndexApi indexApi = Registry.getIndexApi();
+            try {
+                Map<String, Object> result = new HashMap<String, Object>();
+                result.put("maintenance", indexApi.getMaintenanceStatus(indexName));
+                return doResponse(200, "Successful", result);
+            } catch (IndexException e) {
+                Logger.error(e.getMessage(), e);
+                return doResponse(e.getStatus(), e.getMessage());
+            }
+        } catch (Exception e) {
+            final String logMsg = "Exception [" + e.getClass() + "]: " + e.getMessage();
+            Logger.error(logMsg, e);
+            return doResponse(500, logMsg);
+        }
+    }
+
+    /*
+     * Handles POST/:indexName/maintenance
+     */
+    public static Result maintenancePost(final String indexName) {
+        try {
+            Map<String, Object> requestData = parseWriteRequest();
+            IndexApi indexApi = Registry.getIndexApi();
+            try {
+                if (indexApi.requestMaintenance(indexName, requestData)) {
+                    return doResponse(200, "Maintenance of index [" + indexName
+                            + "] has been scheduled");
+                } else {
+                    return doResponse(200, "Maintenance of index [" + indexName
+                            + "] has not been scheduled, a job is already scheduled or running");
+                }
+            } catch (IndexException e) {
+                Logger.error(e.getMessage(), e);
+                return doResponse(e.getStatus(), e.getMessage());
+            }
+        } catch (Exception e) {
+            final String logMsg = "Exception [" + e.getClass() + "]: " + e.getMessage();
+            Logger.error(logMsg, e);
+            return doResponse(500, logMsg);
+        }
+    }
+
+    /*
+     * Handles GET/_stats
+     */
+    public static Result statsGet() {
+        try {
+            IndexApi indexApi = Registry.getIndexApi();
+            return doResponse(200, "Successful", indexApi.getStats());
+        } catch (Exception e) {
+            final String logMsg = "Exception [" + e.getClass() + "]: " + e.getMessage();
+            Logger.error(logMsg, e);
+            return doResponse(500, logMsg);
+        }
+    }
 }
@@ -1,5 +1,8 @@
 package lucene;
 
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import lucene.action.BaseAction;
 
 import com.github.ddth.queue.IQueue;
@@ -13,9 +16,83 @@ import com.github.ddth.queue.IQueue;
 public interface IActionQueue extends IQueue {
     public BaseAction take();
 
+    /**
+     * Takes an action from queue, waiting up to the specified wait time if
+     * necessary for an action to become available.
+     * 
+     * @param waitTime
+     * @param unit
+     * @return the action, or {@code null} if the specified waiting time
+     *         elapses before an action is available
+     * @throws InterruptedException
+     * @since 0.1.1
+     */
+    public BaseAction take(long waitTime, TimeUnit unit) throws InterruptedException;
+
     public boolean queue(BaseAction msg);
 
     public boolean requeue(BaseAction msg);
 
     public boolean requeueSilent(BaseAction msg);
+
+    /**
+     * Reserves room for an action that is about to be queued with
+     * {@link #queueReserved(BaseAction)}, so that a producer finds out the
+     * queue is full before doing anything it would have to undo (e.g. writing
+     * the action to a translog).
+     * 
+     * @param msg
+     * @return {@code false} if the queue is full
+     * @since 0.1.1
+     */
+    public boolean reserve(BaseAction msg);
+
+    /**
+     * Queues an action room has been reserved for (see
+     * {@link #reserve(BaseAction)}); the reservation is consumed whether the
+     * action is queued or not.
+     * 
+     * @param msg
+     * @return {@code false} if the action could not be queued for another
+     *         reason than the queue being full (e.g. it cannot be encoded)
+     * @since 0.1.1
+     */
+    public boolean queueReserved(BaseAction msg);
+
+    /**
+     * Releases room reserved for an action that will not be queued.
+     * 
+     * @param msg
+     * @since 0.1.1
+     */
+    public void release(BaseAction msg);
+
+    /**
+     * Does this queue keep its actions across restarts? Actions taken from a
+     * persistent queue are only finished once they are durable in their
+     * index (i.e. covered by a commit), so that they are delivered again if
+     * the process stops before that.
+     * 
+     * @return
+     * @since 0.1.1
+     */
+    public boolean isPersistent();
+
+    /**
+     * Estimates how long a producer should wait before retrying an action
+     * that has just been rejected because the queue is full.
+     * 
+     * @param msg
+     * @return
+     * @since 0.1.1
+     */
+    public long getRetryAfterMs(BaseAction msg);
+
+    /**
+     * Gets queue's metrics (depth, capacity, drain rate, etc).
+     * 
+     * @return
+     * @since 0.1.1
+     */
+    public Map<String, Object> getStats();
 }
@@ -0,0 +1,55 @@
+package lucene;
+
+import java.io.IOException;
+import java.util.Map;
+
+import util.IndexException;
+
+/**
+ * Builds an index's content offline, bypassing the action queue and the
+ * index's own writer; built content is published to the index at once.
+ * 
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public interface IBulkBuilder {
+    /**
+     * Adds a document. Documents are only added, never updated nor deleted:
+     * duplicated ids in the input result in duplicated documents.
+     * 
+     * <p>
+     * This method may block if the builder cannot keep up with the input.
+     * </p>
+     * 
+     * @param doc
+     * @throws IndexException
+     * @throws IOException
+     */
+    public void add(Map<String, Object> doc) throws IndexException, IOException;
+
+    /**
+     * Gets number of documents added so far.
+     * 
+     * @return
+     */
+    public long getNumDocs();
+
+    /**
+     * Finishes building and publishes the built content to the index
+     * atomically: searches and commits see either none or all of it.
+     * 
+     * @param replace
+     *            if {@code true}, the index's existing content is replaced
+     *            with the built content, otherwise the built content is
+     *            appended to it
+     * @return number of documents published
+     * @throws IndexException
+     * @throws IOException
+     */
+    public long publish(boolean replace) throws IndexException, IOException;
+
+    /**
+     * Aborts building and discards what has been built.
+     */
+    public void abort();
+}
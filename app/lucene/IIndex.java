@@ -1,16 +1,22 @@
 package lucene;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
+import lucene.action.AckMode;
 import lucene.action.BaseAction;
+import lucene.action.BulkIndexAction;
 import lucene.action.DeleteAction;
 import lucene.action.IndexAction;
 import lucene.action.TruncateAction;
 import lucene.spec.IndexSpec;
 import util.IndexException;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
  * Lucene index APIs.
  * 
@@ -72,12 +78,27 @@ public interface IIndex {
      */
     public boolean indexDocument(Map<String, Object> doc) throws IndexException, IOException;
 
+    /**
+     * Indexes a document (existing document will be overridden), the returned
+     * future completes when the action is acknowledged according to
+     * {@code ackMode}.
+     * 
+     * @param doc
+     * @param ackMode
+     * @return future of the action's result
+     * @throws IndexException
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public ListenableFuture<Boolean> indexDocument(Map<String, Object> doc, AckMode ackMode)
+            throws IndexException, IOException;
+
     /**
      * Indexes documents (existing documents will be overridden).
      * 
      * <p>
-     * Implementation should build {@link IndexAction} objects and put to queue
-     * for async-execution.
+     * Implementation should build a {@link BulkIndexAction} object that
+     * carries the whole batch and put to queue for async-execution.
      * </p>
      * 
      * @param docs
@@ -89,12 +110,31 @@ public interface IIndex {
     public int indexDocuments(Collection<Map<String, Object>> docs) throws IndexException,
             IOException;
 
+    /**
+     * Indexes documents (existing documents will be overridden), the returned
+     * future completes when the batch is acknowledged according to
+     * {@code ackMode}.
+     * 
+     * @param docs
+     * @param ackMode
+     * @return future of the documents that could not be indexed, as a map of
+     *         {@code position in docs -> error message} (empty if all
+     *         documents have been indexed; always empty for
+     *         {@link AckMode#QUEUED})
+     * @throws IndexException
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public ListenableFuture<Map<Integer, String>> indexDocuments(
+            Collection<Map<String, Object>> docs, AckMode ackMode) throws IndexException,
+            IOException;
+
     /**
      * Indexes documents (existing documents will be overridden).
      * 
      * <p>
-     * Implementation should build {@link IndexAction} objects and put to queue
-     * for async-execution.
+     * Implementation should build a {@link BulkIndexAction} object that
+     * carries the whole batch and put to queue for async-execution.
      * </p>
      * 
      * @param docs
@@ -136,6 +176,18 @@ public interface IIndex {
      */
     public boolean truncate() throws IndexException, IOException;
 
+    /**
+     * Truncates this index, the returned future completes when the action is
+     * acknowledged according to {@code ackMode}.
+     * 
+     * @param ackMode
+     * @return future of the action's result
+     * @throws IndexException
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public ListenableFuture<Boolean> truncate(AckMode ackMode) throws IndexException, IOException;
+
     /**
      * Deletes documents that match a query.
      * 
@@ -152,6 +204,20 @@ public interface IIndex {
      */
     public boolean deleteDocuments(String query) throws IndexException, IOException;
 
+    /**
+     * Deletes documents that match a query, the returned future completes
+     * when the action is acknowledged according to {@code ackMode}.
+     * 
+     * @param query
+     * @param ackMode
+     * @return future of the action's result
+     * @throws IndexException
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public ListenableFuture<Boolean> deleteDocuments(String query, AckMode ackMode)
+            throws IndexException, IOException;
+
     /**
      * Deletes documents that match fields' values.
      * 
@@ -168,6 +234,70 @@ public interface IIndex {
      */
     public boolean deleteDocuments(Map<String, Object> terms) throws IndexException, IOException;
 
+    /**
+     * Deletes documents that match fields' values, the returned future
+     * completes when the action is acknowledged according to {@code ackMode}.
+     * 
+     * @param terms
+     * @param ackMode
+     * @return future of the action's result
+     * @throws IndexException
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public ListenableFuture<Boolean> deleteDocuments(Map<String, Object> terms, AckMode ackMode)
+            throws IndexException, IOException;
+
+    /**
+     * Deletes documents by a list of ids, in a single action.
+     * 
+     * @param idField
+     *            name of an id field, {@code null} means the index's single
+     *            id field
+     * @param ids
+     * @param ackMode
+     * @return future of the number of deleted documents, completed when the
+     *         action is acknowledged according to {@code ackMode} ({@code -1}
+     *         for {@link AckMode#QUEUED})
+     * @throws IndexException
+     *             if the field is not an id field
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public ListenableFuture<Long> deleteDocumentsByIds(String idField, Collection<?> ids,
+            AckMode ackMode) throws IndexException, IOException;
+
+    /**
+     * Updates doc-values fields of existing documents in place, without
+     * re-indexing them. Each document holds its id field(s) and the new
+     * values of its doc-values fields.
+     * 
+     * @param docs
+     * @return
+     * @throws IndexException
+     *             if a document has no id or a field is not a doc-values
+     *             field
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public boolean updateDocValues(Collection<Map<String, Object>> docs) throws IndexException,
+            IOException;
+
+    /**
+     * Updates doc-values fields of existing documents in place, the returned
+     * future completes when the action is acknowledged according to
+     * {@code ackMode}.
+     * 
+     * @param docs
+     * @param ackMode
+     * @return future of the action's result
+     * @throws IndexException
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public ListenableFuture<Boolean> updateDocValues(Collection<Map<String, Object>> docs,
+            AckMode ackMode) throws IndexException, IOException;
+
     /**
      * Performs an index action.
      * 
@@ -181,4 +311,100 @@ public interface IIndex {
      * @throws IOException
      */
     public boolean performAction(BaseAction action) throws IndexException, IOException;
+
+    /**
+     * Performs an action taken from the action queue, and settles it with the
+     * queue.
+     * 
+     * <p>
+     * The action is finished once it has been performed, or once a commit
+     * covers it if the queue is persistent (see
+     * {@link IActionQueue#isPersistent()}). An action that fails may be
+     * retried in place, before the caller moves on to the next action.
+     * </p>
+     * 
+     * @param action
+     * @return
+     * @throws IndexException
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public boolean performQueuedAction(BaseAction action) throws IndexException, IOException;
+
+    /**
+     * Gets the key to partition an action by, so that actions with different
+     * keys can be performed concurrently while actions with the same key are
+     * performed in order.
+     * 
+     * @param action
+     * @return the key (e.g. document id), or {@code null} if the action must
+     *         be performed in order with all other actions of this index
+     * @since 0.1.1
+     */
+    public String getPartitionKey(BaseAction action);
+
+    /**
+     * Gets keys of the documents of a batch, so that the batch can be
+     * performed concurrently with other actions of this index that have none
+     * of these keys (see {@link #getPartitionKey(BaseAction)}).
+     * 
+     * @param action
+     * @return one key per document (in order), {@code null} for a document
+     *         that does not replace an existing one; or {@code null} if the
+     *         batch must be performed in order with all other actions of this
+     *         index
+     * @since 0.1.1
+     */
+    public List<String> getPartitionKeys(BulkIndexAction action);
+
+    /**
+     * Gets this index's runtime statistics (number of documents, commit and
+     * indexing-stall timings, etc).
+     * 
+     * @return
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public Map<String, Object> getStats() throws IOException;
+
+    /**
+     * Creates a builder to (re)build this index's content offline, in
+     * parallel.
+     * 
+     * @param tempDir
+     *            local directory to store temporary content while building
+     * @param numThreads
+     *            number of parallel builders
+     * @param ramBufferSizeMB
+     *            RAM buffer size of each builder
+     * @return
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public IBulkBuilder newBulkBuilder(File tempDir, int numThreads, double ramBufferSizeMB)
+            throws IOException;
+
+    /**
+     * Requests a maintenance job to run now.
+     * 
+     * @param job
+     *            {@link lucene.spec.MaintenancePolicy#JOB_EXPUNGE_DELETES} or
+     *            {@link lucene.spec.MaintenancePolicy#JOB_FORCE_MERGE}
+     * @param maxSegments
+     *            number of segments to force-merge down to
+     * @return {@code false} if a maintenance job is already requested or
+     *         running
+     * @since 0.1.1
+     */
+    public boolean requestMaintenance(String job, int maxSegments);
+
+    /**
+     * Gets this index's maintenance status: policy, running job and its
+     * progress, last finished job.
+     * 
+     * @return
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public Map<String, Object> getMaintenanceStatus() throws IOException;
 }
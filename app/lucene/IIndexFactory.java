@@ -31,4 +31,14 @@ public interface IIndexFactory {
      * @throws IOException
      */
     public IIndex createIndex(IndexSpec spec, IActionQueue actionQueue) throws IOException;
+
+    /**
+     * Opens indices that have actions in their translog not yet committed,
+     * so that these actions are replayed.
+     * 
+     * @param actionQueue
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public void recoverIndices(IActionQueue actionQueue) throws IOException;
 }
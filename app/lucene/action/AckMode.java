@@ -0,0 +1,50 @@
+package lucene.action;
+
+/**
+ * When a write request (index, delete, truncate) is acknowledged to the
+ * caller.
+ * 
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public enum AckMode {
+    /**
+     * Acknowledged as soon as the action has been put to the action queue
+     * (fire-and-forget).
+     */
+    QUEUED,
+
+    /**
+     * Acknowledged when the action has been applied to the index writer.
+     */
+    APPLIED,
+
+    /**
+     * Acknowledged when the action has been applied and will survive a crash
+     * (it has been fsync'ed to the translog, or committed to the index).
+     */
+    DURABLE,
+
+    /**
+     * Acknowledged when the action has been applied and is visible to
+     * searches (i.e. after the next refresh).
+     */
+    VISIBLE;
+
+    /**
+     * Parses an ack mode from string (case-insensitive).
+     * 
+     * @param value
+     * @param defaultValue
+     *            returned if {@code value} is {@code null} or empty
+     * @return
+     * @throws IllegalArgumentException
+     *             if {@code value} is not a valid ack mode
+     */
+    public static AckMode parse(String value, AckMode defaultValue) {
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        return AckMode.valueOf(value.trim().toUpperCase());
+    }
+}
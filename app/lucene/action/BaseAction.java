@@ -1,10 +1,16 @@
 package lucene.action;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.github.ddth.queue.UniversalQueueMessage;
 
 public abstract class BaseAction extends UniversalQueueMessage {
     private final static String ATTR_INDEX_NAME = "index";
+    private final static String ATTR_SEQ = "seq";
+    private final static String ATTR_ACK_ID = "ack_id";
 
     public BaseAction(String indexName) {
         indexName(indexName);
@@ -19,4 +25,144 @@ public abstract class BaseAction extends UniversalQueueMessage {
         setAttribute(ATTR_INDEX_NAME, value);
         return this;
     }
+
+    /**
+     * Sequence number assigned by the index's translog, {@code 0} if none.
+     * 
+     * @return
+     * @since 0.1.1
+     */
+    @JsonIgnore
+    public long seq() {
+        Long result = getAttribute(ATTR_SEQ, Long.class);
+        return result != null ? result.longValue() : 0;
+    }
+
+    public BaseAction seq(long value) {
+        setAttribute(ATTR_SEQ, value);
+        return this;
+    }
+
+    /**
+     * Id used to track the action's acknowledgement, {@code 0} if the caller
+     * does not wait for the action.
+     * 
+     * @return
+     * @since 0.1.1
+     */
+    @JsonIgnore
+    public long ackId() {
+        Long result = getAttribute(ATTR_ACK_ID, Long.class);
+        return result != null ? result.longValue() : 0;
+    }
+
+    public BaseAction ackId(long value) {
+        setAttribute(ATTR_ACK_ID, value);
+        return this;
+    }
+
+    /*----------------------------------------------------------------------*/
+    private volatile long numAffected = -1;
+
+    /**
+     * Number of documents affected (e.g. deleted) by this action once it has
+     * been performed; not serialized.
+     * 
+     * @return {@code -1} if unknown
+     * @since 0.1.1
+     */
+    @JsonIgnore
+    public long numAffected() {
+        return numAffected;
+    }
+
+    public BaseAction numAffected(long value) {
+        this.numAffected = value;
+        return this;
+    }
+
+    /**
+     * Copies the outcome of performing this action (e.g. number of affected
+     * documents) from the instance that has actually been performed, which may
+     * be a copy of this one (e.g. read back from translog or a persistent
+     * queue).
+     * 
+     * @param performed
+     * @return
+     * @since 0.1.1
+     */
+    public BaseAction copyResult(BaseAction performed) {
+        numAffected(performed.numAffected());
+        return this;
+    }
+
+    /*----------------------------------------------------------------------*/
+    private volatile Collection<String> coalesceKeys;
+    private volatile long coalesceVersion = -1;
+    private List<BaseAction> superseded;
+
+    /**
+     * Ids of the documents this action overwrites or deletes as a whole, set
+     * by the index on submission so that the action queue can coalesce
+     * pending actions of the same documents; not serialized.
+     * 
+     * @return {@code null} if this action cannot be coalesced
+     * @since 0.1.1
+     */
+    @JsonIgnore
+    public Collection<String> coalesceKeys() {
+        return coalesceKeys;
+    }
+
+    public BaseAction coalesceKeys(Collection<String> value) {
+        this.coalesceKeys = value;
+        return this;
+    }
+
+    /**
+     * External version of the document written by this action; not
+     * serialized.
+     * 
+     * @return {@code -1} if none
+     * @since 0.1.1
+     */
+    @JsonIgnore
+    public long coalesceVersion() {
+        return coalesceVersion;
+    }
+
+    public BaseAction coalesceVersion(long value) {
+        this.coalesceVersion = value;
+        return this;
+    }
+
+    /**
+     * Marks a pending action as superseded by this one: it will not be
+     * performed, and is acknowledged when this action is.
+     * 
+     * @param action
+     * @since 0.1.1
+     */
+    synchronized public void supersede(BaseAction action) {
+        if (superseded == null) {
+            superseded = new ArrayList<BaseAction>();
+        }
+        superseded.add(action);
+        List<BaseAction> transitive = action.takeSuperseded();
+        if (transitive != null) {
+            superseded.addAll(transitive);
+        }
+    }
+
+    /**
+     * Takes the actions superseded by this one.
+     * 
+     * @return {@code null} if none
+     * @since 0.1.1
+     */
+    synchronized public List<BaseAction> takeSuperseded() {
+        List<BaseAction> result = superseded;
+        superseded = null;
+        return result;
+    }
 }
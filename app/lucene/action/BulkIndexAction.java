@@ -0,0 +1,100 @@
+package lucene.action;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.github.ddth.commons.utils.SerializationUtils;
+
+/**
+ * Action to index a batch of documents (existing documents will be
+ * overridden).
+ *
+ * <p>
+ * The whole batch travels through the action queue as a single message.
+ * Failures are tracked per document, keyed by the document's position in the
+ * batch.
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class BulkIndexAction extends BaseAction {
+
+    private final static String ATTR_DOCS = "docs";
+
+    public BulkIndexAction(String indexName) {
+        super(indexName);
+    }
+
+    @SuppressWarnings("unchecked")
+    @JsonIgnore
+    public List<Map<String, Object>> docs() {
+        Object result = getAttribute(ATTR_DOCS);
+        try {
+            return result instanceof List ? (List<Map<String, Object>>) result
+                    : SerializationUtils.fromJsonString(result.toString(), List.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public BulkIndexAction docs(List<Map<String, Object>> docs) {
+        setAttribute(ATTR_DOCS, docs);
+        return this;
+    }
+
+    @JsonIgnore
+    public int numDocs() {
+        List<Map<String, Object>> docs = docs();
+        return docs != null ? docs.size() : 0;
+    }
+
+    /*----------------------------------------------------------------------*/
+    private Map<Integer, String> failures = new TreeMap<Integer, String>();
+
+    /**
+     * Marks a document of this batch as failed.
+     *
+     * @param docIndex
+     *            position of the document in the batch
+     * @param message
+     * @return
+     */
+    public BulkIndexAction markFailed(int docIndex, String message) {
+        synchronized (failures) {
+            failures.put(docIndex, message);
+        }
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BulkIndexAction copyResult(BaseAction performed) {
+        super.copyResult(performed);
+        if (performed instanceof BulkIndexAction && performed != this) {
+            Map<Integer, String> performedFailures = ((BulkIndexAction) performed).failures();
+            synchronized (failures) {
+                failures.putAll(performedFailures);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Gets failed documents of this batch, as a map of
+     * {@code position -> error message}.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public Map<Integer, String> failures() {
+        synchronized (failures) {
+            return Collections.unmodifiableMap(new TreeMap<Integer, String>(failures));
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package lucene.action;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -8,10 +10,18 @@ import com.github.ddth.commons.utils.SerializationUtils;
 public class DeleteAction extends BaseAction {
     public final static int DELETE_METHOD_QUERY = 0;
     public final static int DELETE_METHOD_TERM = 1;
+    /**
+     * Deletes documents by a list of values of an id field.
+     * 
+     * @since 0.1.1
+     */
+    public final static int DELETE_METHOD_IDS = 2;
 
     private final static String ATTR_DELETE_METHOD = "method";
     private final static String ATTR_DELETE_QUERY = "query";
     private final static String ATTR_DELETE_TERM = "term";
+    private final static String ATTR_DELETE_FIELD = "field";
+    private final static String ATTR_DELETE_IDS = "ids";
 
     public DeleteAction(String indexName) {
         super(indexName);
@@ -54,4 +64,50 @@ public class DeleteAction extends BaseAction {
         setAttribute(ATTR_DELETE_TERM, fieldsAndValues);
         return this;
     }
+
+    /**
+     * Id field to delete documents by (see {@link #DELETE_METHOD_IDS}).
+     * 
+     * @return
+     * @since 0.1.1
+     */
+    @JsonIgnore
+    public String field() {
+        return getAttribute(ATTR_DELETE_FIELD, String.class);
+    }
+
+    public DeleteAction field(String value) {
+        setAttribute(ATTR_DELETE_FIELD, value);
+        return this;
+    }
+
+    /**
+     * Id values to delete documents by (see {@link #DELETE_METHOD_IDS}).
+     * 
+     * @return
+     * @since 0.1.1
+     */
+    @SuppressWarnings("unchecked")
+    @JsonIgnore
+    public List<String> ids() {
+        Object result = getAttribute(ATTR_DELETE_IDS);
+        try {
+            List<Object> values = result instanceof List ? (List<Object>) result
+                    : SerializationUtils.fromJsonString(result.toString(), List.class);
+            List<String> ids = new ArrayList<String>(values.size());
+            for (Object value : values) {
+                if (value != null) {
+                    ids.add(value.toString());
+                }
+            }
+            return ids;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public DeleteAction ids(List<String> values) {
+        setAttribute(ATTR_DELETE_IDS, values);
+        return this;
+    }
 }
@@ -0,0 +1,45 @@
+package lucene.action;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.github.ddth.commons.utils.SerializationUtils;
+
+/**
+ * Action to update doc-values fields of existing documents in place (partial
+ * update), without re-indexing the documents.
+ *
+ * <p>
+ * Each entry of the batch holds a document's id field(s) and the new values
+ * of its doc-values fields.
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class UpdateDocValuesAction extends BaseAction {
+
+    private final static String ATTR_DOCS = "docs";
+
+    public UpdateDocValuesAction(String indexName) {
+        super(indexName);
+    }
+
+    @SuppressWarnings("unchecked")
+    @JsonIgnore
+    public List<Map<String, Object>> docs() {
+        Object result = getAttribute(ATTR_DOCS);
+        try {
+            return result instanceof List ? (List<Map<String, Object>>) result
+                    : SerializationUtils.fromJsonString(result.toString(), List.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public UpdateDocValuesAction docs(List<Map<String, Object>> docs) {
+        setAttribute(ATTR_DOCS, docs);
+        return this;
+    }
+}
@@ -1,54 +1,84 @@
 package lucene.engine;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import lucene.IActionQueue;
+import lucene.IBulkBuilder;
 import lucene.IIndex;
+import lucene.action.AckMode;
 import lucene.action.BaseAction;
+import lucene.action.BulkIndexAction;
 import lucene.action.DeleteAction;
 import lucene.action.IndexAction;
 import lucene.action.TruncateAction;
+import lucene.action.UpdateDocValuesAction;
+import lucene.spec.CompiledField;
 import lucene.spec.FieldSpec;
 import lucene.spec.IndexSpec;
+import lucene.spec.PreTokenizedTokenStream;
+import lucene.spec.Schema;
+import lucene.translog.Translog;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.core.SimpleAnalyzer;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.DoubleField;
 import org.apache.lucene.document.Field;
-import org.apache.lucene.document.LongField;
-import org.apache.lucene.document.StringField;
-import org.apache.lucene.document.TextField;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 
 import play.Logger;
 import util.Constants;
 import util.IndexException;
 import util.IndexUtils;
+import util.QueueFullException;
+
+import com.github.ddth.commons.utils.SerializationUtils;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
 /**
  * Abstract implementation of {@link IIndex}.
@@ -90,6 +120,34 @@ public abstract class AbstractIndex implements IIndex {
         return this;
     }
 
+    private AtomicReference<Schema> schema = new AtomicReference<Schema>();
+    private long persistedSchemaVersion = 0;
+    /*
+     * guards changes to the spec and persistedSchemaVersion; never held
+     * while writing to the directory, and not the index's monitor (held by
+     * index writer and searcher access)
+     */
+    private final Object schemaLock = new Object();
+    /* serializes writes of the spec file, so that an older snapshot never wins */
+    private final Object specFileLock = new Object();
+    private long specSnapshotSeq = 0, savedSpecSeq = 0;
+
+    /**
+     * Gets this index's compiled schema.
+     * 
+     * <p>
+     * The schema is immutable and swapped atomically on change, so the
+     * indexing/search paths read it without locking and never touch the
+     * (mutable) spec.
+     * </p>
+     * 
+     * @return
+     * @since 0.1.1
+     */
+    protected Schema getSchema() {
+        return schema.get();
+    }
+
     protected IActionQueue getActionQueue() {
         return actionQueue;
     }
@@ -99,8 +157,111 @@ public abstract class AbstractIndex implements IIndex {
         return this;
     }
 
+    private Translog translog;
+
+    protected Translog getTranslog() {
+        return translog;
+    }
+
+    public AbstractIndex setTranslog(Translog translog) {
+        this.translog = translog;
+        return this;
+    }
+
+    private AtomicLong lastAppliedSeq = new AtomicLong(0);
+
+    /*
+     * Sequence numbers of translog'ed actions that have been submitted but
+     * not yet performed.
+     */
+    private ConcurrentSkipListSet<Long> pendingSeqs = new ConcurrentSkipListSet<Long>();
+
+    /**
+     * Gets sequence number of the last performed translog'ed action.
+     * 
+     * <p>
+     * Actions may be performed concurrently and out of order (see
+     * {@link #getPartitionKey(BaseAction)}), so the result is the highest
+     * sequence number below which all submitted actions have been performed.
+     * </p>
+     * 
+     * @return
+     */
+    protected long getLastAppliedSeq() {
+        long applied = lastAppliedSeq.get();
+        try {
+            return Math.min(applied, pendingSeqs.first() - 1);
+        } catch (NoSuchElementException e) {
+            return applied;
+        }
+    }
+
+    /**
+     * Marks that the action with the specified sequence number has been
+     * performed.
+     * 
+     * @param seq
+     */
+    protected void markApplied(long seq) {
+        long current = lastAppliedSeq.get();
+        while (seq > current && !lastAppliedSeq.compareAndSet(current, seq)) {
+            current = lastAppliedSeq.get();
+        }
+        // after updating lastAppliedSeq, so that getLastAppliedSeq() never
+        // jumps over a pending action
+        pendingSeqs.remove(seq);
+    }
+
+    private ExecutorService applyExecutor;
+    private int numApplyLanes = 1;
+
+    protected ExecutorService getApplyExecutor() {
+        return applyExecutor;
+    }
+
+    protected int getNumApplyLanes() {
+        return numApplyLanes;
+    }
+
+    /**
+     * Sets the executor to apply documents of a batch in parallel.
+     * 
+     * @param applyExecutor
+     *            {@code null} to apply documents sequentially
+     * @param numApplyLanes
+     *            max number of parallel lanes per batch
+     * @return
+     * @since 0.1.1
+     */
+    public AbstractIndex setApplyExecutor(ExecutorService applyExecutor, int numApplyLanes) {
+        this.applyExecutor = applyExecutor;
+        this.numApplyLanes = numApplyLanes;
+        return this;
+    }
+
+    private AckTracker ackTracker = new AckTracker();
+
+    protected AckTracker getAckTracker() {
+        return ackTracker;
+    }
+
+    /**
+     * Are performed actions already durable (i.e. fsync'ed to translog before
+     * their submission returns)?
+     * 
+     * @return
+     */
+    protected boolean isDurableOnApply() {
+        return translog != null && translog.getDurability() == Translog.Durability.REQUEST;
+    }
+
     /*----------------------------------------------------------------------*/
 
+    /*
+     * Shared lock is held while applying changes to the index writer
+     * (IndexWriter is thread-safe, commits/flushes/merges run concurrently).
+     * Exclusive lock is only needed to truncate or close the index.
+     */
     private ReadWriteLock lock = new ReentrantReadWriteLock();
 
     protected Lock getReadLock() {
@@ -111,62 +272,238 @@ public abstract class AbstractIndex implements IIndex {
         return lock.writeLock();
     }
 
-    private IndexReader indexReader;
+    private SearcherManager searcherManager;
 
     /**
-     * Creates {@link IndexReader} instance for this index.
+     * Name of the optional external version of a document. The version is
+     * indexed as numeric doc values; an index/update of a document whose
+     * version is not greater than the document's current version is
+     * discarded.
      * 
-     * <p>
-     * Sub-class may override this method to implement its own business rule.
-     * </p>
+     * @since 0.1.1
+     */
+    public final static String FIELD_VERSION = "_version";
+
+    private final VersionMap versionMap = new VersionMap();
+    private final AtomicLong numStaleVersions = new AtomicLong(0);
+
+    /**
+     * Gets the external version of a document's data.
      * 
-     * @return
+     * @param docData
+     * @return {@code -1} if the document has no version
+     * @since 0.1.1
+     */
+    protected static long getDocVersion(Map<String, Object> docData) {
+        Object version = docData != null ? docData.get(FIELD_VERSION) : null;
+        return version instanceof Number ? ((Number) version).longValue() : -1;
+    }
+
+    /**
+     * Gets the current version of a document: from the version map if
+     * recently updated, from the index's {@code _version} doc values
+     * otherwise.
+     * 
+     * @param idTerm
+     * @return {@code null} if the document does not exist or has no version
      * @throws IOException
+     * @since 0.1.1
      */
-    protected IndexReader openIndexReader() throws IOException {
-        return DirectoryReader.open(getDirectory());
+    protected Long getVersion(Term idTerm) throws IOException {
+        Long version = versionMap.get(idTerm.text());
+        if (version != null) {
+            return version;
+        }
+        IndexSearcher is = acquireIndexSearcher();
+        try {
+            BytesRef id = idTerm.bytes();
+            List<LeafReaderContext> leaves = is.getIndexReader().leaves();
+            // newest segments first
+            for (int i = leaves.size() - 1; i >= 0; i--) {
+                LeafReader reader = leaves.get(i).reader();
+                Terms terms = reader.terms(idTerm.field());
+                TermsEnum termsEnum = terms != null ? terms.iterator() : null;
+                if (termsEnum == null || !termsEnum.seekExact(id)) {
+                    continue;
+                }
+                PostingsEnum postings = termsEnum.postings(reader.getLiveDocs(), null,
+                        PostingsEnum.NONE);
+                int doc = postings.nextDoc();
+                if (doc != DocIdSetIterator.NO_MORE_DOCS) {
+                    Bits docsWithField = reader.getDocsWithField(FIELD_VERSION);
+                    return docsWithField != null && docsWithField.get(doc) ? reader
+                            .getNumericDocValues(FIELD_VERSION).get(doc) : null;
+                }
+            }
+            return null;
+        } finally {
+            releaseIndexSearcher(is);
+        }
     }
 
     /**
-     * Gets {@link IndexReader} for this index.
+     * Checks if a versioned document is stale, i.e. its version is not
+     * greater than the document's current version.
      * 
-     * @return
+     * @param idTerm
+     * @param version
+     * @param batchVersions
+     *            versions of documents accepted earlier in the same batch (not
+     *            applied yet), can be {@code null}; updated if the document is
+     *            not stale
+     * @return {@code false} if the document has no id term or no version
      * @throws IOException
+     * @since 0.1.1
+     */
+    protected boolean isStaleVersion(Term idTerm, long version, Map<String, Long> batchVersions)
+            throws IOException {
+        if (idTerm == null || version < 0) {
+            return false;
+        }
+        Long current = batchVersions != null ? batchVersions.get(idTerm.text()) : null;
+        if (current == null) {
+            current = getVersion(idTerm);
+        }
+        if (current != null && version <= current.longValue()) {
+            numStaleVersions.incrementAndGet();
+            return true;
+        }
+        if (batchVersions != null) {
+            batchVersions.put(idTerm.text(), version);
+        }
+        return false;
+    }
+
+    /**
+     * Records the version of a document that has been handed to the index
+     * writer.
+     * 
+     * @param idTerm
+     * @param version
+     * @since 0.1.1
      */
-    synchronized protected IndexReader getIndexReader() throws IOException {
-        if (indexReader == null) {
-            indexReader = openIndexReader();
+    protected void versionApplied(Term idTerm, long version) {
+        if (idTerm != null && version >= 0) {
+            versionMap.put(idTerm.text(), version);
         }
-        return indexReader;
     }
 
-    private IndexSearcher indexSearcher;
+    /**
+     * Forgets all versions kept in memory, e.g. when the index's content is
+     * dropped.
+     * 
+     * @since 0.1.1
+     */
+    protected void clearVersions() {
+        versionMap.clear();
+    }
 
     /**
-     * Creates {@link IndexSearcher} instance for this index.
+     * Creates {@link SearcherManager} instance for this index.
      * 
      * <p>
-     * Sub-class may override this method to implement its own business rule.
+     * Searchers are opened near-real-time from this index's
+     * {@link IndexWriter}, so changes become visible on
+     * {@link #refreshSearcher()} without a commit. Sub-class may override
+     * this method to implement its own business rule.
      * </p>
      * 
      * @return
      * @throws IOException
+     * @since 0.1.1
+     */
+    protected SearcherManager openSearcherManager() throws IOException {
+        return new SearcherManager(getIndexWriter(), true, null);
+    }
+
+    /**
+     * Gets {@link SearcherManager} for this index.
+     * 
+     * @return
+     * @throws IOException
+     * @since 0.1.1
      */
-    protected IndexSearcher openIndexSearcher() throws IOException {
-        return new IndexSearcher(getIndexReader());
+    synchronized protected SearcherManager getSearcherManager() throws IOException {
+        if (searcherManager == null) {
+            searcherManager = openSearcherManager();
+            searcherManager.addListener(versionMap);
+        }
+        return searcherManager;
     }
 
     /**
-     * Gets {@link IndexSearcher} for this index.
+     * Acquires an {@link IndexSearcher} for this index. The searcher must be
+     * released with {@link #releaseIndexSearcher(IndexSearcher)} after use.
      * 
      * @return
      * @throws IOException
+     * @since 0.1.1
+     */
+    protected IndexSearcher acquireIndexSearcher() throws IOException {
+        return getSearcherManager().acquire();
+    }
+
+    /**
+     * Releases an {@link IndexSearcher} obtained via
+     * {@link #acquireIndexSearcher()}.
+     * 
+     * @param searcher
+     * @throws IOException
+     * @since 0.1.1
      */
-    synchronized protected IndexSearcher getIndexSearcher() throws IOException {
-        if (indexSearcher == null) {
-            indexSearcher = openIndexSearcher();
+    protected void releaseIndexSearcher(IndexSearcher searcher) throws IOException {
+        if (searcher != null) {
+            getSearcherManager().release(searcher);
         }
-        return indexSearcher;
+    }
+
+    /**
+     * Refreshes searchers so that recent changes become visible to searches.
+     * 
+     * @return {@code true} if a new searcher has been opened
+     * @throws IOException
+     * @since 0.1.1
+     */
+    protected boolean refreshSearcher() throws IOException {
+        SearcherManager sm = getSearcherManager();
+        // exclusive operations (e.g. truncate) and content being published
+        // are never seen half-done
+        Lock holdLock = refreshHoldLock.readLock();
+        holdLock.lock();
+        try {
+            Lock lock = getReadLock();
+            lock.lock();
+            try {
+                long tick = ackTracker.currentTick();
+                boolean wasCurrent = sm.isSearcherCurrent();
+                sm.maybeRefreshBlocking();
+                ackTracker.onRefreshed(tick);
+                return !wasCurrent;
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            holdLock.unlock();
+        }
+    }
+
+    /*
+     * Held shared while refreshing searchers, exclusive to hold off refreshes
+     * without blocking updates.
+     */
+    private ReadWriteLock refreshHoldLock = new ReentrantReadWriteLock();
+
+    /**
+     * Holds off searcher refreshes (e.g. while content is being published)
+     * until the returned lock is unlocked; updates are not blocked.
+     * 
+     * @return the acquired lock
+     * @since 0.1.1
+     */
+    protected Lock holdOffRefresh() {
+        Lock lock = refreshHoldLock.writeLock();
+        lock.lock();
+        return lock;
     }
 
     private IndexWriter indexWriter;
@@ -207,12 +544,26 @@ public abstract class AbstractIndex implements IIndex {
     protected IndexWriterConfig getIndexWriterConfig() {
         Analyzer analyzer = getAnalyser();
         IndexWriterConfig iwc = new IndexWriterConfig(analyzer);
-        iwc.setUseCompoundFile(true);
+        iwc.setMergePolicy(new TieredMergePolicy());
+        iwc.setMergeScheduler(new ThrottledMergeScheduler());
+        spec.tuning().applyTo(iwc);
+        iwc.setCodec(spec.codec().newCodec());
         iwc.setCommitOnClose(true);
         iwc.setOpenMode(OpenMode.CREATE_OR_APPEND);
         return iwc;
     }
 
+    /**
+     * Applies the spec's tuning profile to the open index writer, if any.
+     * 
+     * @since 0.1.1
+     */
+    synchronized protected void applyTuning() {
+        if (indexWriter != null) {
+            spec.tuning().applyTo(indexWriter.getConfig());
+        }
+    }
+
     /**
      * Creates a new field according to value.
      * 
@@ -221,7 +572,7 @@ public abstract class AbstractIndex implements IIndex {
      * @return
      * @throws IOException
      */
-    protected FieldSpec createField(String fieldName, Object fieldValue) throws IOException {
+    protected CompiledField createField(String fieldName, Object fieldValue) throws IOException {
         FieldSpec field;
         if (fieldValue instanceof Number) {
             if (fieldValue instanceof Double || fieldValue instanceof Float) {
@@ -232,10 +583,48 @@ public abstract class AbstractIndex implements IIndex {
         } else {
             field = FieldSpec.newInstance(fieldName, FieldSpec.Type.STRING);
         }
-        IndexSpec spec = getSpec();
-        spec.field(fieldName, field);
-        updateSpec(spec, false);
-        return field;
+        // new fields are added to the schema right away, and persisted to
+        // the spec in batches by persistSchema()
+        while (true) {
+            Schema current = schema.get();
+            CompiledField existing = current.compiledField(fieldName);
+            if (existing != null) {
+                // another thread has just added the same field
+                return existing;
+            }
+            Schema newSchema = current.withField(fieldName, field);
+            if (schema.compareAndSet(current, newSchema)) {
+                return newSchema.compiledField(fieldName);
+            }
+        }
+    }
+
+    /**
+     * Persists fields that have been added to the schema (if any) to the
+     * spec.
+     * 
+     * @throws IOException
+     * @since 0.1.1
+     */
+    protected void persistSchema() throws IOException {
+        long version;
+        synchronized (schemaLock) {
+            Schema current = schema.get();
+            if (current == null || current.version() <= persistedSchemaVersion) {
+                return;
+            }
+            for (Entry<String, FieldSpec> entry : current.fields().entrySet()) {
+                if (spec.field(entry.getKey()) == null) {
+                    spec.field(entry.getKey(), entry.getValue());
+                }
+            }
+            spec.schemaVersion(current.version());
+            version = current.version();
+        }
+        saveSpec();
+        synchronized (schemaLock) {
+            persistedSchemaVersion = Math.max(persistedSchemaVersion, version);
+        }
     }
 
     /**
@@ -247,53 +636,133 @@ public abstract class AbstractIndex implements IIndex {
      * @throws IOException
      */
     protected Field buildField(String fieldName, Object fieldValue) throws IOException {
+        CompiledField field = resolveField(fieldName, fieldValue);
+        return field != null ? field.newField(fieldValue) : null;
+    }
+
+    /**
+     * Resolves a field of the schema, creates it if it does not exist.
+     * 
+     * @param fieldName
+     * @param fieldValue
+     * @return
+     * @throws IOException
+     * @since 0.1.1
+     */
+    protected CompiledField resolveField(String fieldName, Object fieldValue) throws IOException {
         if (fieldName == null || fieldValue == null) {
             return null;
         }
-        FieldSpec field = getSpec().field(fieldName);
-        if (field == null) {
-            field = createField(fieldName, fieldValue);
-        }
-        switch (field.type()) {
-        case ID:
-            return new StringField(field.name(), fieldValue.toString(),
-                    field.isStored() ? Field.Store.YES : Field.Store.NO);
-        case STRING:
-            return new TextField(field.name(), fieldValue.toString(),
-                    field.isStored() ? Field.Store.YES : Field.Store.NO);
-        case LONG:
-            if (fieldValue instanceof Number) {
-                Number numValue = (Number) fieldValue;
-                return new LongField(field.name(), numValue.longValue(),
-                        field.isStored() ? Field.Store.YES : Field.Store.NO);
-            }
-        case DOUBLE:
-            if (fieldValue instanceof Number) {
-                Number numValue = (Number) fieldValue;
-                return new DoubleField(field.name(), numValue.doubleValue(),
-                        field.isStored() ? Field.Store.YES : Field.Store.NO);
-            }
+        CompiledField field = getSchema().compiledField(fieldName);
+        return field != null ? field : createField(fieldName, fieldValue);
+    }
+
+    /**
+     * Max number of reusable document templates per thread (i.e. max number
+     * of documents of a batch built without allocation).
+     */
+    private final static int MAX_DOCUMENT_TEMPLATES = 1024;
+
+    /**
+     * Max number of document templates a thread keeps between batches (see
+     * {@link #releaseDocuments()}).
+     */
+    private final static int MAX_RETAINED_DOCUMENT_TEMPLATES = 16;
+
+    private ThreadLocal<List<DocumentTemplate>> documentTemplates =
+            new ThreadLocal<List<DocumentTemplate>>() {
+                @Override
+                protected List<DocumentTemplate> initialValue() {
+                    return new ArrayList<DocumentTemplate>();
+                }
+            };
+
+    /**
+     * Releases documents built by the calling thread once they have been
+     * handed to the index writer, so that long-lived threads do not keep
+     * their content: all but a few templates are dropped, the others drop
+     * their field values.
+     * 
+     * @since 0.1.1
+     */
+    protected void releaseDocuments() {
+        List<DocumentTemplate> templates = documentTemplates.get();
+        if (templates.size() > MAX_RETAINED_DOCUMENT_TEMPLATES) {
+            templates.subList(MAX_RETAINED_DOCUMENT_TEMPLATES, templates.size()).clear();
+        }
+        for (DocumentTemplate template : templates) {
+            template.clear();
         }
-        return null;
     }
 
     /**
      * Builds a document for indexing.
      * 
+     * <p>
+     * The returned document is reused by the next call on the same thread,
+     * it must be handed to the index writer before that (see
+     * {@link #releaseDocuments()}).
+     * </p>
+     * 
      * @param docData
      * @return
      * @throws IOException
      */
     protected Document buildDocument(Map<String, Object> docData) throws IOException {
-        Document doc = new Document();
+        return buildDocument(docData, 0);
+    }
+
+    /**
+     * Builds a document for indexing, using the calling thread's reusable
+     * document template at position {@code slot}.
+     * 
+     * <p>
+     * Documents of a batch that are alive at the same time must be built with
+     * distinct slots. The returned document is reused by the next call with
+     * the same slot on the same thread.
+     * </p>
+     * 
+     * @param docData
+     * @param slot
+     * @return
+     * @throws IOException
+     * @since 0.1.1
+     */
+    protected Document buildDocument(Map<String, Object> docData, int slot) throws IOException {
+        Schema schema = getSchema();
+        DocumentTemplate template = null;
+        Document doc;
+        if (slot < MAX_DOCUMENT_TEMPLATES) {
+            List<DocumentTemplate> templates = documentTemplates.get();
+            while (templates.size() <= slot) {
+                templates.add(new DocumentTemplate());
+            }
+            template = templates.get(slot);
+            doc = template.reset(schema);
+        } else {
+            doc = new Document();
+        }
         boolean isEmpty = true;
         for (Entry<String, Object> entry : docData.entrySet()) {
-            Field field = buildField(entry.getKey(), entry.getValue());
-            if (field != null) {
-                doc.add(field);
+            if (FIELD_VERSION.equals(entry.getKey())) {
+                continue;
+            }
+            Object fieldValue = entry.getValue();
+            CompiledField field = resolveField(entry.getKey(), fieldValue);
+            if (field == null) {
+                continue;
+            }
+            Field luceneField = template != null ? template.field(field, fieldValue) : field
+                    .newField(fieldValue);
+            if (luceneField != null) {
+                doc.add(luceneField);
                 isEmpty = false;
             }
         }
+        long version = getDocVersion(docData);
+        if (!isEmpty && version >= 0) {
+            doc.add(new NumericDocValuesField(FIELD_VERSION, version));
+        }
         return isEmpty ? null : doc;
     }
 
@@ -304,7 +773,8 @@ public abstract class AbstractIndex implements IIndex {
      * @return
      */
     protected Query parseQuery(String query) {
-        QueryParser queryParser = new QueryParser(spec.defaultSearchField(), getAnalyser());
+        QueryParser queryParser = new QueryParser(getSchema().defaultSearchField(),
+                getAnalyser());
         try {
             return queryParser.parse(query);
         } catch (ParseException e) {
@@ -312,6 +782,46 @@ public abstract class AbstractIndex implements IIndex {
         }
     }
 
+    /**
+     * Gets name of the single id field of this index.
+     * 
+     * @return the id field's name, or {@code null} if this index has no id
+     *         field or has a composite (multi-field) id
+     */
+    protected String getSingleIdField() {
+        return getSchema().singleIdField();
+    }
+
+    /**
+     * Builds the id term to update/delete a document.
+     * 
+     * <p>
+     * Only applicable if this index has a single id field and the id value is
+     * present in the document, otherwise {@link #buildQueryForDeletion(Map)}
+     * should be used.
+     * </p>
+     * 
+     * @param docData
+     * @return the id term, or {@code null} if not applicable
+     */
+    protected Term buildTermForUpdate(Map<String, Object> docData) {
+        String idField = getSingleIdField();
+        if (idField == null || docData == null) {
+            return null;
+        }
+        Object idValue = docData.get(idField);
+        if (idValue != null) {
+            return new Term(idField, idValue.toString());
+        }
+        for (Entry<String, Object> entry : docData.entrySet()) {
+            if (idField.equals(entry.getKey().trim().toLowerCase())) {
+                Object value = entry.getValue();
+                return value != null ? new Term(idField, value.toString()) : null;
+            }
+        }
+        return null;
+    }
+
     /**
      * Builds a query to delete document(s).
      * 
@@ -320,13 +830,13 @@ public abstract class AbstractIndex implements IIndex {
      * @throws IOException
      */
     protected Query buildQueryForDeletion(Map<String, Object> docData) throws IOException {
+        Schema schema = getSchema();
         BooleanQuery result = new BooleanQuery();
         boolean isEmpty = true;
         for (Entry<String, Object> entry : docData.entrySet()) {
-            String fieldName = entry.getKey().trim().toLowerCase();
-            FieldSpec field = spec.field(fieldName);
+            CompiledField field = schema.compiledField(entry.getKey());
             if (field != null && field.type() == FieldSpec.Type.ID) {
-                Term term = new Term(fieldName, entry.getValue().toString());
+                Term term = new Term(field.name(), entry.getValue().toString());
                 TermQuery termQuery = new TermQuery(term);
                 result.add(termQuery, Occur.FILTER);
                 isEmpty = false;
@@ -336,36 +846,174 @@ public abstract class AbstractIndex implements IIndex {
     }
 
     /**
-     * Initialization method.
+     * Submits an action for async-execution.
+     * 
+     * <p>
+     * If this index has a translog, room is reserved in the queue, then the
+     * action is appended to the translog before being put to queue: a full
+     * queue never costs a translog write. If there is no action queue, the
+     * action is performed immediately.
+     * </p>
      * 
+     * @param action
      * @return
+     * @throws QueueFullException
+     *             if the action queue is full (the action is rejected as a
+     *             whole, never partially queued)
+     * @throws IndexException
      * @throws IOException
      */
-    public AbstractIndex init() throws IOException {
-        IndexSpec existingSpec = IndexSpec.loadSpec(directory);
-        if (existingSpec == null) {
-            existingSpec = IndexSpec.newInstance(spec.name());
+    protected boolean submitAction(BaseAction action) throws IndexException, IOException {
+        IActionQueue actionQueue = getActionQueue();
+        if (actionQueue == null) {
+            return performAction(action);
         }
-        spec = existingSpec.merge(spec);
-        saveSpec();
-
-        return this;
+        assignCoalesceKeys(action);
+        Translog translog = getTranslog();
+        if (translog == null) {
+            if (!actionQueue.queue(action)) {
+                throw newQueueFullException(actionQueue, action);
+            }
+            return true;
+        }
+        // reserve room first, so that a full queue rejects the action before
+        // anything is written to the translog
+        if (!actionQueue.reserve(action)) {
+            throw newQueueFullException(actionQueue, action);
+        }
+        // keep translog's order and queue's order the same; fsync outside of
+        // the lock, so that concurrent submissions share fsyncs
+        long ticket;
+        boolean queued;
+        synchronized (translog) {
+            try {
+                ticket = translog.append(action);
+            } catch (IOException | RuntimeException e) {
+                actionQueue.release(action);
+                throw e;
+            }
+            long seq = action.seq();
+            pendingSeqs.add(seq);
+            queued = actionQueue.queueReserved(action);
+            if (!queued) {
+                // not a full queue (room is reserved), but e.g. an action
+                // that cannot be encoded: never replay it
+                pendingSeqs.remove(seq);
+                ticket = translog.cancel(seq);
+            }
+        }
+        translog.syncUpTo(ticket);
+        if (!queued) {
+            throw new IndexException(500, "Cannot queue action of index [" + getName() + "]");
+        }
+        return true;
     }
 
     /**
-     * Destroy method.
+     * Tags an action with the ids of the documents it overwrites or deletes
+     * as a whole (see {@link BaseAction#coalesceKeys()}): single-document
+     * index actions, and deletions by values of the single id field.
+     * 
+     * @param action
+     * @since 0.1.1
      */
-    public void destroy() {
-        try {
-            closeIndexReader();
-        } catch (Exception e) {
-            Logger.warn(e.getMessage(), e);
+    protected void assignCoalesceKeys(BaseAction action) {
+        if (action instanceof IndexAction) {
+            Map<String, Object> docData = ((IndexAction) action).doc();
+            Term idTerm = buildTermForUpdate(docData);
+            if (idTerm != null) {
+                action.coalesceKeys(Arrays.asList(idTerm.text()));
+                action.coalesceVersion(getDocVersion(docData));
+            }
+        } else if (action instanceof DeleteAction) {
+            DeleteAction deleteAction = (DeleteAction) action;
+            if (deleteAction.deleteMethod() == DeleteAction.DELETE_METHOD_TERM) {
+                Term idTerm = buildTermForUpdate(deleteAction.term());
+                if (idTerm != null) {
+                    action.coalesceKeys(Arrays.asList(idTerm.text()));
+                }
+            } else if (deleteAction.deleteMethod() == DeleteAction.DELETE_METHOD_IDS) {
+                String idField = getSingleIdField();
+                if (idField != null
+                        && (deleteAction.field() == null || idField.equals(deleteAction.field()))) {
+                    action.coalesceKeys(deleteAction.ids());
+                }
+            }
         }
+    }
+
+    private QueueFullException newQueueFullException(IActionQueue actionQueue, BaseAction action) {
+        long retryAfterMs = actionQueue.getRetryAfterMs(action);
+        return new QueueFullException("Action queue is full, retry after " + retryAfterMs + "ms",
+                retryAfterMs);
+    }
 
+    /**
+     * Submits an action for async-execution, and returns a future that
+     * completes when the action is acknowledged according to {@code ackMode}.
+     * 
+     * @param action
+     * @param ackMode
+     * @return
+     * @throws IndexException
+     * @throws IOException
+     * @since 0.1.1
+     */
+    protected ListenableFuture<Boolean> submitAction(BaseAction action, AckMode ackMode)
+            throws IndexException, IOException {
+        SettableFuture<Boolean> future = ackTracker.register(action, ackMode);
+        if (future == null) {
+            return Futures.immediateFuture(submitAction(action));
+        }
+        boolean submitted = false;
+        try {
+            submitted = submitAction(action);
+        } finally {
+            if (!submitted) {
+                ackTracker.cancel(action);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Initialization method.
+     * 
+     * @return
+     * @throws IOException
+     */
+    public AbstractIndex init() throws IOException {
+        IndexSpec existingSpec = IndexSpec.loadSpec(directory);
+        if (existingSpec == null) {
+            existingSpec = IndexSpec.newInstance(spec.name());
+        }
+        spec = existingSpec.merge(spec);
+        saveSpec();
+        schema.set(Schema.compile(spec));
+        persistedSchemaVersion = spec.schemaVersion();
+
+        return this;
+    }
+
+    /**
+     * Destroy method.
+     */
+    public void destroy() {
+        documentTemplates.remove();
+        try {
+            closeSearcherManager();
+        } catch (Exception e) {
+            Logger.warn(e.getMessage(), e);
+        }
+
+        Lock writeLock = getWriteLock();
+        writeLock.lock();
         try {
             closeIndexWriter();
         } catch (Exception e) {
             Logger.warn(e.getMessage(), e);
+        } finally {
+            writeLock.unlock();
         }
 
         try {
@@ -373,12 +1021,18 @@ public abstract class AbstractIndex implements IIndex {
         } catch (Exception e) {
             Logger.warn(e.getMessage(), e);
         }
+
+        if (translog != null) {
+            translog.destroy();
+        }
+
+        ackTracker.failAll(new IOException("Index [" + getName() + "] has been closed"));
     }
 
-    protected void closeIndexReader() {
-        if (indexReader != null) {
+    protected void closeSearcherManager() {
+        if (searcherManager != null) {
             try {
-                indexReader.close();
+                searcherManager.close();
             } catch (Exception e) {
                 Logger.warn(e.getMessage(), e);
             }
@@ -418,13 +1072,24 @@ public abstract class AbstractIndex implements IIndex {
     }
 
     /**
-     * Saves this index's spec.
+     * Saves this index's spec: the spec is snapshotted under the schema lock,
+     * and written to the directory outside of it.
      * 
-     * @param indexSpec
      * @throws IOException
      */
-    synchronized protected void saveSpec() throws IOException {
-        IndexSpec.saveSpec(directory, spec);
+    protected void saveSpec() throws IOException {
+        String specAsJson;
+        long seq;
+        synchronized (schemaLock) {
+            specAsJson = SerializationUtils.toJsonString(spec.toMap());
+            seq = ++specSnapshotSeq;
+        }
+        synchronized (specFileLock) {
+            if (seq > savedSpecSeq) {
+                IndexSpec.saveSpec(directory, specAsJson);
+                savedSpecSeq = seq;
+            }
+        }
     }
 
     /*----------------------------------------------------------------------*/
@@ -443,8 +1108,20 @@ public abstract class AbstractIndex implements IIndex {
      */
     @Override
     public AbstractIndex updateSpec(IndexSpec spec, boolean override) throws IOException {
-        this.spec.merge(spec, override);
-        saveSpec();
+        persistSchema();
+        synchronized (schemaLock) {
+            this.spec.merge(spec, override);
+            while (true) {
+                // keep fields concurrently added to the schema
+                Schema current = schema.get();
+                Schema newSchema = current.recompile(this.spec);
+                if (schema.compareAndSet(current, newSchema)) {
+                    break;
+                }
+            }
+        }
+        persistSchema();
+        applyTuning();
         return this;
     }
 
@@ -453,21 +1130,28 @@ public abstract class AbstractIndex implements IIndex {
      */
     @Override
     public boolean validateDocument(Map<String, Object> doc) throws IndexException {
-        if (spec == null) {
+        Schema schema = getSchema();
+        if (schema == null) {
             throw new IndexException(500, "Null/Invalid index's metadata");
         }
         if (doc == null || doc.size() == 0) {
             throw new IndexException(400, "Empty document");
         }
+        Object version = doc.get(FIELD_VERSION);
+        if (version != null
+                && (!(version instanceof Number) || ((Number) version).longValue() < 0)) {
+            throw new IndexException(400, "Invalid [" + FIELD_VERSION + "]: " + version);
+        }
         for (Entry<String, Object> fieldData : doc.entrySet()) {
-            String fieldName = fieldData.getKey().trim().toLowerCase();
-            Object fieldValue = fieldData.getValue();
-            FieldSpec field = spec.field(fieldName);
-            if (field == null) {
-                continue;
-            } else if (field.validateValue(fieldValue)) {
-                continue;
-            } else {
+            CompiledField field = schema.compiledField(fieldData.getKey());
+            Object value = fieldData.getValue();
+            if (field != null && !field.accepts(value)) {
+                return false;
+            }
+            // a new field is created as a string field for a pre-tokenized
+            // value, which must be valid as well
+            if (field == null && PreTokenizedTokenStream.isPreTokenized(value)
+                    && PreTokenizedTokenStream.parse(value) == null) {
                 return false;
             }
         }
@@ -480,7 +1164,8 @@ public abstract class AbstractIndex implements IIndex {
     @Override
     public boolean validateQuery(String query) throws IndexException {
         try {
-            QueryParser queryParser = new QueryParser(spec.defaultSearchField(), getAnalyser());
+            QueryParser queryParser = new QueryParser(getSchema().defaultSearchField(),
+                    getAnalyser());
             return queryParser.parse(query) != null;
         } catch (ParseException e) {
             return false;
@@ -494,8 +1179,18 @@ public abstract class AbstractIndex implements IIndex {
     public boolean indexDocument(Map<String, Object> document) throws IndexException, IOException {
         IndexAction action = new IndexAction(getName());
         action.doc(document);
-        IActionQueue actionQueue = getActionQueue();
-        return actionQueue != null ? actionQueue.queue(action) : performAction(action);
+        return submitAction(action);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenableFuture<Boolean> indexDocument(Map<String, Object> document, AckMode ackMode)
+            throws IndexException, IOException {
+        IndexAction action = new IndexAction(getName());
+        action.doc(document);
+        return submitAction(action, ackMode);
     }
 
     /**
@@ -504,31 +1199,45 @@ public abstract class AbstractIndex implements IIndex {
     @Override
     public int indexDocuments(Collection<Map<String, Object>> docs) throws IndexException,
             IOException {
-        int count = 0;
-        for (Map<String, Object> doc : docs) {
-            if (!indexDocument(doc)) {
-                return count;
-            } else {
-                count++;
-            }
+        if (docs == null || docs.size() == 0) {
+            return 0;
+        }
+        BulkIndexAction action = new BulkIndexAction(getName());
+        action.docs(new ArrayList<Map<String, Object>>(docs));
+        if (getActionQueue() != null) {
+            return submitAction(action) ? docs.size() : 0;
         }
-        return count;
+        performAction(action);
+        return docs.size() - action.failures().size();
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public int indexDocuments(Map<String, Object>[] docs) throws IndexException, IOException {
-        int count = 0;
-        for (Map<String, Object> doc : docs) {
-            if (!indexDocument(doc)) {
-                return count;
-            } else {
-                count++;
-            }
+    public ListenableFuture<Map<Integer, String>> indexDocuments(
+            Collection<Map<String, Object>> docs, AckMode ackMode) throws IndexException,
+            IOException {
+        if (docs == null || docs.size() == 0) {
+            return Futures.immediateFuture(Collections.<Integer, String> emptyMap());
         }
-        return count;
+        final BulkIndexAction action = new BulkIndexAction(getName());
+        action.docs(new ArrayList<Map<String, Object>>(docs));
+        return Futures.transform(submitAction(action, ackMode),
+                new Function<Boolean, Map<Integer, String>>() {
+                    @Override
+                    public Map<Integer, String> apply(Boolean result) {
+                        return action.failures();
+                    }
+                });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int indexDocuments(Map<String, Object>[] docs) throws IndexException, IOException {
+        return docs != null ? indexDocuments(Arrays.asList(docs)) : 0;
     }
 
     /**
@@ -537,8 +1246,17 @@ public abstract class AbstractIndex implements IIndex {
     @Override
     public boolean truncate() throws IndexException, IOException {
         TruncateAction action = new TruncateAction(getName());
-        IActionQueue actionQueue = getActionQueue();
-        return actionQueue != null ? actionQueue.queue(action) : performAction(action);
+        return submitAction(action);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenableFuture<Boolean> truncate(AckMode ackMode) throws IndexException,
+            IOException {
+        TruncateAction action = new TruncateAction(getName());
+        return submitAction(action, ackMode);
     }
 
     /**
@@ -548,8 +1266,18 @@ public abstract class AbstractIndex implements IIndex {
     public boolean deleteDocuments(String query) throws IndexException, IOException {
         DeleteAction action = new DeleteAction(getName());
         action.deleteMethod(DeleteAction.DELETE_METHOD_QUERY).query(query);
-        IActionQueue actionQueue = getActionQueue();
-        return actionQueue != null ? actionQueue.queue(action) : performAction(action);
+        return submitAction(action);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenableFuture<Boolean> deleteDocuments(String query, AckMode ackMode)
+            throws IndexException, IOException {
+        DeleteAction action = new DeleteAction(getName());
+        action.deleteMethod(DeleteAction.DELETE_METHOD_QUERY).query(query);
+        return submitAction(action, ackMode);
     }
 
     /**
@@ -559,8 +1287,158 @@ public abstract class AbstractIndex implements IIndex {
     public boolean deleteDocuments(Map<String, Object> terms) throws IndexException, IOException {
         DeleteAction action = new DeleteAction(getName());
         action.deleteMethod(DeleteAction.DELETE_METHOD_TERM).term(terms);
-        IActionQueue actionQueue = getActionQueue();
-        return actionQueue != null ? actionQueue.queue(action) : performAction(action);
+        return submitAction(action);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenableFuture<Boolean> deleteDocuments(Map<String, Object> terms, AckMode ackMode)
+            throws IndexException, IOException {
+        DeleteAction action = new DeleteAction(getName());
+        action.deleteMethod(DeleteAction.DELETE_METHOD_TERM).term(terms);
+        return submitAction(action, ackMode);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.1.1
+     */
+    @Override
+    public ListenableFuture<Long> deleteDocumentsByIds(String idField, Collection<?> ids,
+            AckMode ackMode) throws IndexException, IOException {
+        Schema schema = getSchema();
+        if (idField == null) {
+            idField = schema.singleIdField();
+        }
+        CompiledField field = idField != null ? schema.compiledField(idField) : null;
+        if (field == null || field.type() != FieldSpec.Type.ID) {
+            throw new IndexException(400, "Field [" + idField + "] is not an id field of index ["
+                    + getName() + "]");
+        }
+        List<String> values = new ArrayList<String>(ids != null ? ids.size() : 0);
+        if (ids != null) {
+            for (Object id : ids) {
+                if (id != null) {
+                    values.add(id.toString());
+                }
+            }
+        }
+        if (values.size() == 0) {
+            return Futures.immediateFuture(Long.valueOf(0));
+        }
+        final DeleteAction action = new DeleteAction(getName());
+        action.deleteMethod(DeleteAction.DELETE_METHOD_IDS).field(field.name()).ids(values);
+        return Futures.transform(submitAction(action, ackMode), new Function<Boolean, Long>() {
+            @Override
+            public Long apply(Boolean result) {
+                return action.numAffected();
+            }
+        });
+    }
+
+    /**
+     * Builds doc-values updates from a document's data: values of
+     * doc-values fields, other fields are ignored.
+     * 
+     * @param docData
+     * @return {@code null} if there is no doc-values field to update
+     * @since 0.1.1
+     */
+    protected Field[] buildDocValuesUpdates(Map<String, Object> docData) {
+        Schema schema = getSchema();
+        List<Field> result = new ArrayList<Field>();
+        for (Entry<String, Object> entry : docData.entrySet()) {
+            CompiledField field = schema.compiledField(entry.getKey());
+            Object value = entry.getValue();
+            if (field != null && field.hasDocValues() && value instanceof Number) {
+                result.add(new NumericDocValuesField(field.name(), ((Number) value).longValue()));
+            }
+        }
+        return result.size() > 0 ? result.toArray(new Field[result.size()]) : null;
+    }
+
+    private List<Map<String, Object>> validateDocValuesUpdates(
+            Collection<Map<String, Object>> docs) throws IndexException {
+        Schema schema = getSchema();
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>(docs.size());
+        for (Map<String, Object> docData : docs) {
+            if (buildTermForUpdate(docData) == null) {
+                throw new IndexException(400, "Document has no id: " + docData);
+            }
+            boolean hasUpdate = false;
+            for (Entry<String, Object> entry : docData.entrySet()) {
+                CompiledField field = schema.compiledField(entry.getKey());
+                if (field == null || field.type() == FieldSpec.Type.ID) {
+                    continue;
+                }
+                if (!field.hasDocValues() || !(entry.getValue() instanceof Number)) {
+                    throw new IndexException(400, "Field [" + entry.getKey()
+                            + "] is not a doc-values field or value is not a number");
+                }
+                hasUpdate = true;
+            }
+            if (!hasUpdate) {
+                throw new IndexException(400, "No doc-values field to update: " + docData);
+            }
+            result.add(docData);
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.1.1
+     */
+    @Override
+    public boolean updateDocValues(Collection<Map<String, Object>> docs) throws IndexException,
+            IOException {
+        if (docs == null || docs.size() == 0) {
+            return false;
+        }
+        UpdateDocValuesAction action = new UpdateDocValuesAction(getName());
+        action.docs(validateDocValuesUpdates(docs));
+        return submitAction(action);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.1.1
+     */
+    @Override
+    public ListenableFuture<Boolean> updateDocValues(Collection<Map<String, Object>> docs,
+            AckMode ackMode) throws IndexException, IOException {
+        if (docs == null || docs.size() == 0) {
+            return Futures.immediateFuture(Boolean.FALSE);
+        }
+        UpdateDocValuesAction action = new UpdateDocValuesAction(getName());
+        action.docs(validateDocValuesUpdates(docs));
+        return submitAction(action, ackMode);
+    }
+
+    /**
+     * Reads values of doc-values fields, and the version, of a search hit.
+     */
+    private static void readDocValues(IndexSearcher is, int docId, List<CompiledField> fields,
+            Map<String, Object> docMap) throws IOException {
+        List<LeafReaderContext> leaves = is.getIndexReader().leaves();
+        LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+        LeafReader reader = leaf.reader();
+        int doc = docId - leaf.docBase;
+        for (CompiledField field : fields) {
+            Bits docsWithField = reader.getDocsWithField(field.name());
+            if (docsWithField != null && docsWithField.get(doc)) {
+                docMap.put(field.name(), reader.getNumericDocValues(field.name()).get(doc));
+            }
+        }
+        Bits docsWithVersion = reader.getDocsWithField(FIELD_VERSION);
+        if (docsWithVersion != null && docsWithVersion.get(doc)) {
+            docMap.put(FIELD_VERSION, reader.getNumericDocValues(FIELD_VERSION).get(doc));
+        }
     }
 
     /**
@@ -580,38 +1458,254 @@ public abstract class AbstractIndex implements IIndex {
             limit = Constants.DEFAULT_PAGE_SIZE;
         }
         final Map<String, Object> result = new HashMap<String, Object>();
-        final IndexSearcher is = getIndexSearcher();
-
-        int numTopDocs = start + limit;
-        ScoreDoc bmScoreDoc = IndexUtils.derializeScoreDoc(bookmark);
-        TopDocs topDocs = bmScoreDoc != null ? is.searchAfter(bmScoreDoc, query, numTopDocs) : is
-                .search(query, numTopDocs);
-        result.put("num_hits", topDocs.totalHits);
-
-        List<Map<String, Object>> docList = new ArrayList<Map<String, Object>>();
-        result.put("docs", docList);
-        for (int i = start; i < numTopDocs; i++) {
-            if (i < topDocs.scoreDocs.length) {
-                ScoreDoc scoreDoc = topDocs.scoreDocs[i];
-                bookmark = IndexUtils.serializeScoreDoc(scoreDoc);
-                result.put("bookmark", bookmark);
-                Map<String, Object> docMap = IndexUtils.docToMap(is.doc(scoreDoc.doc));
-                if (docMap != null) {
-                    docList.add(docMap);
+        List<CompiledField> docValuesFields = getSchema().docValuesFields();
+        final IndexSearcher is = acquireIndexSearcher();
+        try {
+            int numTopDocs = start + limit;
+            ScoreDoc bmScoreDoc = IndexUtils.derializeScoreDoc(bookmark);
+            TopDocs topDocs = bmScoreDoc != null ? is.searchAfter(bmScoreDoc, query, numTopDocs)
+                    : is.search(query, numTopDocs);
+            result.put("num_hits", topDocs.totalHits);
+
+            List<Map<String, Object>> docList = new ArrayList<Map<String, Object>>();
+            result.put("docs", docList);
+            for (int i = start; i < numTopDocs; i++) {
+                if (i < topDocs.scoreDocs.length) {
+                    ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+                    bookmark = IndexUtils.serializeScoreDoc(scoreDoc);
+                    result.put("bookmark", bookmark);
+                    Map<String, Object> docMap = IndexUtils.docToMap(is.doc(scoreDoc.doc));
+                    if (docMap != null) {
+                        readDocValues(is, scoreDoc.doc, docValuesFields, docMap);
+                    }
+                    if (docMap != null) {
+                        docList.add(docMap);
+                    }
+                } else {
+                    break;
                 }
-            } else {
-                break;
             }
+        } finally {
+            releaseIndexSearcher(is);
         }
 
         return result;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Object> getStats() throws IOException {
+        Map<String, Object> stats = new HashMap<String, Object>();
+        IndexWriter iw = getIndexWriter();
+        stats.put("name", getName());
+        stats.put("num_docs", iw.numDocs());
+        stats.put("max_doc", iw.maxDoc());
+        stats.put("ram_bytes", iw.ramBytesUsed());
+        stats.put("has_uncommitted_changes", iw.hasUncommittedChanges());
+        stats.put("last_applied_seq", getLastAppliedSeq());
+        stats.put("tuning", spec.tuning().toEffectiveMap());
+        stats.put("codec", spec.codec().toEffectiveMap());
+        stats.put("num_stale_versions", numStaleVersions.get());
+        stats.put("version_map_size", versionMap.size());
+        return stats;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public boolean performAction(BaseAction action) throws IndexException, IOException {
+        return performAction(action, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * An action delivered again after a restart whose sequence number is
+     * covered by the latest commit (e.g. it has already been replayed from
+     * translog) is finished without being performed.
+     * </p>
+     * 
+     * @since 0.1.1
+     */
+    @Override
+    public boolean performQueuedAction(BaseAction action) throws IndexException, IOException {
+        long seq = action.seq();
+        if (seq > 0 && seq <= getCommittedSeq() && actionQueue != null) {
+            Logger.info("[" + getName() + "] skipping action #" + seq
+                    + ", already committed");
+            actionQueue.finish(action);
+            return false;
+        }
+        return performAction(action, true);
+    }
+
+    private boolean performAction(BaseAction action, boolean queued) throws IndexException,
+            IOException {
+        boolean result = false;
+        Throwable error = null;
+        try {
+            result = queued ? dispatchWithRetries(action) : dispatchAction(action);
+            return result;
+        } catch (IndexException | IOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            markApplied(action.seq());
+            ackTracker.onApplied(action, result, error, isDurableOnApply());
+            List<BaseAction> superseded = action.takeSuperseded();
+            if (superseded != null) {
+                for (BaseAction supersededAction : superseded) {
+                    markApplied(supersededAction.seq());
+                    ackTracker.onApplied(supersededAction, result, error, isDurableOnApply());
+                }
+            }
+            if (queued) {
+                finishWhenCommitted(action);
+            }
+        }
+    }
+
+    /**
+     * Max number of times a failed queued action is retried.
+     */
+    public final static int MAX_ACTION_RETRIES = 3;
+
+    /**
+     * Delay before the first retry of a failed queued action, doubled on each
+     * following retry.
+     */
+    public final static long ACTION_RETRY_DELAY_MS = 100;
+
+    /**
+     * Performs a queued action, retrying it in place if it fails for a reason
+     * retrying may fix (i.e. not a 4xx {@link IndexException}).
+     * 
+     * <p>
+     * The action is retried by the update worker that took it, so actions
+     * queued after it for the same index/document are still applied after
+     * it. It is not acknowledged, and its translog entry is kept, until it is
+     * done.
+     * </p>
+     * 
+     * @param action
+     * @return
+     * @throws IndexException
+     * @throws IOException
+     */
+    private boolean dispatchWithRetries(BaseAction action) throws IndexException, IOException {
+        for (int numRetries = 0;; numRetries++) {
+            try {
+                return dispatchAction(action);
+            } catch (IndexException | IOException | RuntimeException e) {
+                if (e instanceof IndexException && ((IndexException) e).getStatus() < 500
+                        || numRetries >= MAX_ACTION_RETRIES) {
+                    throw e;
+                }
+                Logger.warn("[" + getName() + "] action #" + action.seq() + " failed, retrying ("
+                        + (numRetries + 1) + "/" + MAX_ACTION_RETRIES + "): " + e.getMessage());
+                try {
+                    Thread.sleep(ACTION_RETRY_DELAY_MS << numRetries);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /*
+     * Performed actions taken from a persistent action queue, finished once a
+     * commit covers them.
+     */
+    private final List<BaseAction> actionsToFinish = new ArrayList<BaseAction>();
+
+    /**
+     * Finishes a performed action in the action queue: right away, or once it
+     * is covered by a commit if the queue is persistent.
+     * 
+     * @param action
+     */
+    private void finishWhenCommitted(BaseAction action) {
+        if (actionQueue == null) {
+            return;
+        }
+        if (!actionQueue.isPersistent()) {
+            actionQueue.finish(action);
+            return;
+        }
+        synchronized (actionsToFinish) {
+            actionsToFinish.add(action);
+        }
+    }
+
+    /**
+     * Are there performed actions waiting for a commit to be finished in the
+     * action queue?
+     * 
+     * @return
+     * @since 0.1.1
+     */
+    protected boolean hasActionsToFinish() {
+        synchronized (actionsToFinish) {
+            return !actionsToFinish.isEmpty();
+        }
+    }
+
+    /**
+     * Takes performed actions waiting to be finished in the action queue, to
+     * be called before committing: the commit covers them all.
+     * 
+     * @return
+     * @since 0.1.1
+     */
+    protected List<BaseAction> takeActionsToFinish() {
+        synchronized (actionsToFinish) {
+            if (actionsToFinish.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<BaseAction> result = new ArrayList<BaseAction>(actionsToFinish);
+            actionsToFinish.clear();
+            return result;
+        }
+    }
+
+    /**
+     * Finishes actions taken with {@link #takeActionsToFinish()} once the
+     * commit has succeeded, or puts them back for the next commit.
+     * 
+     * @param actions
+     * @param committed
+     * @since 0.1.1
+     */
+    protected void onActionsCommitted(List<BaseAction> actions, boolean committed) {
+        if (actions.isEmpty()) {
+            return;
+        }
+        if (committed) {
+            for (BaseAction action : actions) {
+                actionQueue.finish(action);
+            }
+        } else {
+            synchronized (actionsToFinish) {
+                actionsToFinish.addAll(0, actions);
+            }
+        }
+    }
+
+    /**
+     * Gets sequence number of the last translog'ed action covered by the
+     * latest commit.
+     * 
+     * @return {@code 0} if none
+     * @since 0.1.1
+     */
+    protected abstract long getCommittedSeq();
+
+    private boolean dispatchAction(BaseAction action) throws IndexException, IOException {
         if (action instanceof DeleteAction) {
             return performDeleteAction((DeleteAction) action);
         }
@@ -621,6 +1715,12 @@ public abstract class AbstractIndex implements IIndex {
         if (action instanceof IndexAction) {
             return performIndexAction((IndexAction) action);
         }
+        if (action instanceof BulkIndexAction) {
+            return performBulkIndexAction((BulkIndexAction) action);
+        }
+        if (action instanceof UpdateDocValuesAction) {
+            return performUpdateDocValuesAction((UpdateDocValuesAction) action);
+        }
         return false;
     }
 
@@ -656,4 +1756,108 @@ public abstract class AbstractIndex implements IIndex {
      */
     protected abstract boolean performIndexAction(IndexAction action) throws IndexException,
             IOException;
+
+    /**
+     * Performs a batch document indexing action.
+     * 
+     * <p>
+     * Documents that cannot be indexed are reported via
+     * {@link BulkIndexAction#markFailed(int, String)}, the rest of the batch is
+     * still indexed.
+     * </p>
+     * 
+     * @param action
+     * @return {@code true} if at least one document of the batch has been
+     *         indexed
+     * @throws IndexException
+     * @throws IOException
+     */
+    protected abstract boolean performBulkIndexAction(BulkIndexAction action)
+            throws IndexException, IOException;
+
+    /**
+     * Performs an in-place update of doc-values fields.
+     * 
+     * @param action
+     * @return {@code true} if at least one document has been updated
+     * @throws IndexException
+     * @throws IOException
+     * @since 0.1.1
+     */
+    protected abstract boolean performUpdateDocValuesAction(UpdateDocValuesAction action)
+            throws IndexException, IOException;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * Only single-document index actions keyed by a single id field are
+     * partitioned (by id value).
+     * </p>
+     * 
+     * @since 0.1.1
+     */
+    @Override
+    public String getPartitionKey(BaseAction action) {
+        if (action instanceof IndexAction) {
+            Term idTerm = buildTermForUpdate(((IndexAction) action).doc());
+            return idTerm != null ? idTerm.text() : null;
+        }
+        if (action instanceof UpdateDocValuesAction) {
+            List<Map<String, Object>> docs = ((UpdateDocValuesAction) action).docs();
+            Term idTerm = docs != null && docs.size() == 1 ? buildTermForUpdate(docs.get(0))
+                    : null;
+            return idTerm != null ? idTerm.text() : null;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * Only batches of an index keyed by a single id field are partitioned (by
+     * id value).
+     * </p>
+     * 
+     * @since 0.1.1
+     */
+    @Override
+    public List<String> getPartitionKeys(BulkIndexAction action) {
+        List<Map<String, Object>> docs = action.docs();
+        if (docs == null || getSingleIdField() == null) {
+            return null;
+        }
+        List<String> keys = new ArrayList<String>(docs.size());
+        for (Map<String, Object> docData : docs) {
+            Term idTerm = docData != null ? buildTermForUpdate(docData) : null;
+            keys.add(idTerm != null ? idTerm.text() : null);
+        }
+        return keys;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @since 0.1.1
+     */
+    @Override
+    public IBulkBuilder newBulkBuilder(File tempDir, int numThreads, double ramBufferSizeMB)
+            throws IOException {
+        return new BulkBuilder(this, tempDir, numThreads, ramBufferSizeMB);
+    }
+
+    /**
+     * Publishes content built offline (see {@link BulkBuilder}) to this
+     * index, atomically.
+     * 
+     * @param dirs
+     *            committed indices to add to this index
+     * @param replace
+     *            {@code true} to replace this index's existing content
+     * @throws IOException
+     * @since 0.1.1
+     */
+    protected abstract void publishIndexes(Directory[] dirs, boolean replace)
+            throws IOException;
 }
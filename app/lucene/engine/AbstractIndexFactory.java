@@ -3,13 +3,19 @@ package lucene.engine;
 import java.io.IOException;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import lucene.IActionQueue;
 import lucene.IDirectoryFactory;
 import lucene.IIndex;
 import lucene.IIndexFactory;
 import lucene.spec.IndexSpec;
+import lucene.translog.Translog;
+import lucene.translog.TranslogFactory;
 import play.Logger;
 
 import com.google.common.cache.Cache;
@@ -45,12 +51,77 @@ public abstract class AbstractIndexFactory implements IIndexFactory {
         return this;
     }
 
+    private TranslogFactory translogFactory;
+
+    public TranslogFactory getTranslogFactory() {
+        return translogFactory;
+    }
+
+    /**
+     * Sets the factory to create indices' translogs. If not set, indices have
+     * no translog.
+     * 
+     * @param translogFactory
+     * @return
+     */
+    public AbstractIndexFactory setTranslogFactory(TranslogFactory translogFactory) {
+        this.translogFactory = translogFactory;
+        return this;
+    }
+
+    /**
+     * Opens the translog of an index.
+     * 
+     * @param indexName
+     * @return the translog, or {@code null} if translog is not enabled
+     * @throws IOException
+     */
+    protected Translog openTranslog(String indexName) throws IOException {
+        return translogFactory != null ? translogFactory.openTranslog(indexName) : null;
+    }
+
+    private int numApplyThreads = 1;
+    private ExecutorService applyExecutor;
+
+    public int getNumApplyThreads() {
+        return numApplyThreads;
+    }
+
+    /**
+     * Number of threads to apply documents of a batch in parallel (shared by
+     * all indices). Value {@code 1} means documents are applied sequentially
+     * by the update worker, value less than 1 means "number of available
+     * processors".
+     * 
+     * @param numApplyThreads
+     * @return
+     */
+    public AbstractIndexFactory setNumApplyThreads(int numApplyThreads) {
+        this.numApplyThreads = numApplyThreads;
+        return this;
+    }
+
     /**
      * Init method.
      * 
      * @return
      */
     public AbstractIndexFactory init() {
+        if (numApplyThreads < 1) {
+            numApplyThreads = Runtime.getRuntime().availableProcessors();
+        }
+        if (numApplyThreads > 1) {
+            applyExecutor = Executors.newFixedThreadPool(numApplyThreads, new ThreadFactory() {
+                private AtomicInteger counter = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ApplyThread-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
         return this;
     }
 
@@ -62,6 +133,17 @@ public abstract class AbstractIndexFactory implements IIndexFactory {
             cacheIndex.invalidateAll();
         } catch (Exception e) {
         }
+        if (applyExecutor != null) {
+            applyExecutor.shutdownNow();
+            applyExecutor = null;
+        }
+    }
+
+    private AbstractIndex setupIndex(AbstractIndex index) {
+        if (index != null && applyExecutor != null) {
+            index.setApplyExecutor(applyExecutor, numApplyThreads);
+        }
+        return index;
     }
 
     /**
@@ -87,7 +169,7 @@ public abstract class AbstractIndexFactory implements IIndexFactory {
             index = cacheIndex.get(indexName, new Callable<AbstractIndex>() {
                 @Override
                 public AbstractIndex call() throws Exception {
-                    return createIndexInternal(spec, actionQueue);
+                    return setupIndex(createIndexInternal(spec, actionQueue));
                 }
             });
         } catch (Exception e) {
@@ -120,7 +202,7 @@ public abstract class AbstractIndexFactory implements IIndexFactory {
             index = cacheIndex.get(indexName, new Callable<AbstractIndex>() {
                 @Override
                 public AbstractIndex call() throws Exception {
-                    return openIndexInternal(spec, actionQueue);
+                    return setupIndex(openIndexInternal(spec, actionQueue));
                 }
             });
         } catch (ExecutionException e) {
@@ -131,4 +213,18 @@ public abstract class AbstractIndexFactory implements IIndexFactory {
         }
         return index;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recoverIndices(IActionQueue actionQueue) throws IOException {
+        if (translogFactory == null) {
+            return;
+        }
+        for (String indexName : translogFactory.listIndices()) {
+            Logger.info("Recovering index [" + indexName + "] from translog...");
+            createIndex(IndexSpec.newInstance(indexName), actionQueue);
+        }
+    }
 }
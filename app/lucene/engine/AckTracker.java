@@ -0,0 +1,205 @@
+package lucene.engine;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lucene.action.AckMode;
+import lucene.action.BaseAction;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Tracks callers waiting for their actions to be acknowledged.
+ *
+ * <p>
+ * A waiter is registered when an action is submitted and is keyed by the
+ * action's {@link BaseAction#ackId()}, so that the action can be serialized
+ * (translog, persistent queue) in between. Each applied action is stamped with
+ * a monotonic "apply tick"; commits and refreshes capture the current tick
+ * before they start and, when done, release all waiters at or below it, so a
+ * single commit/refresh acknowledges all waiters at once.
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class AckTracker {
+
+    private final static class Waiter {
+        private final BaseAction action;
+        private final AckMode ackMode;
+        private final SettableFuture<Boolean> future = SettableFuture.create();
+        private long tick;
+        private boolean result;
+
+        private Waiter(BaseAction action, AckMode ackMode) {
+            this.action = action;
+            this.ackMode = ackMode;
+        }
+    }
+
+    // seeded with current time so that ids of actions re-delivered after a
+    // restart do not clash with new ones
+    private AtomicLong idGenerator = new AtomicLong(System.currentTimeMillis() * 1000);
+    private ConcurrentMap<Long, Waiter> waitingApply = new ConcurrentHashMap<Long, Waiter>();
+
+    private long applyTick = 0;
+    private List<Waiter> waitingCommit = new LinkedList<Waiter>();
+    private List<Waiter> waitingRefresh = new LinkedList<Waiter>();
+
+    /**
+     * Registers a waiter for an action, must be called before the action is
+     * submitted.
+     *
+     * @param action
+     * @param ackMode
+     * @return future completed with the action's result when it is
+     *         acknowledged, or {@code null} for {@link AckMode#QUEUED}
+     */
+    public SettableFuture<Boolean> register(BaseAction action, AckMode ackMode) {
+        if (ackMode == null || ackMode == AckMode.QUEUED) {
+            return null;
+        }
+        long id = idGenerator.incrementAndGet();
+        Waiter waiter = new Waiter(action, ackMode);
+        waitingApply.put(id, waiter);
+        action.ackId(id);
+        return waiter.future;
+    }
+
+    /**
+     * Unregisters the waiter of an action that could not be submitted.
+     *
+     * @param action
+     */
+    public void cancel(BaseAction action) {
+        Waiter waiter = waitingApply.remove(action.ackId());
+        if (waiter != null) {
+            waiter.future.set(Boolean.FALSE);
+        }
+    }
+
+    /**
+     * Called after an action has been performed (successfully or not).
+     *
+     * @param action
+     * @param result
+     * @param error
+     *            not {@code null} if the action failed with an exception
+     * @param durableOnApply
+     *            {@code true} if applied actions are already durable (e.g.
+     *            fsync'ed to translog before being queued)
+     */
+    public void onApplied(BaseAction action, boolean result, Throwable error,
+            boolean durableOnApply) {
+        long id = action.ackId();
+        Waiter waiter = id != 0 ? waitingApply.remove(id) : null;
+        synchronized (this) {
+            applyTick++;
+            if (waiter == null) {
+                return;
+            }
+            if (error != null) {
+                waiter.future.setException(error);
+                return;
+            }
+            waiter.tick = applyTick;
+            waiter.result = result;
+            // the applied action may be a copy of the submitted one (e.g.
+            // read back from translog or a persistent queue)
+            waiter.action.copyResult(action);
+            switch (waiter.ackMode) {
+            case DURABLE:
+                if (!durableOnApply) {
+                    waitingCommit.add(waiter);
+                    return;
+                }
+                break;
+            case VISIBLE:
+                waitingRefresh.add(waiter);
+                return;
+            default:
+                break;
+            }
+        }
+        waiter.future.set(result);
+    }
+
+    /**
+     * Gets the current apply tick, to be captured before a commit/refresh.
+     *
+     * @return
+     */
+    synchronized public long currentTick() {
+        return applyTick;
+    }
+
+    synchronized public boolean hasCommitWaiters() {
+        return !waitingCommit.isEmpty();
+    }
+
+    synchronized public boolean hasRefreshWaiters() {
+        return !waitingRefresh.isEmpty();
+    }
+
+    /**
+     * Called after a commit that started at the specified tick has completed.
+     *
+     * @param tick
+     */
+    public void onCommitted(long tick) {
+        release(waitingCommit, tick);
+    }
+
+    /**
+     * Called after a refresh that started at the specified tick has completed.
+     *
+     * @param tick
+     */
+    public void onRefreshed(long tick) {
+        release(waitingRefresh, tick);
+    }
+
+    private void release(List<Waiter> waiters, long tick) {
+        List<Waiter> released = new ArrayList<Waiter>();
+        synchronized (this) {
+            Iterator<Waiter> it = waiters.iterator();
+            while (it.hasNext()) {
+                Waiter waiter = it.next();
+                if (waiter.tick > tick) {
+                    // waiters are appended in tick order
+                    break;
+                }
+                released.add(waiter);
+                it.remove();
+            }
+        }
+        for (Waiter waiter : released) {
+            waiter.future.set(waiter.result);
+        }
+    }
+
+    /**
+     * Fails all pending waiters (e.g. the index is being closed).
+     *
+     * @param error
+     */
+    public void failAll(Throwable error) {
+        List<Waiter> failed = new ArrayList<Waiter>(waitingApply.values());
+        waitingApply.clear();
+        synchronized (this) {
+            failed.addAll(waitingCommit);
+            failed.addAll(waitingRefresh);
+            waitingCommit.clear();
+            waitingRefresh.clear();
+        }
+        for (Waiter waiter : failed) {
+            waiter.future.setException(error);
+        }
+    }
+}
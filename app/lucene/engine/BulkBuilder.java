@@ -0,0 +1,270 @@
+package lucene.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lucene.IBulkBuilder;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import play.Logger;
+import util.IndexException;
+
+/**
+ * Builds an index's content with several temporary local index writers in
+ * parallel, then merges them into the index with
+ * {@link IndexWriter#addIndexes(Directory...)}.
+ *
+ * <p>
+ * Input documents are split round-robin, in batches, among builder threads;
+ * each thread owns an index writer with a large RAM buffer that only adds
+ * documents (no deletes, no commits until the end).
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class BulkBuilder implements IBulkBuilder {
+
+    private final static int BATCH_SIZE = 1000;
+
+    /**
+     * Max number of batches waiting per builder thread; the caller of
+     * {@link #add(Map)} blocks when builders cannot keep up.
+     */
+    private final static int MAX_PENDING_BATCHES = 4;
+
+    private final static List<Map<String, Object>> END_OF_INPUT =
+            new ArrayList<Map<String, Object>>(0);
+
+    private final AbstractIndex index;
+    private final File workDir;
+    private final Builder[] builders;
+    private final AtomicLong numDocs = new AtomicLong(0);
+    private volatile Throwable error;
+    private List<Map<String, Object>> batch = new ArrayList<Map<String, Object>>(BATCH_SIZE);
+    private int nextBuilder = 0;
+    private boolean done = false, cleanedUp = false;
+
+    private final class Builder extends Thread {
+        private final Directory directory;
+        private final IndexWriter indexWriter;
+        private final BlockingQueue<List<Map<String, Object>>> batches =
+                new ArrayBlockingQueue<List<Map<String, Object>>>(MAX_PENDING_BATCHES);
+        private boolean closed = false;
+
+        public Builder(int id, double ramBufferSizeMB) throws IOException {
+            super("BulkBuilder - " + index.getName() + " - " + id);
+            setDaemon(true);
+            directory = FSDirectory.open(new File(workDir, "part-" + id).toPath());
+            IndexWriterConfig iwc = new IndexWriterConfig(index.getAnalyser());
+            iwc.setOpenMode(OpenMode.CREATE);
+            iwc.setRAMBufferSizeMB(ramBufferSizeMB);
+            iwc.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+            iwc.setUseCompoundFile(false);
+            // segments are copied as-is by addIndexes, they must be written
+            // with the index's codec
+            iwc.setCodec(index.getSpec().codec().newCodec());
+            iwc.setCommitOnClose(false);
+            indexWriter = new IndexWriter(directory, iwc);
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    List<Map<String, Object>> docs = batches.take();
+                    if (docs == END_OF_INPUT) {
+                        break;
+                    }
+                    for (Map<String, Object> docData : docs) {
+                        Document doc = index.buildDocument(docData);
+                        if (doc != null) {
+                            indexWriter.addDocument(doc);
+                            numDocs.incrementAndGet();
+                        }
+                    }
+                    index.releaseDocuments();
+                }
+            } catch (InterruptedException e) {
+                // aborted
+            } catch (Throwable t) {
+                error = t;
+            }
+        }
+
+        private void commitAndClose() throws IOException {
+            indexWriter.commit();
+            indexWriter.close();
+            closed = true;
+        }
+
+        private void rollback() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                indexWriter.rollback();
+            } catch (Exception e) {
+                Logger.warn(e.getMessage(), e);
+            }
+        }
+    }
+
+    public BulkBuilder(AbstractIndex index, File tempDir, int numThreads, double ramBufferSizeMB)
+            throws IOException {
+        this.index = index;
+        this.workDir = new File(tempDir, index.getName() + "-" + System.currentTimeMillis());
+        int numBuilders = numThreads > 0 ? numThreads : Runtime.getRuntime()
+                .availableProcessors();
+        this.builders = new Builder[numBuilders];
+        try {
+            for (int i = 0; i < numBuilders; i++) {
+                builders[i] = new Builder(i, ramBufferSizeMB);
+            }
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+        for (Builder builder : builders) {
+            builder.start();
+        }
+    }
+
+    private void checkError() throws IndexException {
+        if (error != null) {
+            throw new IndexException("Bulk build of index [" + index.getName() + "] failed: "
+                    + error.getMessage(), error);
+        }
+    }
+
+    private void dispatch(List<Map<String, Object>> docs) throws IndexException {
+        Builder builder = builders[nextBuilder];
+        nextBuilder = (nextBuilder + 1) % builders.length;
+        dispatch(builder, docs);
+    }
+
+    private void dispatch(Builder builder, List<Map<String, Object>> docs)
+            throws IndexException {
+        try {
+            while (!builder.batches.offer(docs, 100, TimeUnit.MILLISECONDS)) {
+                // do not wait forever for a builder that has failed
+                checkError();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexException(500, "Interrupted while bulk building index ["
+                    + index.getName() + "]");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    synchronized public void add(Map<String, Object> doc) throws IndexException, IOException {
+        if (done) {
+            throw new IndexException(500, "Bulk builder has already finished");
+        }
+        checkError();
+        batch.add(doc);
+        if (batch.size() >= BATCH_SIZE) {
+            dispatch(batch);
+            batch = new ArrayList<Map<String, Object>>(BATCH_SIZE);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getNumDocs() {
+        return numDocs.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    synchronized public long publish(boolean replace) throws IndexException, IOException {
+        if (done) {
+            throw new IndexException(500, "Bulk builder has already finished");
+        }
+        done = true;
+        try {
+            if (batch.size() > 0) {
+                dispatch(batch);
+            }
+            for (Builder builder : builders) {
+                dispatch(builder, END_OF_INPUT);
+            }
+            for (Builder builder : builders) {
+                builder.join();
+            }
+            checkError();
+            Directory[] dirs = new Directory[builders.length];
+            for (int i = 0; i < builders.length; i++) {
+                builders[i].commitAndClose();
+                dirs[i] = builders[i].directory;
+            }
+            index.publishIndexes(dirs, replace);
+            return numDocs.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IndexException(500, "Interrupted while bulk building index ["
+                    + index.getName() + "]");
+        } finally {
+            cleanup();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    synchronized public void abort() {
+        done = true;
+        cleanup();
+    }
+
+    private void cleanup() {
+        if (cleanedUp) {
+            return;
+        }
+        cleanedUp = true;
+        for (Builder builder : builders) {
+            if (builder == null) {
+                continue;
+            }
+            if (builder.isAlive()) {
+                builder.interrupt();
+                try {
+                    builder.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            // no-op if the builder has been committed and closed
+            builder.rollback();
+            try {
+                builder.directory.close();
+            } catch (Exception e) {
+                Logger.warn(e.getMessage(), e);
+            }
+        }
+        FileUtils.deleteQuietly(workDir);
+    }
+}
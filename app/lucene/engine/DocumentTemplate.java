@@ -0,0 +1,116 @@
+package lucene.engine;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import lucene.spec.CompiledField;
+import lucene.spec.PreTokenizedTokenStream;
+import lucene.spec.Schema;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+
+/**
+ * A reusable {@link Document} together with its {@link Field} instances.
+ *
+ * <p>
+ * Building a document from a template does not allocate a new document nor
+ * new fields: fields built for the previous document are reset with
+ * {@code setStringValue}/{@code setLongValue}/{@code setDoubleValue}. A
+ * document built from a template is valid until the template is reset
+ * again, i.e. until it has been handed to the index writer.
+ * </p>
+ *
+ * <p>
+ * Not thread-safe: each thread owns its templates (see
+ * {@link AbstractIndex#buildDocument(Map, int)}).
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class DocumentTemplate {
+
+    private final static class Slot {
+        private final Field field;
+        private int stamp;
+
+        private Slot(Field field) {
+            this.field = field;
+        }
+    }
+
+    private final Document doc = new Document();
+    private final Map<CompiledField, Slot> slots = new IdentityHashMap<CompiledField, Slot>();
+    private Schema schema;
+    private int stamp;
+
+    /**
+     * Resets the template to build a new document.
+     *
+     * @param schema
+     *            current schema, cached fields are dropped if it has changed
+     * @return the (empty) document
+     */
+    public Document reset(Schema schema) {
+        if (this.schema != schema) {
+            slots.clear();
+            this.schema = schema;
+        }
+        // Document.getFields() is the document's backing list
+        doc.getFields().clear();
+        stamp++;
+        return doc;
+    }
+
+    /**
+     * Drops the values of the last built document, once it has been handed
+     * to the index writer. Fields are kept for reuse, but no longer reference
+     * the document's content.
+     */
+    public void clear() {
+        doc.getFields().clear();
+        for (Slot slot : slots.values()) {
+            Field field = slot.field;
+            if (field.numericValue() == null && field.stringValue() != null) {
+                field.setStringValue("");
+            }
+            TokenStream tokenStream = field.tokenStreamValue();
+            if (tokenStream instanceof PreTokenizedTokenStream) {
+                ((PreTokenizedTokenStream) tokenStream).setTokens(null);
+            }
+        }
+    }
+
+    /**
+     * Gets a (reused) Lucene field with a value.
+     *
+     * @param field
+     * @param value
+     * @return {@code null} if the value is not valid for the field, or the
+     *         field is neither stored nor indexed
+     */
+    public Field field(CompiledField field, Object value) {
+        Slot slot = slots.get(field);
+        if (slot == null) {
+            Field luceneField = field.newField(value);
+            if (luceneField != null) {
+                slot = new Slot(luceneField);
+                slot.stamp = stamp;
+                slots.put(field, slot);
+            }
+            return luceneField;
+        }
+        if (slot.stamp == stamp) {
+            // same field occurs twice in the document (e.g. "Title" and
+            // "title"), the cached instance is already in use
+            return field.newField(value);
+        }
+        if (!field.setValue(slot.field, value)) {
+            return null;
+        }
+        slot.stamp = stamp;
+        return slot.field;
+    }
+}
@@ -0,0 +1,107 @@
+package lucene.engine;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import lucene.spec.MaintenancePolicy;
+
+/**
+ * A maintenance job (force-merge or expunge-deletes) of an index, and its
+ * progress.
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class MaintenanceJob {
+
+    public final static String TRIGGER_MANUAL = "manual";
+    public final static String TRIGGER_WINDOW = "window";
+    public final static String TRIGGER_THRESHOLD = "threshold";
+
+    private final String type, trigger;
+    private final int maxSegments;
+    private volatile long startTimestamp, endTimestamp;
+    private volatile int segmentsBefore, segmentsAfter;
+    private volatile double deletesPctBefore, deletesPctAfter;
+    private volatile String error;
+
+    /**
+     * @param type
+     *            {@link MaintenancePolicy#JOB_EXPUNGE_DELETES} or
+     *            {@link MaintenancePolicy#JOB_FORCE_MERGE}
+     * @param trigger
+     * @param maxSegments
+     *            used by force-merge jobs
+     */
+    public MaintenanceJob(String type, String trigger, int maxSegments) {
+        this.type = type;
+        this.trigger = trigger;
+        this.maxSegments = Math.max(maxSegments, 1);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getTrigger() {
+        return trigger;
+    }
+
+    public int getMaxSegments() {
+        return maxSegments;
+    }
+
+    public boolean isForceMerge() {
+        return MaintenancePolicy.JOB_FORCE_MERGE.equals(type);
+    }
+
+    /**
+     * Percentage of deleted documents once the job has finished.
+     *
+     * @return
+     */
+    public double getDeletesPctAfter() {
+        return deletesPctAfter;
+    }
+
+    public boolean isDone() {
+        return endTimestamp > 0;
+    }
+
+    void started(int numSegments, double deletesPct) {
+        segmentsBefore = numSegments;
+        deletesPctBefore = deletesPct;
+        startTimestamp = System.currentTimeMillis();
+    }
+
+    void finished(int numSegments, double deletesPct, String error) {
+        segmentsAfter = numSegments;
+        deletesPctAfter = deletesPct;
+        this.error = error;
+        endTimestamp = System.currentTimeMillis();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("type", type);
+        result.put("trigger", trigger);
+        if (isForceMerge()) {
+            result.put("max_segments", maxSegments);
+        }
+        result.put("start_timestamp", startTimestamp);
+        result.put("segments_before", segmentsBefore);
+        result.put("deletes_pct_before", deletesPctBefore);
+        if (isDone()) {
+            result.put("end_timestamp", endTimestamp);
+            result.put("duration_ms", endTimestamp - startTimestamp);
+            result.put("segments_after", segmentsAfter);
+            result.put("deletes_pct_after", deletesPctAfter);
+            if (error != null) {
+                result.put("error", error);
+            }
+        } else if (startTimestamp > 0) {
+            result.put("elapsed_ms", System.currentTimeMillis() - startTimestamp);
+        }
+        return result;
+    }
+}
@@ -3,19 +3,40 @@ package lucene.engine;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 
 import lucene.IActionQueue;
+import lucene.action.BaseAction;
+import lucene.action.BulkIndexAction;
 import lucene.action.DeleteAction;
 import lucene.action.IndexAction;
 import lucene.action.TruncateAction;
+import lucene.action.UpdateDocValuesAction;
+import lucene.spec.CommitPolicy;
 import lucene.spec.IndexSpec;
+import lucene.spec.MaintenancePolicy;
+import lucene.translog.Translog;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.MergeScheduler;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.queries.TermsQuery;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.store.Directory;
 
@@ -29,10 +50,22 @@ import play.Logger;
  */
 public class StandaloneIndex extends AbstractIndex {
 
+    /**
+     * Name of the commit user-data entry that records the sequence number of
+     * the last translog'ed action included in the commit.
+     */
+    public final static String COMMIT_DATA_TRANSLOG_SEQ = "translog_seq";
+
     public static StandaloneIndex create(Directory directory, IndexSpec spec,
             IActionQueue actionQueue) throws IOException {
+        return create(directory, spec, actionQueue, null);
+    }
+
+    public static StandaloneIndex create(Directory directory, IndexSpec spec,
+            IActionQueue actionQueue, Translog translog) throws IOException {
         if (directory != null && spec != null) {
             StandaloneIndex index = new StandaloneIndex(directory, spec, actionQueue);
+            index.setTranslog(translog);
             index.init();
             return index;
         }
@@ -50,13 +83,41 @@ public class StandaloneIndex extends AbstractIndex {
     public StandaloneIndex init() throws IOException {
         super.init();
 
+        recoverFromTranslog();
+
+        refreshThread = new RefreshThread(getName());
+        refreshThread.start();
+
         commitThread = new CommitThread(getName());
         commitThread.start();
 
+        maintenanceThread = new MaintenanceThread(getName());
+        maintenanceThread.start();
+
         return this;
     }
 
     public void destroy() {
+        if (maintenanceThread != null) {
+            try {
+                maintenanceThread.stopExecution();
+            } catch (Exception e) {
+                // EMPTY
+            } finally {
+                maintenanceThread = null;
+            }
+        }
+
+        if (refreshThread != null) {
+            try {
+                refreshThread.stopExecution();
+            } catch (Exception e) {
+                // EMPTY
+            } finally {
+                refreshThread = null;
+            }
+        }
+
         if (commitThread != null) {
             try {
                 commitThread.stopExecution();
@@ -67,13 +128,149 @@ public class StandaloneIndex extends AbstractIndex {
             }
         }
 
+        try {
+            // commit explicitly so that the translog checkpoint is recorded
+            doCommit();
+        } catch (Exception e) {
+            Logger.warn(e.getMessage(), e);
+        }
+
+        try {
+            persistSchema();
+        } catch (Exception e) {
+            Logger.warn(e.getMessage(), e);
+        }
+
         super.destroy();
     }
 
+    /**
+     * Reads sequence number of the last translog'ed action included in the
+     * latest commit.
+     * 
+     * @return
+     * @throws IOException
+     */
+    protected long readCommittedSeq() throws IOException {
+        Directory directory = getDirectory();
+        if (!DirectoryReader.indexExists(directory)) {
+            return 0;
+        }
+        Map<String, String> userData = SegmentInfos.readLatestCommit(directory).getUserData();
+        String value = userData != null ? userData.get(COMMIT_DATA_TRANSLOG_SEQ) : null;
+        try {
+            return value != null ? Long.parseLong(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Replays translog's actions that have not been committed.
+     * 
+     * @throws IOException
+     */
+    protected void recoverFromTranslog() throws IOException {
+        Translog translog = getTranslog();
+        if (translog == null) {
+            return;
+        }
+        committedSeq = readCommittedSeq();
+        translog.ensureSeqAfter(committedSeq);
+        markApplied(committedSeq);
+        Map<Long, BaseAction> actions = translog.readAfter(committedSeq);
+        if (actions.size() > 0) {
+            Logger.info("[" + getName() + "] replaying " + actions.size()
+                    + " action(s) from translog after seq " + committedSeq);
+            for (Map.Entry<Long, BaseAction> entry : actions.entrySet()) {
+                BaseAction action = entry.getValue();
+                action.seq(entry.getKey());
+                try {
+                    performAction(action);
+                } catch (Exception e) {
+                    Logger.warn("[" + getName() + "] cannot replay action #" + entry.getKey()
+                            + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        doCommit();
+    }
+
     private AtomicLong uncommitActions = new AtomicLong(0);
+    private volatile long firstUncommitTimestamp = 0;
+    private volatile long committedSeq = 0;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long getCommittedSeq() {
+        return committedSeq;
+    }
+
+    private volatile long lastCommitTimestamp = System.currentTimeMillis();
+    private volatile long lastCommitDurationMs = 0;
+    private volatile int commitBackoff = 1;
+
+    /**
+     * Interval at which the commit policy is checked.
+     */
+    private final static long COMMIT_CHECK_INTERVAL_MS = 100;
+
+    /**
+     * Records that some changes have been made to the index and not
+     * committed yet.
+     * 
+     * @param numChanges
+     */
+    protected void markUncommitted(long numChanges) {
+        if (uncommitActions.getAndAdd(numChanges) == 0) {
+            firstUncommitTimestamp = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Refreshes searchers periodically, so that changes are visible to
+     * searches without waiting for a commit.
+     */
+    private final class RefreshThread extends Thread {
+        private volatile boolean running = true;
+
+        public RefreshThread(String indexName) {
+            super("RefreshThread - " + indexName);
+            setDaemon(true);
+        }
+
+        public void stopExecution() {
+            this.running = false;
+            interrupt();
+        }
 
+        public void run() {
+            while (running && !isInterrupted()) {
+                long refreshIntervalMs = getSchema().commitPolicy().refreshIntervalMs();
+                try {
+                    Thread.sleep(refreshIntervalMs > 0 ? refreshIntervalMs
+                            : CommitPolicy.DEFAULT_REFRESH_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (refreshIntervalMs > 0 || getAckTracker().hasRefreshWaiters()) {
+                    try {
+                        refreshSearcher();
+                    } catch (Exception e) {
+                        Logger.warn(e.getMessage(), e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Commits the index according to its {@link CommitPolicy}.
+     */
     private final class CommitThread extends Thread {
-        private boolean running = true;
+        private volatile boolean running = true;
 
         public CommitThread(String indexName) {
             super("CommitThread - " + indexName);
@@ -82,21 +279,336 @@ public class StandaloneIndex extends AbstractIndex {
 
         public void stopExecution() {
             this.running = false;
+            interrupt();
         }
 
         public void run() {
             while (running && !isInterrupted()) {
                 try {
-                    doCommit();
-                    Thread.sleep(1000);
+                    Thread.sleep(COMMIT_CHECK_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                try {
+                    // new fields are persisted in batches, off the indexing path
+                    persistSchema();
+                    maybeCommit();
                 } catch (Exception e) {
+                    Logger.warn(e.getMessage(), e);
                 }
             }
         }
     }
 
+    /**
+     * Commits the index if one of the commit policy's thresholds has been
+     * reached.
+     * 
+     * @return {@code true} if the index has been committed
+     * @throws IOException
+     */
+    protected boolean maybeCommit() throws IOException {
+        long numChanges = uncommitActions.get();
+        if (getAckTracker().hasCommitWaiters()) {
+            // someone is waiting for durability, commit now; waiters arrived
+            // since the last check are acknowledged by this single commit
+            doCommit();
+            return true;
+        }
+        if (numChanges <= 0 && getLastAppliedSeq() <= committedSeq) {
+            if (hasActionsToFinish()) {
+                // performed actions changed nothing, the last commit covers them
+                doCommit();
+            }
+            return false;
+        }
+        CommitPolicy policy = getSchema().commitPolicy();
+        boolean adaptive = policy.isAdaptive();
+        long backoff = adaptive ? commitBackoff : 1;
+        long now = System.currentTimeMillis();
+
+        long maxActions = policy.maxActions();
+        long maxBytes = policy.maxBufferedBytes();
+        boolean overThreshold = (maxActions > 0 && numChanges >= maxActions * backoff)
+                || (maxBytes > 0 && getIndexWriter().ramBytesUsed() >= maxBytes * backoff);
+        long oldestChange = numChanges > 0 ? firstUncommitTimestamp : lastCommitTimestamp;
+        boolean overInterval = now - oldestChange >= policy.maxIntervalMs();
+        if (!overThreshold && !overInterval) {
+            return false;
+        }
+        if (adaptive && !overInterval && now - lastCommitTimestamp < lastCommitDurationMs * 10) {
+            // keep time spent committing at about 10% at most
+            return false;
+        }
+
+        doCommit();
+
+        lastCommitDurationMs = System.currentTimeMillis() - now;
+        if (adaptive) {
+            commitBackoff = overThreshold ? Math.min(commitBackoff * 2, CommitPolicy.MAX_BACKOFF)
+                    : Math.max(commitBackoff / 2, 1);
+        }
+        return true;
+    }
+
     /*----------------------------------------------------------------------*/
+    private final Object maintenanceMonitor = new Object();
+    private volatile MaintenanceJob requestedJob, runningJob, lastJob;
+    private AtomicLong numMaintenanceJobs = new AtomicLong(0);
+    /* start of the last off-peak window a job has been run in */
+    private long lastWindowStart = -1;
+    /*
+     * deletes ratio left by the last job, while it is still at or above the
+     * threshold (-1 otherwise): the threshold trigger is suppressed until the
+     * ratio grows again
+     */
+    private volatile double deletesPctAfterLastJob = -1;
+
+    /**
+     * Runs maintenance jobs: requested ones, and those triggered by the
+     * {@link MaintenancePolicy}.
+     */
+    private final class MaintenanceThread extends Thread {
+        private volatile boolean running = true;
+
+        public MaintenanceThread(String indexName) {
+            super("MaintenanceThread - " + indexName);
+            setDaemon(true);
+        }
+
+        public void stopExecution() {
+            this.running = false;
+            interrupt();
+        }
+
+        public void run() {
+            while (running && !isInterrupted()) {
+                MaintenanceJob job;
+                try {
+                    synchronized (maintenanceMonitor) {
+                        if (requestedJob == null) {
+                            maintenanceMonitor.wait(getSchema().maintenancePolicy()
+                                    .checkIntervalMs());
+                        }
+                        job = requestedJob;
+                        requestedJob = null;
+                        if (job == null) {
+                            job = nextScheduledJob();
+                        }
+                        runningJob = job;
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                } catch (Exception e) {
+                    Logger.warn(e.getMessage(), e);
+                    continue;
+                }
+                if (job != null) {
+                    try {
+                        runMaintenance(job);
+                    } catch (Exception e) {
+                        Logger.warn(e.getMessage(), e);
+                    } finally {
+                        runningJob = null;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Percentage of deleted documents in this index.
+     * 
+     * @return
+     * @throws IOException
+     */
+    protected double getDeletesPct() throws IOException {
+        IndexWriter iw = getIndexWriter();
+        int maxDoc = iw.maxDoc();
+        return maxDoc > 0 ? (maxDoc - iw.numDocs()) * 100.0 / maxDoc : 0;
+    }
+
+    private int getNumSegments() throws IOException {
+        IndexSearcher is = acquireIndexSearcher();
+        try {
+            return is.getIndexReader().leaves().size();
+        } finally {
+            releaseIndexSearcher(is);
+        }
+    }
+
+    /**
+     * Checks the maintenance policy's triggers.
+     * 
+     * @return the job to run, or {@code null} if none is due
+     * @throws IOException
+     */
+    protected MaintenanceJob nextScheduledJob() throws IOException {
+        MaintenancePolicy policy = getSchema().maintenancePolicy();
+        long windowStart = policy.windowStart(System.currentTimeMillis());
+        if (windowStart > 0 && windowStart != lastWindowStart) {
+            lastWindowStart = windowStart;
+            int maxSegments = policy.maxSegments();
+            return maxSegments > 0 ? new MaintenanceJob(MaintenancePolicy.JOB_FORCE_MERGE,
+                    MaintenanceJob.TRIGGER_WINDOW, maxSegments) : new MaintenanceJob(
+                    MaintenancePolicy.JOB_EXPUNGE_DELETES, MaintenanceJob.TRIGGER_WINDOW, 0);
+        }
+        double threshold = policy.deletesPctThreshold();
+        if (threshold <= 0) {
+            return null;
+        }
+        double deletesPct = getDeletesPct();
+        if (deletesPct < threshold) {
+            deletesPctAfterLastJob = -1;
+            return null;
+        }
+        double lastPct = deletesPctAfterLastJob;
+        if (lastPct >= 0 && deletesPct < lastPct + getRearmMarginPct(threshold)) {
+            // the last job could not bring the ratio below the threshold,
+            // running it again right away would not either
+            return null;
+        }
+        return new MaintenanceJob(MaintenancePolicy.JOB_EXPUNGE_DELETES,
+                MaintenanceJob.TRIGGER_THRESHOLD, 0);
+    }
+
+    /**
+     * How much the deletes ratio must grow after a job that left it at or
+     * above the threshold before the threshold trigger fires again: a tenth
+     * of the threshold, at least 1 percentage point.
+     */
+    private static double getRearmMarginPct(double threshold) {
+        return Math.max(1.0, threshold / 10);
+    }
+
+    /**
+     * Runs a maintenance job, merges are IO-throttled while it is running.
+     * Blocks until the job's merges are done.
+     * 
+     * <p>
+     * An expunge-deletes job rewrites segments whose deletes ratio is above
+     * the policy's {@code deletes_pct_threshold} (rather than
+     * {@link TieredMergePolicy}'s default of 10%), so that the index's ratio
+     * ends up below the threshold.
+     * </p>
+     * 
+     * <p>
+     * Indexing and searching go on during the job; merged segments become
+     * visible at next refresh, and replace the old ones on disk at next
+     * commit.
+     * </p>
+     * 
+     * @param job
+     * @throws IOException
+     */
+    protected void runMaintenance(MaintenanceJob job) throws IOException {
+        IndexWriter iw = getIndexWriter();
+        MergeScheduler ms = iw.getConfig().getMergeScheduler();
+        ThrottledMergeScheduler tms = ms instanceof ThrottledMergeScheduler
+                ? (ThrottledMergeScheduler) ms : null;
+        refreshSearcher();
+        job.started(getNumSegments(), getDeletesPct());
+        if (Logger.isDebugEnabled()) {
+            Logger.debug("[" + getName() + "] maintenance started: " + job.toMap());
+        }
+        String error = null;
+        MaintenancePolicy policy = getSchema().maintenancePolicy();
+        if (tms != null) {
+            tms.setMaxMBPerSec(policy.ioMBPerSec());
+        }
+        try {
+            if (job.isForceMerge()) {
+                iw.forceMerge(job.getMaxSegments(), true);
+            } else {
+                MergePolicy mp = iw.getConfig().getMergePolicy();
+                double threshold = policy.deletesPctThreshold();
+                if (threshold > 0 && mp instanceof TieredMergePolicy) {
+                    ((TieredMergePolicy) mp).setForceMergeDeletesPctAllowed(Math.min(
+                            threshold, 100));
+                }
+                iw.forceMergeDeletes(true);
+            }
+            markUncommitted(1);
+        } catch (Exception e) {
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+            Logger.warn("[" + getName() + "] maintenance failed: " + error, e);
+        } finally {
+            if (tms != null) {
+                tms.setMaxMBPerSec(0);
+            }
+            int numSegments = -1;
+            try {
+                refreshSearcher();
+                numSegments = getNumSegments();
+            } catch (Exception e) {
+                Logger.warn(e.getMessage(), e);
+            }
+            job.finished(numSegments, getDeletesPct(), error);
+            double threshold = policy.deletesPctThreshold();
+            deletesPctAfterLastJob = threshold > 0 && job.getDeletesPctAfter() >= threshold
+                    ? job.getDeletesPctAfter() : -1;
+            lastJob = job;
+            numMaintenanceJobs.incrementAndGet();
+            if (Logger.isDebugEnabled()) {
+                Logger.debug("[" + getName() + "] maintenance finished: " + job.toMap());
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean requestMaintenance(String job, int maxSegments) {
+        if (!MaintenancePolicy.isValidJob(job)) {
+            return false;
+        }
+        synchronized (maintenanceMonitor) {
+            if (requestedJob != null || runningJob != null) {
+                return false;
+            }
+            requestedJob = new MaintenanceJob(job, MaintenanceJob.TRIGGER_MANUAL, maxSegments);
+            maintenanceMonitor.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Object> getMaintenanceStatus() throws IOException {
+        Map<String, Object> result = new HashMap<String, Object>();
+        MaintenancePolicy policy = getSchema().maintenancePolicy();
+        result.put("policy", policy.toMap());
+        result.put("in_window", policy.windowStart(System.currentTimeMillis()) > 0);
+        result.put("deletes_pct", getDeletesPct());
+        result.put("num_segments", getNumSegments());
+        result.put("num_jobs", numMaintenanceJobs.get());
+        MaintenanceJob job = requestedJob;
+        if (job != null) {
+            result.put("requested", job.toMap());
+        }
+        job = runningJob;
+        if (job != null) {
+            Map<String, Object> running = job.toMap();
+            MergeScheduler ms = getIndexWriter().getConfig().getMergeScheduler();
+            if (ms instanceof ThrottledMergeScheduler) {
+                running.put("merges", ((ThrottledMergeScheduler) ms).getMergeProgress());
+            }
+            result.put("running", running);
+        }
+        job = lastJob;
+        if (job != null) {
+            result.put("last", job.toMap());
+        }
+        return result;
+    }
+
+    /*----------------------------------------------------------------------*/
+    private RefreshThread refreshThread;
     private CommitThread commitThread;
+    private MaintenanceThread maintenanceThread;
 
     /**
      * {@inheritDoc}
@@ -113,86 +625,429 @@ public class StandaloneIndex extends AbstractIndex {
         return super.openIndexWriter();
     }
 
+    private final Object commitLock = new Object();
+    private AtomicLong numCommits = new AtomicLong(0);
+    private AtomicLong commitTimeNanos = new AtomicLong(0);
+    private AtomicLong stallTimeNanos = new AtomicLong(0);
+
+    /**
+     * Acquires the shared lock to apply changes to the index writer, recording
+     * the time spent waiting for it (i.e. indexing stall).
+     * 
+     * @return the acquired lock
+     */
+    protected Lock lockForUpdate() {
+        return lockAndMeasure(getReadLock());
+    }
+
+    /**
+     * Acquires the exclusive lock (e.g. to truncate the index), recording the
+     * time spent waiting for it.
+     * 
+     * @return the acquired lock
+     */
+    protected Lock lockExclusive() {
+        return lockAndMeasure(getWriteLock());
+    }
+
+    private Lock lockAndMeasure(Lock lock) {
+        if (!lock.tryLock()) {
+            long start = System.nanoTime();
+            lock.lock();
+            stallTimeNanos.addAndGet(System.nanoTime() - start);
+        }
+        return lock;
+    }
+
     /**
-     * Perform index commit.
+     * Perform index commit (unconditionally, if there are uncommitted
+     * changes).
+     * 
+     * <p>
+     * Commit does not block indexing: changes can still be applied while the
+     * index writer is committing. Such changes may or may not be included in
+     * the commit, their translog entries are kept and will be replayed (again)
+     * after a crash.
+     * </p>
+     * 
+     * <p>
+     * Actions taken from a persistent action queue and performed before the
+     * commit are finished in the queue once the commit succeeds.
+     * </p>
      * 
      * @throws IOException
      */
     protected void doCommit() throws IOException {
-        if (uncommitActions.get() > 0) {
-            Lock lock = getWriteLock();
-            lock.lock();
+        synchronized (commitLock) {
+            // performed queued actions are finished once the commit succeeds
+            List<BaseAction> actionsToFinish = takeActionsToFinish();
+            boolean committed = false;
             try {
-                long numDocs = uncommitActions.get();
-                IndexWriter iw = getIndexWriter();
-                if (Logger.isDebugEnabled()) {
-                    Map<String, Object> stats = new HashMap<String, Object>();
-                    stats.put("docs", iw.numDocs());
-                    stats.put("del", iw.hasDeletions());
-                    stats.put("pending", iw.hasPendingMerges());
-                    stats.put("change", iw.hasUncommittedChanges());
-                    Logger.debug("[" + getName() + "] committing " + numDocs
-                            + (numDocs > 1 ? " changes: " : " change: ") + stats);
-                }
-                iw.commit();
-                if (Logger.isDebugEnabled()) {
-                    Map<String, Object> stats = new HashMap<String, Object>();
-                    stats.put("docs", iw.numDocs());
-                    stats.put("del", iw.hasDeletions());
-                    stats.put("pending", iw.hasPendingMerges());
-                    stats.put("change", iw.hasUncommittedChanges());
-                    Logger.debug("\tafter commit: " + stats);
-                }
-                uncommitActions.set(0);
+                commit();
+                committed = true;
             } finally {
-                lock.unlock();
+                onActionsCommitted(actionsToFinish, committed);
             }
         }
     }
 
+    private void commit() throws IOException {
+        AckTracker ackTracker = getAckTracker();
+        long tick = ackTracker.currentTick();
+        if (uncommitActions.get() <= 0 && getLastAppliedSeq() <= committedSeq) {
+            // nothing to commit, all applied changes are already durable
+            ackTracker.onCommitted(tick);
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        // capture counters before committing, changes applied from now on
+        // are counted for the next commit
+        long numDocs = uncommitActions.get();
+        long appliedSeq = getLastAppliedSeq();
+        IndexWriter iw = getIndexWriter();
+        if (Logger.isDebugEnabled()) {
+            Map<String, Object> stats = new HashMap<String, Object>();
+            stats.put("docs", iw.numDocs());
+            stats.put("del", iw.hasDeletions());
+            stats.put("pending", iw.hasPendingMerges());
+            stats.put("change", iw.hasUncommittedChanges());
+            Logger.debug("[" + getName() + "] committing " + numDocs
+                    + (numDocs > 1 ? " changes: " : " change: ") + stats);
+        }
+        // committed documents' fields must be in the saved spec
+        persistSchema();
+        Translog translog = getTranslog();
+        if (translog != null) {
+            Map<String, String> commitData = new HashMap<String, String>(iw.getCommitData());
+            commitData.put(COMMIT_DATA_TRANSLOG_SEQ, String.valueOf(appliedSeq));
+            iw.setCommitData(commitData);
+        }
+        iw.commit();
+        committedSeq = appliedSeq;
+        if (translog != null) {
+            translog.trim(appliedSeq);
+        }
+        ackTracker.onCommitted(tick);
+        if (uncommitActions.addAndGet(-numDocs) > 0) {
+            firstUncommitTimestamp = startTime;
+        }
+        lastCommitTimestamp = System.currentTimeMillis();
+        long durationNanos = System.nanoTime() - startNanos;
+        numCommits.incrementAndGet();
+        commitTimeNanos.addAndGet(durationNanos);
+        if (Logger.isDebugEnabled()) {
+            Map<String, Object> stats = new HashMap<String, Object>();
+            stats.put("docs", iw.numDocs());
+            stats.put("del", iw.hasDeletions());
+            stats.put("pending", iw.hasPendingMerges());
+            stats.put("change", iw.hasUncommittedChanges());
+            stats.put("took_ms", durationNanos / 1000000);
+            Logger.debug("\tafter commit: " + stats);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Object> getStats() throws IOException {
+        Map<String, Object> stats = super.getStats();
+        stats.put("uncommitted_changes", uncommitActions.get());
+        stats.put("committed_seq", committedSeq);
+        stats.put("num_commits", numCommits.get());
+        stats.put("commit_time_ms", commitTimeNanos.get() / 1000000);
+        stats.put("last_commit_ms", lastCommitDurationMs);
+        stats.put("last_commit_timestamp", lastCommitTimestamp);
+        stats.put("commit_backoff", commitBackoff);
+        stats.put("indexing_stall_ms", stallTimeNanos.get() / 1000000);
+        return stats;
+    }
+
     /**
      * {@inheritDoc}
      */
-    @SuppressWarnings("unused")
     @Override
     protected boolean performIndexAction(IndexAction action) throws IOException {
         Map<String, Object> docData = action.doc();
+        Term idTerm = buildTermForUpdate(docData);
+        long version = getDocVersion(docData);
+        if (isStaleVersion(idTerm, version, null)) {
+            return false;
+        }
         Document doc = buildDocument(docData);
-        if (doc != null) {
-            Lock lock = getReadLock();
-            lock.lock();
-            try {
-                IndexWriter iw = getIndexWriter();
+        if (doc == null) {
+            return false;
+        }
+        Lock lock = lockForUpdate();
+        try {
+            IndexWriter iw = getIndexWriter();
+            if (idTerm != null) {
+                iw.updateDocument(idTerm, doc);
+                versionApplied(idTerm, version);
+            } else {
                 Query queryForDeletion = buildQueryForDeletion(docData);
                 if (queryForDeletion != null) {
                     iw.deleteDocuments(queryForDeletion);
                 }
                 iw.addDocument(doc);
-                long value = uncommitActions.incrementAndGet();
-                return true;
-            } finally {
-                lock.unlock();
             }
+            markUncommitted(1);
+            return true;
+        } finally {
+            lock.unlock();
+            releaseDocuments();
         }
-        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * The whole batch is applied under one lock acquisition. Documents keyed
+     * by a single id field are applied with
+     * {@link IndexWriter#updateDocument(Term, Iterable)}, documents without an
+     * id are added with a single {@link IndexWriter#addDocuments(Iterable)}
+     * call.
+     * </p>
+     * 
+     * <p>
+     * Versioned documents that are stale are discarded before being built.
+     * </p>
+     */
+    @Override
+    protected boolean performBulkIndexAction(BulkIndexAction action) throws IOException {
+        List<Map<String, Object>> docsData = action.docs();
+        if (docsData == null || docsData.size() == 0) {
+            return false;
+        }
+        int numDocs = docsData.size();
+        ExecutorService executor = getApplyExecutor();
+        int numLanes = Math.min(getNumApplyLanes(), numDocs);
+        if (executor != null && numLanes > 1) {
+            return performBulkIndexActionParallel(action, executor, numLanes);
+        }
+        Document[] docs = new Document[numDocs];
+        Map<String, Long> batchVersions = new HashMap<String, Long>();
+        for (int i = 0; i < numDocs; i++) {
+            try {
+                Map<String, Object> docData = docsData.get(i);
+                if (isStaleVersion(buildTermForUpdate(docData), getDocVersion(docData),
+                        batchVersions)) {
+                    continue;
+                }
+                docs[i] = buildDocument(docData, i);
+                if (docs[i] == null) {
+                    action.markFailed(i, "Empty document");
+                }
+            } catch (Exception e) {
+                action.markFailed(i, e.getMessage());
+            }
+        }
+
+        int numIndexed = 0;
+        Lock lock = lockForUpdate();
+        try {
+            IndexWriter iw = getIndexWriter();
+            List<Document> docsToAdd = new ArrayList<Document>();
+            List<Integer> docsToAddPos = new ArrayList<Integer>();
+            for (int i = 0; i < numDocs; i++) {
+                if (docs[i] == null) {
+                    continue;
+                }
+                try {
+                    Term idTerm = buildTermForUpdate(docsData.get(i));
+                    if (idTerm != null) {
+                        iw.updateDocument(idTerm, docs[i]);
+                        versionApplied(idTerm, getDocVersion(docsData.get(i)));
+                        numIndexed++;
+                        continue;
+                    }
+                    Query queryForDeletion = buildQueryForDeletion(docsData.get(i));
+                    if (queryForDeletion != null) {
+                        iw.deleteDocuments(queryForDeletion);
+                        iw.addDocument(docs[i]);
+                        numIndexed++;
+                    } else {
+                        docsToAdd.add(docs[i]);
+                        docsToAddPos.add(i);
+                    }
+                } catch (Exception e) {
+                    action.markFailed(i, e.getMessage());
+                }
+            }
+            if (docsToAdd.size() > 0) {
+                try {
+                    iw.addDocuments(docsToAdd);
+                    numIndexed += docsToAdd.size();
+                } catch (Exception e) {
+                    // addDocuments is all-or-nothing, fall back to one-by-one
+                    // so that failures can be reported per document
+                    for (int i = 0, n = docsToAdd.size(); i < n; i++) {
+                        try {
+                            iw.addDocument(docsToAdd.get(i));
+                            numIndexed++;
+                        } catch (Exception e1) {
+                            action.markFailed(docsToAddPos.get(i), e1.getMessage());
+                        }
+                    }
+                }
+            }
+            if (numIndexed > 0) {
+                markUncommitted(numIndexed);
+            }
+        } finally {
+            lock.unlock();
+            releaseDocuments();
+        }
+
+        Map<Integer, String> failures = action.failures();
+        if (failures.size() > 0) {
+            for (Map.Entry<Integer, String> entry : failures.entrySet()) {
+                Logger.warn("[" + getName() + "] cannot index document #" + entry.getKey()
+                        + " of batch: " + entry.getValue());
+            }
+        }
+        return numIndexed > 0;
+    }
+
+    /**
+     * Performs a bulk-index action with documents partitioned into lanes by
+     * id, lanes being applied concurrently (documents of a lane are built and
+     * applied in order). Documents without a single id are put into the same
+     * lane.
+     * 
+     * @param action
+     * @param executor
+     * @param numLanes
+     * @return
+     * @throws IOException
+     * @since 0.1.1
+     */
+    protected boolean performBulkIndexActionParallel(final BulkIndexAction action,
+            ExecutorService executor, int numLanes) throws IOException {
+        final List<Map<String, Object>> docsData = action.docs();
+        List<List<Integer>> lanes = new ArrayList<List<Integer>>(numLanes);
+        for (int i = 0; i < numLanes; i++) {
+            lanes.add(new ArrayList<Integer>());
+        }
+        for (int i = 0, n = docsData.size(); i < n; i++) {
+            Term idTerm = buildTermForUpdate(docsData.get(i));
+            int lane = idTerm != null ? (idTerm.text().hashCode() & 0x7FFFFFFF) % numLanes : 0;
+            lanes.get(lane).add(i);
+        }
+
+        int numIndexed = 0;
+        Lock lock = lockForUpdate();
+        try {
+            final IndexWriter iw = getIndexWriter();
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            List<Integer> callerLane = null;
+            for (final List<Integer> lane : lanes) {
+                if (lane.isEmpty()) {
+                    continue;
+                }
+                if (callerLane == null) {
+                    // the calling thread applies one lane itself
+                    callerLane = lane;
+                    continue;
+                }
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return applyLane(iw, action, docsData, lane);
+                    }
+                }));
+            }
+            numIndexed += applyLane(iw, action, docsData, callerLane);
+            for (Future<Integer> future : futures) {
+                try {
+                    numIndexed += future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while applying batch", e);
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+            }
+        } finally {
+            if (numIndexed > 0) {
+                markUncommitted(numIndexed);
+            }
+            lock.unlock();
+        }
+
+        Map<Integer, String> failures = action.failures();
+        if (failures.size() > 0) {
+            for (Map.Entry<Integer, String> entry : failures.entrySet()) {
+                Logger.warn("[" + getName() + "] cannot index document #" + entry.getKey()
+                        + " of batch: " + entry.getValue());
+            }
+        }
+        return numIndexed > 0;
+    }
+
+    private int applyLane(IndexWriter iw, BulkIndexAction action,
+            List<Map<String, Object>> docsData, List<Integer> lane) {
+        int numIndexed = 0;
+        for (int pos : lane) {
+            Map<String, Object> docData = docsData.get(pos);
+            try {
+                // documents of an id are all in the same lane, in order
+                Term idTerm = buildTermForUpdate(docData);
+                long version = getDocVersion(docData);
+                if (isStaleVersion(idTerm, version, null)) {
+                    continue;
+                }
+                // applied right away, the reusable document can be reused
+                Document doc = buildDocument(docData);
+                if (doc == null) {
+                    action.markFailed(pos, "Empty document");
+                    continue;
+                }
+                if (idTerm != null) {
+                    iw.updateDocument(idTerm, doc);
+                    versionApplied(idTerm, version);
+                } else {
+                    Query queryForDeletion = buildQueryForDeletion(docData);
+                    if (queryForDeletion != null) {
+                        iw.deleteDocuments(queryForDeletion);
+                    }
+                    iw.addDocument(doc);
+                }
+                numIndexed++;
+            } catch (Exception e) {
+                action.markFailed(pos, e.getMessage());
+            }
+        }
+        releaseDocuments();
+        return numIndexed;
     }
 
     /**
      * {@inheritDoc}
      */
-    @SuppressWarnings("unused")
     @Override
     protected boolean performDeleteAction(DeleteAction action) throws IOException {
-        Lock lock = getReadLock();
-        lock.lock();
+        if (action.deleteMethod() == DeleteAction.DELETE_METHOD_IDS) {
+            return performDeleteByIdsAction(action);
+        }
+        Lock lock = lockForUpdate();
         try {
             IndexWriter iw = getIndexWriter();
             switch (action.deleteMethod()) {
             case DeleteAction.DELETE_METHOD_TERM: {
-                Query queryForDeletion = buildQueryForDeletion(action.term());
+                Map<String, Object> terms = action.term();
+                Term idTerm = buildTermForUpdate(terms);
+                if (idTerm != null) {
+                    iw.deleteDocuments(idTerm);
+                    markUncommitted(1);
+                    return true;
+                }
+                Query queryForDeletion = buildQueryForDeletion(terms);
                 if (queryForDeletion != null) {
                     iw.deleteDocuments(queryForDeletion);
-                    long value = uncommitActions.incrementAndGet();
+                    markUncommitted(1);
                     return true;
                 }
             }
@@ -200,7 +1055,7 @@ public class StandaloneIndex extends AbstractIndex {
                 Query queryForDeletion = parseQuery(action.query());
                 if (queryForDeletion != null) {
                     iw.deleteDocuments(queryForDeletion);
-                    long value = uncommitActions.incrementAndGet();
+                    markUncommitted(1);
                     return true;
                 }
             }
@@ -213,19 +1068,161 @@ public class StandaloneIndex extends AbstractIndex {
 
     /**
      * {@inheritDoc}
+     * 
+     * <p>
+     * Only the doc-values of the matching documents are rewritten; the
+     * inverted index and stored fields are left untouched.
+     * </p>
      */
-    @SuppressWarnings("unused")
     @Override
-    protected boolean performTruncateAction(TruncateAction action) throws IOException {
-        Lock lock = getReadLock();
-        lock.lock();
+    protected boolean performUpdateDocValuesAction(UpdateDocValuesAction action)
+            throws IOException {
+        List<Map<String, Object>> docs = action.docs();
+        if (docs == null) {
+            return false;
+        }
+        int numUpdates = 0;
+        Lock lock = lockForUpdate();
         try {
             IndexWriter iw = getIndexWriter();
-            iw.deleteAll();
-            long value = uncommitActions.incrementAndGet();
-            return true;
+            for (Map<String, Object> docData : docs) {
+                Term idTerm = buildTermForUpdate(docData);
+                Field[] updates = buildDocValuesUpdates(docData);
+                if (idTerm == null || updates == null) {
+                    continue;
+                }
+                try {
+                    iw.updateDocValues(idTerm, updates);
+                    numUpdates++;
+                } catch (IllegalArgumentException e) {
+                    // e.g. no document has ever had the doc-values field
+                    Logger.warn("[" + getName() + "] cannot update doc-values of " + idTerm
+                            + ": " + e.getMessage());
+                }
+            }
         } finally {
+            if (numUpdates > 0) {
+                markUncommitted(numUpdates);
+            }
             lock.unlock();
         }
+        return numUpdates > 0;
+    }
+
+    /**
+     * Deletes documents by a list of ids: all ids are deleted with a single
+     * {@link IndexWriter#deleteDocuments(Term...)} call.
+     * 
+     * <p>
+     * Documents to be deleted are counted beforehand with a
+     * {@link TermsQuery} on the current searcher, i.e. as of the last refresh:
+     * the count does not include buffered changes (documents indexed or
+     * deleted since then). No refresh is forced, a delete must not cost an NRT
+     * reopen.
+     * </p>
+     * 
+     * @param action
+     * @return
+     * @throws IOException
+     */
+    protected boolean performDeleteByIdsAction(DeleteAction action) throws IOException {
+        String field = action.field();
+        List<String> ids = action.ids();
+        if (field == null || ids == null || ids.size() == 0) {
+            action.numAffected(0);
+            return false;
+        }
+        Term[] terms = new Term[ids.size()];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = new Term(field, ids.get(i));
+        }
+        int numDeleted;
+        IndexSearcher is = acquireIndexSearcher();
+        try {
+            numDeleted = is.count(new TermsQuery(terms));
+        } finally {
+            releaseIndexSearcher(is);
+        }
+        Lock lock = lockForUpdate();
+        try {
+            getIndexWriter().deleteDocuments(terms);
+            markUncommitted(1);
+        } finally {
+            lock.unlock();
+        }
+        action.numAffected(numDeleted);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * Updates go on while content is being copied, only commits and searcher
+     * refreshes are held off so that neither captures the index
+     * half-published. When replacing, the exclusive lock is only held to drop
+     * the existing content (see {@link #performTruncateAction(TruncateAction)})
+     * before copying; changes applied while copying are kept.
+     * </p>
+     */
+    @Override
+    protected void publishIndexes(Directory[] dirs, boolean replace) throws IOException {
+        synchronized (commitLock) {
+            Lock refreshHold = holdOffRefresh();
+            try {
+                IndexWriter iw = getIndexWriter();
+                if (replace) {
+                    Lock lock = lockExclusive();
+                    try {
+                        iw.deleteAll();
+                        clearVersions();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                Lock lock = lockForUpdate();
+                try {
+                    iw.addIndexes(dirs);
+                    markUncommitted(1);
+                } finally {
+                    lock.unlock();
+                }
+                doCommit();
+            } finally {
+                refreshHold.unlock();
+            }
+        }
+        refreshSearcher();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * {@link IndexWriter#deleteAll()} drops all segments at once (running
+     * merges are aborted, no per-document deletes), so the exclusive lock is
+     * held briefly whatever the index's size. The empty index is committed
+     * right away as a new commit generation and searchers are refreshed: old
+     * segments' files are then no longer referenced by the last commit and
+     * are deleted as soon as in-flight searches release the previous reader,
+     * instead of waiting for the next scheduled commit.
+     * </p>
+     */
+    @Override
+    protected boolean performTruncateAction(TruncateAction action) throws IOException {
+        synchronized (commitLock) {
+            Lock lock = lockExclusive();
+            try {
+                IndexWriter iw = getIndexWriter();
+                iw.deleteAll();
+                clearVersions();
+                markUncommitted(1);
+            } finally {
+                lock.unlock();
+            }
+            doCommit();
+        }
+        refreshSearcher();
+        return true;
     }
 }
@@ -26,7 +26,8 @@ public class StandaloneIndexFactory extends AbstractIndexFactory {
         IDirectoryFactory dirFactory = getDirectoryFactory();
         Directory dir = dirFactory.createDirectory(spec.name());
         if (dir != null) {
-            return StandaloneIndex.create(dir, spec, actionQueue);
+            return StandaloneIndex.create(dir, spec, actionQueue,
+                    openTranslog(spec.name()));
         }
         return null;
     }
@@ -43,7 +44,8 @@ public class StandaloneIndexFactory extends AbstractIndexFactory {
             boolean dirExists = false;
             try {
                 if (DirectoryReader.indexExists(dir)) {
-                    AbstractIndex index = StandaloneIndex.create(dir, spec, actionQueue);
+                    AbstractIndex index = StandaloneIndex.create(dir, spec, actionQueue,
+                            openTranslog(spec.name()));
                     dirExists = true;
                     return index;
                 }
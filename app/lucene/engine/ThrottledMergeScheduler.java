@@ -0,0 +1,107 @@
+package lucene.engine;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MergePolicy.OneMerge;
+
+/**
+ * {@link ConcurrentMergeScheduler} whose merges can temporarily be capped to
+ * a max IO rate, e.g. while a maintenance job (force-merge, expunge-deletes)
+ * is running.
+ *
+ * <p>
+ * {@link ConcurrentMergeScheduler#setForceMergeMBPerSec(double)} only
+ * applies to force-merges; this cap applies to all running merges,
+ * including those triggered by {@link IndexWriter#forceMergeDeletes()}.
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class ThrottledMergeScheduler extends ConcurrentMergeScheduler {
+
+    private final Set<OneMerge> runningMerges = Collections
+            .newSetFromMap(new ConcurrentHashMap<OneMerge, Boolean>());
+    private volatile double maxMBPerSec = 0;
+
+    /**
+     * Caps running and future merges to an IO rate.
+     *
+     * @param mbPerSec
+     *            value not greater than 0 removes the cap
+     */
+    public synchronized void setMaxMBPerSec(double mbPerSec) {
+        this.maxMBPerSec = mbPerSec;
+        updateMergeThreads();
+    }
+
+    public double getMaxMBPerSec() {
+        return maxMBPerSec;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected synchronized void updateMergeThreads() {
+        // sets each merge's rate according to the auto IO throttle...
+        super.updateMergeThreads();
+        // ...then applies the cap
+        double cap = maxMBPerSec;
+        if (cap > 0) {
+            for (OneMerge merge : runningMerges) {
+                if (merge.rateLimiter.getMBPerSec() > cap) {
+                    merge.rateLimiter.setMBPerSec(cap);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doMerge(IndexWriter writer, OneMerge merge) throws IOException {
+        runningMerges.add(merge);
+        try {
+            updateMergeThreads();
+            super.doMerge(writer, merge);
+        } finally {
+            runningMerges.remove(merge);
+        }
+    }
+
+    /**
+     * Progress of running merges.
+     *
+     * @return {@code num_merges}, {@code estimated_bytes},
+     *         {@code written_bytes} and {@code mb_per_sec} (current rate
+     *         limit of the slowest merge)
+     */
+    public Map<String, Object> getMergeProgress() {
+        int numMerges = 0;
+        long estimatedBytes = 0, writtenBytes = 0;
+        double minMBPerSec = Double.POSITIVE_INFINITY;
+        for (OneMerge merge : runningMerges) {
+            numMerges++;
+            estimatedBytes += merge.estimatedMergeBytes;
+            writtenBytes += merge.rateLimiter.getTotalBytesWritten();
+            minMBPerSec = Math.min(minMBPerSec, merge.rateLimiter.getMBPerSec());
+        }
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("num_merges", numMerges);
+        result.put("estimated_bytes", estimatedBytes);
+        result.put("written_bytes", writtenBytes);
+        if (numMerges > 0 && !Double.isInfinite(minMBPerSec)) {
+            result.put("mb_per_sec", minMBPerSec);
+        }
+        return result;
+    }
+}
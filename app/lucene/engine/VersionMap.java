@@ -0,0 +1,102 @@
+package lucene.engine;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.search.ReferenceManager;
+
+/**
+ * In-memory map of document id to latest applied external version.
+ *
+ * <p>
+ * Versions applied since the last searcher refresh are not visible to
+ * searches yet, so they are kept until the next refresh has completed; only
+ * then they move to a bounded LRU map, from which they may be evicted. An
+ * evicted version can still be read from the index (the {@code _version}
+ * doc values), see {@link AbstractIndex#getVersion(org.apache.lucene.index.Term)}.
+ * </p>
+ *
+ * <p>
+ * Versions must be put after the document has been handed to the index
+ * writer.
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class VersionMap implements ReferenceManager.RefreshListener {
+
+    public final static int DEFAULT_MAX_SIZE = 100000;
+
+    private volatile Map<String, Long> current = new ConcurrentHashMap<String, Long>();
+    private volatile Map<String, Long> refreshing = Collections.emptyMap();
+    private final Map<String, Long> visible;
+
+    public VersionMap() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize
+     *            max number of versions visible to searches kept in memory
+     */
+    public VersionMap(final int maxSize) {
+        visible = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /**
+     * Gets the latest version of a document.
+     *
+     * @param id
+     * @return {@code null} if the document's version is not in memory
+     */
+    public Long get(String id) {
+        Long version = current.get(id);
+        if (version == null) {
+            version = refreshing.get(id);
+        }
+        return version != null ? version : visible.get(id);
+    }
+
+    public void put(String id, long version) {
+        current.put(id, version);
+    }
+
+    public synchronized void clear() {
+        current.clear();
+        refreshing = Collections.emptyMap();
+        visible.clear();
+    }
+
+    public int size() {
+        return current.size() + refreshing.size() + visible.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void beforeRefresh() {
+        // the upcoming searcher sees at least all versions put so far
+        refreshing = current;
+        current = new ConcurrentHashMap<String, Long>();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void afterRefresh(boolean didRefresh) {
+        visible.putAll(refreshing);
+        refreshing = Collections.emptyMap();
+    }
+}
@@ -0,0 +1,282 @@
+package lucene.queue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import lucene.action.BaseAction;
+import lucene.action.BulkIndexAction;
+import lucene.action.DeleteAction;
+import lucene.action.IndexAction;
+import lucene.action.TruncateAction;
+import lucene.action.UpdateDocValuesAction;
+import util.Constants;
+
+import com.github.ddth.commons.utils.SerializationUtils;
+
+/**
+ * Compact binary encoding of {@link BaseAction}s.
+ *
+ * <p>
+ * An encoded action is a one-byte action type (or the action's class name
+ * for unknown types) followed by the action's attributes, each value
+ * prefixed by a one-byte tag. Integral numbers and lengths are written as
+ * variable-length integers.
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class ActionCodec {
+
+    private final static byte ACTION_OTHER = 0;
+    private final static byte ACTION_INDEX = 1;
+    private final static byte ACTION_BULK_INDEX = 2;
+    private final static byte ACTION_DELETE = 3;
+    private final static byte ACTION_TRUNCATE = 4;
+    private final static byte ACTION_UPDATE_DOC_VALUES = 5;
+
+    private final static byte TAG_NULL = 0;
+    private final static byte TAG_TRUE = 1;
+    private final static byte TAG_FALSE = 2;
+    private final static byte TAG_INT = 3;
+    private final static byte TAG_LONG = 4;
+    private final static byte TAG_DOUBLE = 5;
+    private final static byte TAG_STRING = 6;
+    private final static byte TAG_MAP = 7;
+    private final static byte TAG_LIST = 8;
+    private final static byte TAG_BYTES = 9;
+    private final static byte TAG_DATE = 10;
+    private final static byte TAG_JSON = 11;
+
+    /**
+     * Encodes an action.
+     *
+     * @param action
+     * @return
+     * @throws IOException
+     */
+    public static byte[] encode(BaseAction action) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(baos);
+        if (action instanceof BulkIndexAction) {
+            out.writeByte(ACTION_BULK_INDEX);
+        } else if (action instanceof IndexAction) {
+            out.writeByte(ACTION_INDEX);
+        } else if (action instanceof DeleteAction) {
+            out.writeByte(ACTION_DELETE);
+        } else if (action instanceof TruncateAction) {
+            out.writeByte(ACTION_TRUNCATE);
+        } else if (action instanceof UpdateDocValuesAction) {
+            out.writeByte(ACTION_UPDATE_DOC_VALUES);
+        } else {
+            out.writeByte(ACTION_OTHER);
+            writeString(out, action.getClass().getName());
+        }
+        writeValue(out, action.toMap());
+        out.flush();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Decodes an action.
+     *
+     * @param data
+     * @return
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    public static BaseAction decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        byte type = in.readByte();
+        BaseAction action;
+        switch (type) {
+        case ACTION_INDEX:
+            action = new IndexAction(null);
+            break;
+        case ACTION_BULK_INDEX:
+            action = new BulkIndexAction(null);
+            break;
+        case ACTION_DELETE:
+            action = new DeleteAction(null);
+            break;
+        case ACTION_TRUNCATE:
+            action = new TruncateAction(null);
+            break;
+        case ACTION_UPDATE_DOC_VALUES:
+            action = new UpdateDocValuesAction(null);
+            break;
+        default:
+            String className = readString(in);
+            try {
+                action = (BaseAction) Class.forName(className).getConstructor(String.class)
+                        .newInstance((String) null);
+            } catch (Exception e) {
+                throw new IOException("Cannot instantiate action [" + className + "]", e);
+            }
+        }
+        Object attrs = readValue(in);
+        if (attrs instanceof Map) {
+            action.fromMap((Map<String, Object>) attrs);
+        }
+        return action;
+    }
+
+    /*----------------------------------------------------------------------*/
+
+    private static void writeVLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((byte) value);
+    }
+
+    private static long readVLong(DataInputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] data = value.getBytes(Constants.UTF8);
+        writeVLong(out, data.length);
+        out.write(data);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] data = new byte[(int) readVLong(in)];
+        in.readFully(data);
+        return new String(data, Constants.UTF8);
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte(((Boolean) value).booleanValue() ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TAG_INT);
+            writeVLong(out, zigZag(((Number) value).intValue()));
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            writeVLong(out, zigZag(((Long) value).longValue()));
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof CharSequence) {
+            out.writeByte(TAG_STRING);
+            writeString(out, value.toString());
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(TAG_MAP);
+            writeVLong(out, map.size());
+            for (Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof Collection) {
+            Collection<?> list = (Collection<?>) value;
+            out.writeByte(TAG_LIST);
+            writeVLong(out, list.size());
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else if (value instanceof Object[]) {
+            Object[] list = (Object[]) value;
+            out.writeByte(TAG_LIST);
+            writeVLong(out, list.length);
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else if (value instanceof byte[]) {
+            byte[] data = (byte[]) value;
+            out.writeByte(TAG_BYTES);
+            writeVLong(out, data.length);
+            out.write(data);
+        } else if (value instanceof ByteBuffer) {
+            ByteBuffer buff = ((ByteBuffer) value).duplicate();
+            byte[] data = new byte[buff.remaining()];
+            buff.get(data);
+            writeValue(out, data);
+        } else if (value instanceof Date) {
+            out.writeByte(TAG_DATE);
+            writeVLong(out, zigZag(((Date) value).getTime()));
+        } else {
+            out.writeByte(TAG_JSON);
+            writeString(out, SerializationUtils.toJsonString(value));
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+        case TAG_NULL:
+            return null;
+        case TAG_TRUE:
+            return Boolean.TRUE;
+        case TAG_FALSE:
+            return Boolean.FALSE;
+        case TAG_INT:
+            return (int) unZigZag(readVLong(in));
+        case TAG_LONG:
+            return unZigZag(readVLong(in));
+        case TAG_DOUBLE:
+            return in.readDouble();
+        case TAG_STRING:
+            return readString(in);
+        case TAG_MAP: {
+            int size = (int) readVLong(in);
+            Map<String, Object> map = new LinkedHashMap<String, Object>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                String key = readString(in);
+                map.put(key, readValue(in));
+            }
+            return map;
+        }
+        case TAG_LIST: {
+            int size = (int) readVLong(in);
+            List<Object> list = new ArrayList<Object>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(readValue(in));
+            }
+            return list;
+        }
+        case TAG_BYTES: {
+            byte[] data = new byte[(int) readVLong(in)];
+            in.readFully(data);
+            return data;
+        }
+        case TAG_DATE:
+            return new Date(unZigZag(readVLong(in)));
+        case TAG_JSON:
+            return SerializationUtils.fromJsonString(readString(in), Object.class);
+        default:
+            throw new IOException("Unknown value tag [" + tag + "]");
+        }
+    }
+}
@@ -1,18 +1,45 @@
 package lucene.queue;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import lucene.IActionQueue;
 import lucene.action.BaseAction;
+import lucene.action.IndexAction;
 
 import com.github.ddth.queue.IQueueMessage;
 
 /**
  * In-memory implementation of {@link IActionQueue}.
  * 
+ * <p>
+ * Capacity is counted in weight units (see {@link QueueMetrics#weightOf}), so
+ * a bulk action reserves room for all of its documents at once and is either
+ * accepted or rejected as a whole. Offers never block: when there is not
+ * enough room, {@link #queue(BaseAction)} returns {@code false} immediately.
+ * A taken action keeps its room until it is {@link #finish}ed, so actions
+ * buffered by consumers (e.g. update workers) still count toward capacity.
+ * </p>
+ * 
+ * <p>
+ * Pending actions of the same document are coalesced (see
+ * {@link BaseAction#coalesceKeys()}): a newly queued index action supersedes
+ * the pending index action of the same index and id, which is dropped from
+ * the queue (the newest payload wins, unless it carries a lower external
+ * version); a delete supersedes the pending index actions of the ids it
+ * deletes. Superseded actions are acknowledged along with the action that
+ * superseded them. Actions of other ids keep their order.
+ * </p>
+ * 
  * @author Thanh Nguyen <btnguyen2k@gmail.com>
  * @since 0.1.0
  */
@@ -20,7 +47,28 @@ public class InMemoryActionQueue implements IActionQueue {
 
     private BlockingQueue<BaseAction> queue;
     private int maxItems = 1024;
+    private int capacity;
+    private AtomicInteger usedCapacity = new AtomicInteger(0);
+    private QueueMetrics metrics = new QueueMetrics();
+
+    private boolean coalesce = true;
+    private final Object coalesceLock = new Object();
+    /* pending index actions by index name and document id */
+    private Map<String, BaseAction> pendingDocs = new HashMap<String, BaseAction>();
+    /* actions that are still in the queue but have been superseded */
+    private Set<BaseAction> superseded = Collections
+            .newSetFromMap(new IdentityHashMap<BaseAction, Boolean>());
+    private AtomicLong numCoalesced = new AtomicLong(0);
 
+    /* taken but not yet finished actions, and the room they hold */
+    private Map<BaseAction, Integer> taken = new IdentityHashMap<BaseAction, Integer>();
+
+    /**
+     * Queue's capacity, in weight units (one document is one unit).
+     * 
+     * @param maxItems
+     * @return
+     */
     public InMemoryActionQueue setMaxItems(int maxItems) {
         this.maxItems = maxItems;
         return this;
@@ -30,8 +78,25 @@ public class InMemoryActionQueue implements IActionQueue {
         return maxItems;
     }
 
+    /**
+     * Coalesces pending actions of the same document (default {@code true}).
+     * 
+     * @param coalesce
+     * @return
+     * @since 0.1.1
+     */
+    public InMemoryActionQueue setCoalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+        return this;
+    }
+
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
     public InMemoryActionQueue init() {
-        queue = new LinkedBlockingQueue<BaseAction>(maxItems > 0 ? maxItems : 1024);
+        capacity = maxItems > 0 ? maxItems : 1024;
+        queue = new LinkedBlockingQueue<BaseAction>();
         return this;
     }
 
@@ -39,6 +104,157 @@ public class InMemoryActionQueue implements IActionQueue {
         // EMPTY
     }
 
+    /**
+     * Reserves capacity for an action.
+     * 
+     * @param weight
+     * @param force
+     *            reserve even if the queue is full (e.g. re-queuing)
+     * @return
+     */
+    private boolean reserve(int weight, boolean force) {
+        while (true) {
+            int used = usedCapacity.get();
+            // an oversized action is still accepted if queue is empty
+            if (!force && used > 0 && used + weight > capacity) {
+                return false;
+            }
+            if (usedCapacity.compareAndSet(used, used + weight)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param msg
+     * @param force
+     *            reserve even if the queue is full
+     * @param reserved
+     *            room has already been reserved (see {@link #reserve(BaseAction)})
+     */
+    private boolean offer(BaseAction msg, boolean force, boolean reserved) {
+        if (msg == null) {
+            return false;
+        }
+        int weight = QueueMetrics.weightOf(msg);
+        if (!reserved && !reserve(weight, force)) {
+            metrics.onRejected(weight);
+            return false;
+        }
+        queue.offer(msg);
+        metrics.onQueued(weight);
+        return true;
+    }
+
+    /**
+     * Called when an action is taken: its room is held until it is finished.
+     */
+    private BaseAction onTaken(BaseAction msg) {
+        if (msg != null) {
+            int weight = QueueMetrics.weightOf(msg);
+            metrics.onTaken(weight);
+            synchronized (taken) {
+                Integer previous = taken.put(msg, weight);
+                if (previous != null) {
+                    // re-queued before being finished, and taken again
+                    usedCapacity.addAndGet(-previous);
+                }
+            }
+        }
+        return msg;
+    }
+
+    private static String docKey(BaseAction msg, String id) {
+        return msg.indexName() + "/" + id;
+    }
+
+    /**
+     * Queues an action, coalescing it with pending actions of the same
+     * document(s).
+     */
+    private boolean offerCoalesced(BaseAction msg, boolean reserved) {
+        Collection<String> ids = msg.coalesceKeys();
+        synchronized (coalesceLock) {
+            if (msg instanceof IndexAction) {
+                String key = docKey(msg, ids.iterator().next());
+                BaseAction pending = pendingDocs.get(key);
+                if (pending != null && msg.coalesceVersion() >= 0
+                        && msg.coalesceVersion() <= pending.coalesceVersion()) {
+                    // stale version, the pending action wins
+                    if (reserved) {
+                        release(msg);
+                    }
+                    pending.supersede(msg);
+                    int weight = QueueMetrics.weightOf(msg);
+                    metrics.onQueued(weight);
+                    metrics.onTaken(weight);
+                    numCoalesced.incrementAndGet();
+                    return true;
+                }
+                // replacing a pending action does not take more room
+                if (!offer(msg, pending != null, reserved)) {
+                    return false;
+                }
+                pendingDocs.put(key, msg);
+                if (pending != null) {
+                    msg.supersede(pending);
+                    dropSuperseded(pending);
+                    superseded.add(pending);
+                }
+                return true;
+            }
+            if (!offer(msg, false, reserved)) {
+                return false;
+            }
+            for (String id : ids) {
+                BaseAction pending = pendingDocs.remove(docKey(msg, id));
+                if (pending != null) {
+                    msg.supersede(pending);
+                    dropSuperseded(pending);
+                    superseded.add(pending);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Releases room of a superseded action, as if it had been taken and
+     * finished.
+     */
+    private void dropSuperseded(BaseAction msg) {
+        int weight = QueueMetrics.weightOf(msg);
+        usedCapacity.addAndGet(-weight);
+        metrics.onTaken(weight);
+        numCoalesced.incrementAndGet();
+    }
+
+    /**
+     * Called when an action is polled from the underlying queue.
+     * 
+     * @return {@code null} if the action has been superseded and must be
+     *         skipped
+     */
+    private BaseAction onPolled(BaseAction msg) {
+        if (msg == null || !coalesce) {
+            return onTaken(msg);
+        }
+        synchronized (coalesceLock) {
+            if (superseded.remove(msg)) {
+                // room has already been released
+                return null;
+            }
+            Collection<String> ids = msg.coalesceKeys();
+            if (msg instanceof IndexAction && ids != null) {
+                String key = docKey(msg, ids.iterator().next());
+                if (pendingDocs.get(key) == msg) {
+                    pendingDocs.remove(key);
+                }
+            }
+        }
+        return onTaken(msg);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -55,14 +271,44 @@ public class InMemoryActionQueue implements IActionQueue {
      */
     @Override
     public boolean queue(BaseAction msg) {
-        if (msg != null) {
-            try {
-                return queue.offer(msg, 5, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                return false;
-            }
+        return queue(msg, false);
+    }
+
+    private boolean queue(BaseAction msg, boolean reserved) {
+        if (coalesce && msg != null && msg.coalesceKeys() != null
+                && !msg.coalesceKeys().isEmpty()) {
+            return offerCoalesced(msg, reserved);
         }
-        return false;
+        return offer(msg, false, reserved);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean reserve(BaseAction msg) {
+        int weight = QueueMetrics.weightOf(msg);
+        if (!reserve(weight, false)) {
+            metrics.onRejected(weight);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean queueReserved(BaseAction msg) {
+        return queue(msg, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void release(BaseAction msg) {
+        usedCapacity.addAndGet(-QueueMetrics.weightOf(msg));
     }
 
     /**
@@ -81,14 +327,7 @@ public class InMemoryActionQueue implements IActionQueue {
      */
     @Override
     public boolean requeue(BaseAction msg) {
-        if (msg != null) {
-            try {
-                return queue.offer(msg, 5, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                return false;
-            }
-        }
-        return false;
+        return offer(msg, true, false);
     }
 
     /**
@@ -107,22 +346,28 @@ public class InMemoryActionQueue implements IActionQueue {
      */
     @Override
     public boolean requeueSilent(BaseAction msg) {
-        if (msg != null) {
-            try {
-                return queue.offer(msg, 5, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                return false;
+        return offer(msg, true, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void finish(IQueueMessage msg) {
+        synchronized (taken) {
+            Integer weight = taken.remove(msg);
+            if (weight != null) {
+                usedCapacity.addAndGet(-weight);
             }
         }
-        return false;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void finish(IQueueMessage msg) {
-        // EMPTY
+    public boolean isPersistent() {
+        return false;
     }
 
     /**
@@ -146,7 +391,7 @@ public class InMemoryActionQueue implements IActionQueue {
      */
     @Override
     public int queueSize() {
-        return queue.size();
+        return queue.size() - superseded.size();
     }
 
     /**
@@ -154,7 +399,9 @@ public class InMemoryActionQueue implements IActionQueue {
      */
     @Override
     public int ephemeralSize() {
-        return 0;
+        synchronized (taken) {
+            return taken.size();
+        }
     }
 
     /**
@@ -162,7 +409,66 @@ public class InMemoryActionQueue implements IActionQueue {
      */
     @Override
     public BaseAction take() {
-        return queue.poll();
+        while (true) {
+            BaseAction msg = queue.poll();
+            if (msg == null) {
+                return null;
+            }
+            msg = onPolled(msg);
+            if (msg != null) {
+                return msg;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BaseAction take(long waitTime, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(waitTime);
+        while (true) {
+            BaseAction msg = queue.poll(Math.max(0, deadline - System.nanoTime()),
+                    TimeUnit.NANOSECONDS);
+            if (msg == null) {
+                return null;
+            }
+            msg = onPolled(msg);
+            if (msg != null) {
+                return msg;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * Estimated time for the queue to drain enough units to fit the action.
+     * </p>
+     */
+    @Override
+    public long getRetryAfterMs(BaseAction msg) {
+        long excess = (long) usedCapacity.get() + QueueMetrics.weightOf(msg) - capacity;
+        return metrics.estimateDrainTimeMs(Math.max(1, excess));
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = metrics.toMap();
+        stats.put("type", "memory");
+        stats.put("queue_size", queueSize());
+        stats.put("ephemeral_size", ephemeralSize());
+        long numCoalesced = this.numCoalesced.get();
+        long numQueued = ((Number) stats.get("num_queued")).longValue();
+        stats.put("num_coalesced", numCoalesced);
+        stats.put("coalesce_rate", numQueued > 0 ? Math.round(numCoalesced * 10000.0
+                / numQueued) / 10000.0 : 0);
+        stats.put("capacity", capacity);
+        stats.put("used_capacity", usedCapacity.get());
+        return stats;
+    }
 }
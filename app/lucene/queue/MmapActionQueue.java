@@ -0,0 +1,794 @@
+package lucene.queue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lucene.IActionQueue;
+import lucene.action.BaseAction;
+import play.Logger;
+import play.Play;
+
+import com.github.ddth.queue.IQueueMessage;
+
+/**
+ * Persistent implementation of {@link IActionQueue}, backed by memory-mapped
+ * segment files used as a ring buffer.
+ *
+ * <p>
+ * Actions are stored with {@link ActionCodec}. Each record is
+ * {@code [int length][byte state][long id][payload]}; a zero length marks
+ * the end of a segment's used space.
+ * </p>
+ *
+ * <p>
+ * Taken actions are kept in the ephemeral storage until {@link #finish}ed;
+ * their records are not reclaimed before that, so actions that were taken
+ * but not finished are delivered again after a restart. Finished records
+ * are flagged in place so they are not redelivered.
+ * </p>
+ *
+ * <p>
+ * Records and queue's state are written to the mapped files right away, so
+ * they survive a process crash; they are flushed to storage (fsync) every
+ * {@code syncIntervalMs} and on {@link #destroy()}, changes made since the
+ * last flush may be lost on an OS crash or power loss.
+ * </p>
+ *
+ * <p>
+ * Room reserved with {@link #reserve(BaseAction)} is counted in bytes (an
+ * upper bound of the action's record size), conservatively assuming that the
+ * end of every segment is wasted by a record that does not fit in it.
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class MmapActionQueue implements IActionQueue {
+
+    private final static String SEGMENT_FILE_PATTERN = "segment-%04d.dat";
+    private final static String META_FILE = "queue.meta";
+    private final static int META_MAGIC = 0x4C53514D;
+    private final static int META_SIZE = 64;
+
+    private final static int RECORD_HEADER_SIZE = 4 + 1 + 8;
+    private final static byte STATE_QUEUED = 0;
+    private final static byte STATE_FINISHED = 1;
+
+    private String storagePath = "./queue";
+    private int segmentSize = 64 * 1024 * 1024;
+    private int numSegments = 4;
+
+    public String getStoragePath() {
+        return storagePath;
+    }
+
+    public MmapActionQueue setStoragePath(String storagePath) {
+        this.storagePath = storagePath;
+        return this;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public MmapActionQueue setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    public int getNumSegments() {
+        return numSegments;
+    }
+
+    /**
+     * Number of segment files, at least 2. One segment is always kept free
+     * as the gap between the ring's head and tail.
+     *
+     * @param numSegments
+     * @return
+     */
+    public MmapActionQueue setNumSegments(int numSegments) {
+        this.numSegments = numSegments;
+        return this;
+    }
+
+    private long syncIntervalMs = 1000;
+
+    public long getSyncIntervalMs() {
+        return syncIntervalMs;
+    }
+
+    /**
+     * Interval to flush queue's files to storage (fsync); value less than 1
+     * means "only on destroy", the queue then only survives process crashes.
+     *
+     * @param syncIntervalMs
+     * @return
+     */
+    public MmapActionQueue setSyncIntervalMs(long syncIntervalMs) {
+        this.syncIntervalMs = syncIntervalMs;
+        return this;
+    }
+
+    /*----------------------------------------------------------------------*/
+
+    /**
+     * A taken, but not yet finished, action.
+     */
+    private static class InFlight {
+        final BaseAction action;
+        final int segment, offset;
+        final long takenTimestamp;
+
+        InFlight(BaseAction action, int segment, int offset) {
+            this.action = action;
+            this.segment = segment;
+            this.offset = offset;
+            this.takenTimestamp = System.currentTimeMillis();
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    private MappedByteBuffer meta;
+    private MappedByteBuffer[] segments;
+    /* files changed since the last sync */
+    private boolean metaDirty = false;
+    private boolean[] dirtySegments;
+
+    /* reclaim point: records before head can be overwritten */
+    private int headSegment, headOffset;
+    /* write point */
+    private int tailSegment, tailOffset;
+    /* take point */
+    private int readSegment, readOffset;
+    private long nextId = 1;
+    private int queueSize = 0;
+
+    /* capacity is bounded by bytes, metrics count units (see QueueMetrics.weightOf) */
+    private QueueMetrics metrics = new QueueMetrics();
+
+    private TreeMap<Long, InFlight> ephemeral = new TreeMap<Long, InFlight>();
+    private Map<BaseAction, Long> ephemeralIds = new IdentityHashMap<BaseAction, Long>();
+
+    /* room reserved for actions about to be queued, in bytes */
+    private Map<BaseAction, Integer> reservations = new IdentityHashMap<BaseAction, Integer>();
+    private long reservedBytes = 0;
+    private int maxReservedRecordSize = 0;
+    /* attributes set after a reservation (e.g. seq) fit in this many bytes */
+    private final static int RESERVATION_SLACK = 32;
+
+    private File getStorageDir() {
+        if (storagePath.startsWith("/")) {
+            return new File(storagePath);
+        } else {
+            File dir = Play.application().path();
+            return new File(dir, storagePath);
+        }
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    public MmapActionQueue init() throws IOException {
+        if (numSegments < 2) {
+            numSegments = 2;
+        }
+        File storageDir = getStorageDir();
+        storageDir.mkdirs();
+        File metaFile = new File(storageDir, META_FILE);
+        boolean isNew = !metaFile.exists() || metaFile.length() < META_SIZE;
+        meta = map(metaFile, META_SIZE);
+        if (!isNew) {
+            if (meta.getInt(0) != META_MAGIC) {
+                throw new IOException("Invalid queue meta file [" + metaFile + "]");
+            }
+            if (meta.getInt(4) != numSegments || meta.getInt(8) != segmentSize) {
+                throw new IOException("Queue storage [" + storageDir
+                        + "] was created with different numSegments/segmentSize");
+            }
+        }
+        segments = new MappedByteBuffer[numSegments];
+        dirtySegments = new boolean[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = map(new File(storageDir, String.format(SEGMENT_FILE_PATTERN, i)),
+                    segmentSize);
+        }
+        if (isNew) {
+            headSegment = headOffset = tailSegment = tailOffset = 0;
+            nextId = 1;
+        } else {
+            headSegment = meta.getInt(12);
+            headOffset = meta.getInt(16);
+            tailSegment = meta.getInt(20);
+            tailOffset = meta.getInt(24);
+            nextId = meta.getLong(28);
+        }
+        readSegment = headSegment;
+        readOffset = headOffset;
+        queueSize = 0;
+        int[] pos = { headSegment, headOffset };
+        while (nextRecord(pos)) {
+            if (segments[pos[0]].get(pos[1] + 4) == STATE_QUEUED) {
+                queueSize++;
+            }
+            pos[1] += RECORD_HEADER_SIZE + segments[pos[0]].getInt(pos[1]);
+        }
+        writeMeta();
+        if (queueSize > 0) {
+            Logger.info("Action queue [" + storageDir + "] loaded with " + queueSize
+                    + " pending action(s)");
+        }
+        if (syncIntervalMs > 0) {
+            syncThread = new SyncThread();
+            syncThread.start();
+        }
+        return this;
+    }
+
+    public void destroy() {
+        if (syncThread != null) {
+            try {
+                syncThread.stopExecution();
+            } catch (Exception e) {
+                // EMPTY
+            } finally {
+                syncThread = null;
+            }
+        }
+        if (segments != null && meta != null) {
+            sync();
+        }
+    }
+
+    /**
+     * Flushes changed queue's files to storage (fsync): segments first, then
+     * the meta file, so that the meta file never points to records that have
+     * not been flushed.
+     */
+    public void sync() {
+        lock.lock();
+        try {
+            for (int i = 0; i < numSegments; i++) {
+                if (dirtySegments[i]) {
+                    dirtySegments[i] = false;
+                    segments[i].force();
+                }
+            }
+            if (metaDirty) {
+                metaDirty = false;
+                meta.force();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private SyncThread syncThread;
+
+    private final class SyncThread extends Thread {
+        private volatile boolean running = true;
+
+        public SyncThread() {
+            super("ActionQueueSyncThread");
+            setDaemon(true);
+        }
+
+        public void stopExecution() {
+            this.running = false;
+            interrupt();
+        }
+
+        public void run() {
+            while (running && !isInterrupted()) {
+                try {
+                    Thread.sleep(syncIntervalMs);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                try {
+                    sync();
+                } catch (Exception e) {
+                    Logger.warn(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private void writeMeta() {
+        metaDirty = true;
+        meta.putInt(0, META_MAGIC);
+        meta.putInt(4, numSegments);
+        meta.putInt(8, segmentSize);
+        meta.putInt(12, headSegment);
+        meta.putInt(16, headOffset);
+        meta.putInt(20, tailSegment);
+        meta.putInt(24, tailOffset);
+        meta.putLong(28, nextId);
+    }
+
+    /**
+     * Moves {@code pos} to the next record, skipping end-of-segment space.
+     *
+     * @param pos
+     *            {@code [segment, offset]}
+     * @return {@code false} if there is no more record before the tail
+     */
+    private boolean nextRecord(int[] pos) {
+        while (true) {
+            if (pos[0] == tailSegment && pos[1] == tailOffset) {
+                return false;
+            }
+            if (pos[1] + RECORD_HEADER_SIZE > segmentSize || segments[pos[0]].getInt(pos[1]) == 0) {
+                pos[0] = (pos[0] + 1) % numSegments;
+                pos[1] = 0;
+                continue;
+            }
+            return true;
+        }
+    }
+
+    private void updateHead() {
+        if (ephemeral.size() > 0) {
+            InFlight oldest = ephemeral.firstEntry().getValue();
+            headSegment = oldest.segment;
+            headOffset = oldest.offset;
+        } else {
+            headSegment = readSegment;
+            headOffset = readOffset;
+        }
+    }
+
+    /**
+     * Checks if records of {@code bytes} bytes in total, none larger than
+     * {@code maxRecordSize}, certainly fit in the free space, called with the
+     * lock held.
+     */
+    private boolean hasRoom(long bytes, int maxRecordSize) {
+        boolean isEmpty = headSegment == tailSegment && headOffset == tailOffset;
+        int freeSegments = isEmpty || headSegment == tailSegment ? numSegments - 1
+                : (headSegment - tailSegment - 1 + numSegments) % numSegments;
+        long room = Math.max(0, segmentSize - tailOffset - maxRecordSize) + (long) freeSegments
+                * Math.max(0, segmentSize - maxRecordSize);
+        return bytes <= room;
+    }
+
+    private void releaseInternal(BaseAction action) {
+        Integer size = reservations.remove(action);
+        if (size != null) {
+            reservedBytes -= size;
+            if (reservations.isEmpty()) {
+                maxReservedRecordSize = 0;
+            }
+        }
+    }
+
+    /**
+     * @param action
+     * @param reserved
+     *            room has been reserved for the action
+     */
+    private boolean append(BaseAction action, boolean reserved) {
+        byte[] payload;
+        try {
+            payload = ActionCodec.encode(action);
+        } catch (IOException e) {
+            Logger.warn("Cannot encode action: " + e.getMessage(), e);
+            if (reserved) {
+                release(action);
+            }
+            return false;
+        }
+        int recordSize = RECORD_HEADER_SIZE + payload.length;
+        if (recordSize > segmentSize) {
+            Logger.warn("Action of " + recordSize + " bytes is too large for queue segment");
+            if (reserved) {
+                release(action);
+            }
+            return false;
+        }
+        lock.lock();
+        try {
+            if (reserved) {
+                releaseInternal(action);
+            } else if (reservedBytes > 0
+                    && !hasRoom(reservedBytes + recordSize,
+                            Math.max(maxReservedRecordSize, recordSize))) {
+                // room is left for actions that have reserved it
+                metrics.onRejected(QueueMetrics.weightOf(action));
+                return false;
+            }
+            if (tailOffset + recordSize > segmentSize) {
+                int nextSegment = (tailSegment + 1) % numSegments;
+                boolean isEmpty = headSegment == tailSegment && headOffset == tailOffset;
+                if (nextSegment == headSegment && !isEmpty) {
+                    // queue is full
+                    metrics.onRejected(QueueMetrics.weightOf(action));
+                    return false;
+                }
+                if (tailOffset + 4 <= segmentSize) {
+                    segments[tailSegment].putInt(tailOffset, 0);
+                    dirtySegments[tailSegment] = true;
+                }
+                tailSegment = nextSegment;
+                tailOffset = 0;
+                if (isEmpty) {
+                    headSegment = readSegment = tailSegment;
+                    headOffset = readOffset = tailOffset;
+                }
+            }
+            long id = nextId++;
+            MappedByteBuffer segment = segments[tailSegment];
+            int offset = tailOffset;
+            segment.put(offset + 4, STATE_QUEUED);
+            segment.putLong(offset + 5, id);
+            ByteBuffer buff = segment.duplicate();
+            buff.position(offset + RECORD_HEADER_SIZE);
+            buff.put(payload);
+            // length is written last, a record is only valid once it is set
+            segment.putInt(offset, payload.length);
+            dirtySegments[tailSegment] = true;
+            tailOffset += recordSize;
+            queueSize++;
+            writeMeta();
+            metrics.onQueued(QueueMetrics.weightOf(action));
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private BaseAction takeInternal() {
+        int[] pos = { readSegment, readOffset };
+        while (nextRecord(pos)) {
+            MappedByteBuffer segment = segments[pos[0]];
+            int length = segment.getInt(pos[1]);
+            byte state = segment.get(pos[1] + 4);
+            long id = segment.getLong(pos[1] + 5);
+            int recordSegment = pos[0], recordOffset = pos[1];
+            pos[1] += RECORD_HEADER_SIZE + length;
+            readSegment = pos[0];
+            readOffset = pos[1];
+            if (state != STATE_QUEUED) {
+                continue;
+            }
+            queueSize--;
+            byte[] payload = new byte[length];
+            ByteBuffer buff = segment.duplicate();
+            buff.position(recordOffset + RECORD_HEADER_SIZE);
+            buff.get(payload);
+            BaseAction action;
+            try {
+                action = ActionCodec.decode(payload);
+            } catch (IOException e) {
+                Logger.warn("Cannot decode queued action #" + id + ": " + e.getMessage(), e);
+                segment.put(recordOffset + 4, STATE_FINISHED);
+                dirtySegments[recordSegment] = true;
+                continue;
+            }
+            ephemeral.put(id, new InFlight(action, recordSegment, recordOffset));
+            ephemeralIds.put(action, id);
+            updateHead();
+            writeMeta();
+            metrics.onTaken(QueueMetrics.weightOf(action));
+            return action;
+        }
+        updateHead();
+        writeMeta();
+        return null;
+    }
+
+    /**
+     * Removes an action from ephemeral storage and flags its record as
+     * finished.
+     *
+     * @param msg
+     * @return {@code true} if the action was in ephemeral storage
+     */
+    private boolean finishInternal(IQueueMessage msg) {
+        Long id = ephemeralIds.remove(msg);
+        if (id == null) {
+            return false;
+        }
+        InFlight inFlight = ephemeral.remove(id);
+        segments[inFlight.segment].put(inFlight.offset + 4, STATE_FINISHED);
+        dirtySegments[inFlight.segment] = true;
+        updateHead();
+        writeMeta();
+        return true;
+    }
+
+    /*----------------------------------------------------------------------*/
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean queue(IQueueMessage msg) {
+        if (!(msg instanceof BaseAction)) {
+            return false;
+        }
+        return queue((BaseAction) msg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean queue(BaseAction msg) {
+        return msg != null ? append(msg, false) : false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean reserve(BaseAction msg) {
+        int recordSize;
+        try {
+            recordSize = RECORD_HEADER_SIZE + ActionCodec.encode(msg).length
+                    + RESERVATION_SLACK;
+        } catch (IOException e) {
+            Logger.warn("Cannot encode action: " + e.getMessage(), e);
+            return false;
+        }
+        lock.lock();
+        try {
+            int maxRecordSize = Math.max(maxReservedRecordSize, recordSize);
+            boolean isEmpty = headSegment == tailSegment && headOffset == tailOffset;
+            // an oversized action is still accepted if queue is empty
+            if (recordSize > segmentSize
+                    || (!hasRoom(reservedBytes + recordSize, maxRecordSize) && !(isEmpty
+                            && reservations.isEmpty()))) {
+                metrics.onRejected(QueueMetrics.weightOf(msg));
+                return false;
+            }
+            reservations.put(msg, recordSize);
+            reservedBytes += recordSize;
+            maxReservedRecordSize = maxRecordSize;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean queueReserved(BaseAction msg) {
+        return msg != null ? append(msg, true) : false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void release(BaseAction msg) {
+        lock.lock();
+        try {
+            releaseInternal(msg);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean requeue(IQueueMessage msg) {
+        if (!(msg instanceof BaseAction)) {
+            return false;
+        }
+        return requeue((BaseAction) msg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean requeue(BaseAction msg) {
+        return requeueSilent(msg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean requeueSilent(IQueueMessage msg) {
+        if (!(msg instanceof BaseAction)) {
+            return false;
+        }
+        return requeueSilent((BaseAction) msg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean requeueSilent(BaseAction msg) {
+        if (msg == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            if (!append(msg, false)) {
+                return false;
+            }
+            finishInternal(msg);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void finish(IQueueMessage msg) {
+        lock.lock();
+        try {
+            finishInternal(msg);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * Returns actions that have been taken before {@code thresholdTimestampMs}
+     * and are not yet finished.
+     * </p>
+     */
+    @Override
+    public Collection<IQueueMessage> getOrphanMessages(long thresholdTimestampMs) {
+        Collection<IQueueMessage> result = new ArrayList<IQueueMessage>();
+        lock.lock();
+        try {
+            for (InFlight inFlight : ephemeral.values()) {
+                if (inFlight.takenTimestamp < thresholdTimestampMs) {
+                    result.add(inFlight.action);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean moveFromEphemeralToQueueStorage(IQueueMessage msg) {
+        lock.lock();
+        try {
+            return ephemeralIds.containsKey(msg) && requeueSilent(msg);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int queueSize() {
+        lock.lock();
+        try {
+            return queueSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int ephemeralSize() {
+        lock.lock();
+        try {
+            return ephemeral.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BaseAction take() {
+        lock.lock();
+        try {
+            return takeInternal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BaseAction take(long waitTime, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(waitTime);
+        lock.lockInterruptibly();
+        try {
+            while (queueSize == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return takeInternal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * Estimated time for the queue to drain about one segment's worth of
+     * actions, weighed by the average weight of taken actions.
+     * </p>
+     */
+    @Override
+    public long getRetryAfterMs(BaseAction msg) {
+        long numActions = Math.max(1, queueSize() / (numSegments - 1));
+        return metrics.estimateDrainTimeMs((long) Math.ceil(numActions
+                * metrics.averageWeight()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = metrics.toMap();
+        lock.lock();
+        try {
+            stats.put("type", "mmap");
+            stats.put("queue_size", queueSize);
+            stats.put("ephemeral_size", ephemeral.size());
+            stats.put("capacity_bytes", (long) segmentSize * (numSegments - 1));
+            int usedSegments = (tailSegment - headSegment + numSegments) % numSegments;
+            stats.put("used_bytes", (long) usedSegments * segmentSize + tailOffset - headOffset);
+        } finally {
+            lock.unlock();
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,138 @@
+package lucene.queue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lucene.action.BaseAction;
+import lucene.action.BulkIndexAction;
+
+/**
+ * Counters and drain-rate meter of an action queue.
+ *
+ * <p>
+ * Actions are weighted: a {@link BulkIndexAction} weighs as many units as the
+ * number of documents it carries, other actions weigh one unit. Drain rate is
+ * an exponentially weighted moving average of units taken per second,
+ * sampled over one-second windows.
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class QueueMetrics {
+
+    public final static long MIN_RETRY_AFTER_MS = 100;
+    public final static long MAX_RETRY_AFTER_MS = 60000;
+    /**
+     * Retry-after hint when the drain rate is not known (yet).
+     */
+    public final static long DEFAULT_RETRY_AFTER_MS = 1000;
+
+    private final static long WINDOW_MS = 1000;
+    private final static double EWMA_ALPHA = 0.3;
+
+    /**
+     * Gets weight of an action.
+     *
+     * @param action
+     * @return
+     */
+    public static int weightOf(BaseAction action) {
+        if (action instanceof BulkIndexAction) {
+            return Math.max(1, ((BulkIndexAction) action).numDocs());
+        }
+        return 1;
+    }
+
+    private AtomicLong numQueued = new AtomicLong(0);
+    private AtomicLong numTaken = new AtomicLong(0);
+    private AtomicLong numRejected = new AtomicLong(0);
+    private AtomicLong unitsQueued = new AtomicLong(0);
+    private AtomicLong unitsTaken = new AtomicLong(0);
+    private AtomicLong unitsRejected = new AtomicLong(0);
+
+    private long windowStart = System.currentTimeMillis();
+    private long windowUnits = 0;
+    private double drainRate = 0;
+
+    public void onQueued(int weight) {
+        numQueued.incrementAndGet();
+        unitsQueued.addAndGet(weight);
+    }
+
+    public void onRejected(int weight) {
+        numRejected.incrementAndGet();
+        unitsRejected.addAndGet(weight);
+    }
+
+    public void onTaken(int weight) {
+        numTaken.incrementAndGet();
+        unitsTaken.addAndGet(weight);
+        synchronized (this) {
+            windowUnits += weight;
+            sample(System.currentTimeMillis());
+        }
+    }
+
+    private void sample(long now) {
+        long elapsed = now - windowStart;
+        if (elapsed >= WINDOW_MS) {
+            double rate = windowUnits * 1000.0 / elapsed;
+            drainRate = drainRate > 0 ? EWMA_ALPHA * rate + (1 - EWMA_ALPHA) * drainRate : rate;
+            windowStart = now;
+            windowUnits = 0;
+        }
+    }
+
+    /**
+     * Gets current drain rate, in units per second.
+     *
+     * @return
+     */
+    synchronized public double drainRate() {
+        sample(System.currentTimeMillis());
+        return drainRate;
+    }
+
+    /**
+     * Gets average weight of taken actions.
+     *
+     * @return 1 if no action has been taken yet
+     */
+    public double averageWeight() {
+        long numTaken = this.numTaken.get();
+        return numTaken > 0 ? (double) unitsTaken.get() / numTaken : 1;
+    }
+
+    /**
+     * Estimates how long it takes to drain the specified number of units.
+     *
+     * @param units
+     * @return milliseconds, bounded by {@link #MIN_RETRY_AFTER_MS} and
+     *         {@link #MAX_RETRY_AFTER_MS}
+     */
+    public long estimateDrainTimeMs(long units) {
+        double rate = drainRate();
+        long result = rate > 0 ? (long) Math.ceil(units * 1000.0 / rate)
+                : DEFAULT_RETRY_AFTER_MS;
+        return Math.max(MIN_RETRY_AFTER_MS, Math.min(MAX_RETRY_AFTER_MS, result));
+    }
+
+    /**
+     * Exports metrics as a map.
+     *
+     * @return
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("num_queued", numQueued.get());
+        result.put("num_taken", numTaken.get());
+        result.put("num_rejected", numRejected.get());
+        result.put("units_queued", unitsQueued.get());
+        result.put("units_taken", unitsTaken.get());
+        result.put("units_rejected", unitsRejected.get());
+        result.put("drain_rate", Math.round(drainRate() * 100) / 100.0);
+        return result;
+    }
+}
@@ -0,0 +1,215 @@
+package lucene.spec;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.DocValuesFormat;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.lucene50.Lucene50Codec;
+import org.apache.lucene.codecs.lucene50.Lucene50StoredFieldsFormat;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.github.ddth.commons.utils.DPathUtils;
+import com.github.ddth.dao.BaseBo;
+
+/**
+ * Codec of an index: stored fields compression and per-field formats.
+ *
+ * <ul>
+ * <li>{@code stored_fields}: {@code best_speed} (default, LZ4: fast
+ * retrieval of stored fields) or {@code best_compression} (DEFLATE: smaller
+ * index, slower retrieval; for indices dominated by large stored text).</li>
+ * <li>{@code postings_formats}: map of field name to postings format name.
+ * </li>
+ * <li>{@code doc_values_formats}: map of field name to doc values format
+ * name.</li>
+ * </ul>
+ * <p>
+ * Formats are looked up by name among those available on the classpath
+ * (Lucene SPI, e.g. {@code Lucene50}; more formats such as {@code Memory} or
+ * {@code Direct} come with the lucene-codecs module); fields not listed use
+ * the default formats.
+ * </p>
+ * <p>
+ * The codec is chosen when the index writer is opened: a changed codec
+ * applies to segments written after the index is reopened, existing segments
+ * keep their codec until they are merged.
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class CodecSpec extends BaseBo {
+
+    public final static String STORED_FIELDS_BEST_SPEED = "best_speed";
+    public final static String STORED_FIELDS_BEST_COMPRESSION = "best_compression";
+
+    public static CodecSpec newInstance() {
+        return new CodecSpec();
+    }
+
+    @SuppressWarnings("unchecked")
+    public static CodecSpec newInstance(Map<String, Object> codecData) {
+        CodecSpec codec = newInstance();
+        if (codecData != null) {
+            String storedFields = DPathUtils.getValue(codecData, FIELD_STORED_FIELDS,
+                    String.class);
+            if (!StringUtils.isBlank(storedFields)) {
+                codec.storedFields(storedFields);
+            }
+            Map<String, Object> formats = DPathUtils.getValue(codecData,
+                    FIELD_POSTINGS_FORMATS, Map.class);
+            if (formats != null) {
+                codec.postingsFormats(toFormatNames(formats));
+            }
+            formats = DPathUtils.getValue(codecData, FIELD_DOC_VALUES_FORMATS, Map.class);
+            if (formats != null) {
+                codec.docValuesFormats(toFormatNames(formats));
+            }
+        }
+        return codec;
+    }
+
+    private static Map<String, String> toFormatNames(Map<String, Object> formats) {
+        Map<String, String> result = new HashMap<String, String>();
+        for (Entry<String, Object> entry : formats.entrySet()) {
+            if (entry.getValue() != null) {
+                result.put(entry.getKey().trim().toLowerCase(), entry.getValue().toString()
+                        .trim());
+            }
+        }
+        return result;
+    }
+
+    private final static String FIELD_STORED_FIELDS = "stored_fields";
+    private final static String FIELD_POSTINGS_FORMATS = "postings_formats";
+    private final static String FIELD_DOC_VALUES_FORMATS = "doc_values_formats";
+
+    /**
+     * Stored fields compression mode.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public Lucene50StoredFieldsFormat.Mode storedFieldsMode() {
+        String mode = getAttribute(FIELD_STORED_FIELDS, String.class);
+        return STORED_FIELDS_BEST_COMPRESSION.equals(mode)
+                ? Lucene50StoredFieldsFormat.Mode.BEST_COMPRESSION
+                : Lucene50StoredFieldsFormat.Mode.BEST_SPEED;
+    }
+
+    public CodecSpec storedFields(String mode) {
+        setAttribute(FIELD_STORED_FIELDS, mode != null ? mode.trim().toLowerCase() : null);
+        return this;
+    }
+
+    /**
+     * Postings format names, by field name.
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    @JsonIgnore
+    public Map<String, String> postingsFormats() {
+        Map<String, String> result = getAttribute(FIELD_POSTINGS_FORMATS, Map.class);
+        return result != null ? result : new HashMap<String, String>();
+    }
+
+    public CodecSpec postingsFormats(Map<String, String> formats) {
+        setAttribute(FIELD_POSTINGS_FORMATS, formats);
+        return this;
+    }
+
+    /**
+     * Doc values format names, by field name.
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    @JsonIgnore
+    public Map<String, String> docValuesFormats() {
+        Map<String, String> result = getAttribute(FIELD_DOC_VALUES_FORMATS, Map.class);
+        return result != null ? result : new HashMap<String, String>();
+    }
+
+    public CodecSpec docValuesFormats(Map<String, String> formats) {
+        setAttribute(FIELD_DOC_VALUES_FORMATS, formats);
+        return this;
+    }
+
+    /**
+     * Validates this codec spec.
+     *
+     * @throws IllegalArgumentException
+     *             if the stored fields mode or a format name is unknown
+     */
+    public void validate() throws IllegalArgumentException {
+        String storedFields = getAttribute(FIELD_STORED_FIELDS, String.class);
+        if (storedFields != null && !STORED_FIELDS_BEST_SPEED.equals(storedFields)
+                && !STORED_FIELDS_BEST_COMPRESSION.equals(storedFields)) {
+            throw new IllegalArgumentException("Invalid stored fields mode [" + storedFields
+                    + "], must be [" + STORED_FIELDS_BEST_SPEED + "] or ["
+                    + STORED_FIELDS_BEST_COMPRESSION + "]");
+        }
+        for (String name : postingsFormats().values()) {
+            if (!PostingsFormat.availablePostingsFormats().contains(name)) {
+                throw new IllegalArgumentException("Unknown postings format [" + name
+                        + "], available: " + PostingsFormat.availablePostingsFormats());
+            }
+        }
+        for (String name : docValuesFormats().values()) {
+            if (!DocValuesFormat.availableDocValuesFormats().contains(name)) {
+                throw new IllegalArgumentException("Unknown doc values format [" + name
+                        + "], available: " + DocValuesFormat.availableDocValuesFormats());
+            }
+        }
+    }
+
+    /**
+     * Builds the codec for new segments.
+     *
+     * @return
+     * @throws IllegalArgumentException
+     *             if a format name is unknown
+     */
+    public Codec newCodec() throws IllegalArgumentException {
+        final Map<String, PostingsFormat> postingsFormats = new HashMap<String, PostingsFormat>();
+        for (Entry<String, String> entry : postingsFormats().entrySet()) {
+            postingsFormats.put(entry.getKey(), PostingsFormat.forName(entry.getValue()));
+        }
+        final Map<String, DocValuesFormat> docValuesFormats =
+                new HashMap<String, DocValuesFormat>();
+        for (Entry<String, String> entry : docValuesFormats().entrySet()) {
+            docValuesFormats.put(entry.getKey(), DocValuesFormat.forName(entry.getValue()));
+        }
+        return new Lucene50Codec(storedFieldsMode()) {
+            @Override
+            public PostingsFormat getPostingsFormatForField(String field) {
+                PostingsFormat format = postingsFormats.get(field);
+                return format != null ? format : super.getPostingsFormatForField(field);
+            }
+
+            @Override
+            public DocValuesFormat getDocValuesFormatForField(String field) {
+                DocValuesFormat format = docValuesFormats.get(field);
+                return format != null ? format : super.getDocValuesFormatForField(field);
+            }
+        };
+    }
+
+    /**
+     * Effective settings of this codec spec.
+     *
+     * @return
+     */
+    public Map<String, Object> toEffectiveMap() {
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put(FIELD_STORED_FIELDS, storedFieldsMode().name().toLowerCase());
+        result.put(FIELD_POSTINGS_FORMATS, postingsFormats());
+        result.put(FIELD_DOC_VALUES_FORMATS, docValuesFormats());
+        return result;
+    }
+}
@@ -0,0 +1,162 @@
+package lucene.spec;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.github.ddth.commons.utils.DPathUtils;
+import com.github.ddth.dao.BaseBo;
+
+/**
+ * Commit and refresh policy of an index.
+ *
+ * <p>
+ * Newly indexed documents become searchable when the index is refreshed
+ * (near-real-time, cheap). Changes are made durable when the index is
+ * committed (fsync, expensive), which happens when one of the thresholds is
+ * reached:
+ * </p>
+ * <ul>
+ * <li>{@code max_actions}: number of uncommitted changes.</li>
+ * <li>{@code max_buffered_bytes}: RAM used by the index writer's buffer.</li>
+ * <li>{@code max_interval_ms}: age of the oldest uncommitted change.</li>
+ * </ul>
+ * <p>
+ * In {@code adaptive} mode, the action/bytes thresholds are backed off
+ * (doubled, up to {@link #MAX_BACKOFF} times) while commits keep being
+ * triggered by them, and relaxed again when load drops. Commits are then
+ * also kept at most about one-tenth of wall-clock time.
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class CommitPolicy extends BaseBo {
+
+    public final static long DEFAULT_REFRESH_INTERVAL_MS = 1000;
+    public final static long DEFAULT_MAX_ACTIONS = 10000;
+    public final static long DEFAULT_MAX_BUFFERED_BYTES = 8 * 1024 * 1024;
+    public final static long DEFAULT_MAX_INTERVAL_MS = 30000;
+    public final static boolean DEFAULT_ADAPTIVE = true;
+
+    /**
+     * Max factor the action/bytes thresholds are multiplied by in adaptive
+     * mode.
+     */
+    public final static int MAX_BACKOFF = 8;
+
+    public static CommitPolicy newInstance() {
+        return new CommitPolicy();
+    }
+
+    public static CommitPolicy newInstance(Map<String, Object> policyData) {
+        CommitPolicy policy = newInstance();
+        if (policyData != null) {
+            Number value = DPathUtils.getValue(policyData, FIELD_REFRESH_INTERVAL_MS,
+                    Number.class);
+            if (value != null) {
+                policy.refreshIntervalMs(value.longValue());
+            }
+            value = DPathUtils.getValue(policyData, FIELD_MAX_ACTIONS, Number.class);
+            if (value != null) {
+                policy.maxActions(value.longValue());
+            }
+            value = DPathUtils.getValue(policyData, FIELD_MAX_BUFFERED_BYTES, Number.class);
+            if (value != null) {
+                policy.maxBufferedBytes(value.longValue());
+            }
+            value = DPathUtils.getValue(policyData, FIELD_MAX_INTERVAL_MS, Number.class);
+            if (value != null) {
+                policy.maxIntervalMs(value.longValue());
+            }
+            Boolean adaptive = DPathUtils.getValue(policyData, FIELD_ADAPTIVE, Boolean.class);
+            if (adaptive != null) {
+                policy.adaptive(adaptive.booleanValue());
+            }
+        }
+        return policy;
+    }
+
+    private final static String FIELD_REFRESH_INTERVAL_MS = "refresh_interval_ms";
+    private final static String FIELD_MAX_ACTIONS = "max_actions";
+    private final static String FIELD_MAX_BUFFERED_BYTES = "max_buffered_bytes";
+    private final static String FIELD_MAX_INTERVAL_MS = "max_interval_ms";
+    private final static String FIELD_ADAPTIVE = "adaptive";
+
+    private long getLong(String attr, long defaultValue) {
+        Number value = getAttribute(attr, Number.class);
+        return value != null ? value.longValue() : defaultValue;
+    }
+
+    /**
+     * Interval between two near-real-time refreshes.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public long refreshIntervalMs() {
+        return getLong(FIELD_REFRESH_INTERVAL_MS, DEFAULT_REFRESH_INTERVAL_MS);
+    }
+
+    public CommitPolicy refreshIntervalMs(long value) {
+        setAttribute(FIELD_REFRESH_INTERVAL_MS, value);
+        return this;
+    }
+
+    /**
+     * Commits when number of uncommitted changes reaches this value; value
+     * less than 1 disables this threshold.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public long maxActions() {
+        return getLong(FIELD_MAX_ACTIONS, DEFAULT_MAX_ACTIONS);
+    }
+
+    public CommitPolicy maxActions(long value) {
+        setAttribute(FIELD_MAX_ACTIONS, value);
+        return this;
+    }
+
+    /**
+     * Commits when the index writer's RAM buffer reaches this size; value less
+     * than 1 disables this threshold.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public long maxBufferedBytes() {
+        return getLong(FIELD_MAX_BUFFERED_BYTES, DEFAULT_MAX_BUFFERED_BYTES);
+    }
+
+    public CommitPolicy maxBufferedBytes(long value) {
+        setAttribute(FIELD_MAX_BUFFERED_BYTES, value);
+        return this;
+    }
+
+    /**
+     * Commits when the oldest uncommitted change is older than this value.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public long maxIntervalMs() {
+        return getLong(FIELD_MAX_INTERVAL_MS, DEFAULT_MAX_INTERVAL_MS);
+    }
+
+    public CommitPolicy maxIntervalMs(long value) {
+        setAttribute(FIELD_MAX_INTERVAL_MS, value);
+        return this;
+    }
+
+    @JsonIgnore
+    public boolean isAdaptive() {
+        Boolean result = getAttribute(FIELD_ADAPTIVE, Boolean.class);
+        return result != null ? result.booleanValue() : DEFAULT_ADAPTIVE;
+    }
+
+    public CommitPolicy adaptive(boolean value) {
+        setAttribute(FIELD_ADAPTIVE, value);
+        return this;
+    }
+}
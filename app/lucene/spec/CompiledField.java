@@ -0,0 +1,278 @@
+package lucene.spec;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.DoubleField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexOptions;
+
+/**
+ * Resolved, immutable form of a {@link FieldSpec}: interned name, type,
+ * store/index flags and a pre-built (frozen) Lucene {@link FieldType}, with
+ * the field's indexing options (norms, index options, term vectors,
+ * precision step) applied.
+ *
+ * <p>
+ * {@link FieldSpec} reads its properties from its attribute map on every
+ * call; this class resolves them once, when the {@link Schema} is compiled.
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public final class CompiledField {
+
+    /**
+     * Compiles a field spec.
+     *
+     * @param name
+     *            normalized field name
+     * @param spec
+     * @return
+     */
+    public static CompiledField compile(String name, FieldSpec spec) {
+        FieldSpec.Type type = spec.type();
+        if (type == null) {
+            type = FieldSpec.DEFAULT_FIELD_TYPE;
+        }
+        return new CompiledField(name.intern(), type, spec.isStored(), spec.isIndexed(),
+                spec.hasDocValues(), spec);
+    }
+
+    private final String name;
+    private final FieldSpec.Type type;
+    private final boolean stored, indexed, docValues;
+    private final FieldType fieldType;
+
+    private CompiledField(String name, FieldSpec.Type type, boolean stored, boolean indexed,
+            boolean docValues, FieldSpec spec) {
+        this.name = name;
+        this.type = type;
+        this.stored = stored;
+        this.indexed = indexed;
+        this.docValues = docValues;
+        FieldType fieldType = buildFieldType(type, stored, indexed, docValues);
+        this.fieldType = indexed && !docValues ? applyIndexingOptions(fieldType, type, spec)
+                : fieldType;
+    }
+
+    /**
+     * Applies per-field indexing options (norms, index options, term vectors,
+     * precision step) to a field's default type.
+     */
+    private static FieldType applyIndexingOptions(FieldType baseType, FieldSpec.Type type,
+            FieldSpec spec) {
+        Boolean hasNorms = spec.hasNorms();
+        IndexOptions indexOptions = spec.indexOptions();
+        FieldSpec.TermVectors termVectors = spec.termVectors();
+        boolean isNumeric = type == FieldSpec.Type.LONG || type == FieldSpec.Type.DOUBLE;
+        int precisionStep = isNumeric ? spec.precisionStep() : 0;
+        if (hasNorms == null && indexOptions == null && termVectors == null
+                && precisionStep == 0) {
+            return baseType;
+        }
+        FieldType result = new FieldType(baseType);
+        if (hasNorms != null) {
+            result.setOmitNorms(!hasNorms.booleanValue());
+        }
+        if (indexOptions != null) {
+            result.setIndexOptions(indexOptions);
+        }
+        if (termVectors != null) {
+            result.setStoreTermVectors(termVectors.stored);
+            result.setStoreTermVectorPositions(termVectors.positions);
+            result.setStoreTermVectorOffsets(termVectors.offsets);
+        }
+        if (precisionStep > 0) {
+            result.setNumericPrecisionStep(precisionStep);
+        }
+        result.freeze();
+        return result;
+    }
+
+    private static FieldType buildFieldType(FieldSpec.Type type, boolean stored,
+            boolean indexed, boolean docValues) {
+        if (docValues) {
+            return NumericDocValuesField.TYPE;
+        }
+        if (!stored && !indexed) {
+            return null;
+        }
+        FieldType baseType;
+        switch (type) {
+        case ID:
+            baseType = stored ? StringField.TYPE_STORED : StringField.TYPE_NOT_STORED;
+            break;
+        case LONG:
+            baseType = stored ? LongField.TYPE_STORED : LongField.TYPE_NOT_STORED;
+            break;
+        case DOUBLE:
+            baseType = stored ? DoubleField.TYPE_STORED : DoubleField.TYPE_NOT_STORED;
+            break;
+        default:
+            baseType = stored ? TextField.TYPE_STORED : TextField.TYPE_NOT_STORED;
+            break;
+        }
+        if (indexed) {
+            return baseType;
+        }
+        // stored-only
+        FieldType result = new FieldType(baseType);
+        result.setIndexOptions(IndexOptions.NONE);
+        result.setTokenized(false);
+        result.freeze();
+        return result;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public FieldSpec.Type type() {
+        return type;
+    }
+
+    public boolean isStored() {
+        return stored;
+    }
+
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Is this a doc-values-only {@code long} field (see
+     * {@link FieldSpec#hasDocValues()})?
+     * 
+     * @return
+     */
+    public boolean hasDocValues() {
+        return docValues;
+    }
+
+    /**
+     * Pre-built Lucene field type.
+     *
+     * @return {@code null} if the field is neither stored nor indexed
+     */
+    public FieldType fieldType() {
+        return fieldType;
+    }
+
+    /**
+     * Checks if a value is valid for this field.
+     *
+     * <p>
+     * {@code string} fields also accept pre-tokenized values (see
+     * {@link PreTokenizedTokenStream}).
+     * </p>
+     *
+     * @param value
+     * @return
+     */
+    public boolean accepts(Object value) {
+        if (value == null) {
+            return false;
+        }
+        switch (type) {
+        case LONG:
+        case DOUBLE:
+            return value instanceof Number;
+        case STRING:
+            return !PreTokenizedTokenStream.isPreTokenized(value)
+                    || PreTokenizedTokenStream.parse(value) != null;
+        default:
+            return !PreTokenizedTokenStream.isPreTokenized(value);
+        }
+    }
+
+    /**
+     * Builds a Lucene field from a value.
+     *
+     * @param value
+     * @return {@code null} if the value is not valid for this field, or the
+     *         field is neither stored nor indexed
+     */
+    public Field newField(Object value) {
+        if (fieldType == null || !accepts(value)) {
+            return null;
+        }
+        switch (type) {
+        case LONG:
+            return docValues ? new NumericDocValuesField(name, ((Number) value).longValue())
+                    : new LongField(name, ((Number) value).longValue(), fieldType);
+        case DOUBLE:
+            return new DoubleField(name, ((Number) value).doubleValue(), fieldType);
+        case STRING:
+            if (PreTokenizedTokenStream.isPreTokenized(value)) {
+                PreTokenizedTokenStream.Tokens tokens = PreTokenizedTokenStream.parse(value);
+                if (tokens == null) {
+                    return null;
+                }
+                // the string value is only used if stored, the token stream
+                // takes precedence over the analyzer for indexing
+                Field field = new Field(name, stored ? tokens.value() : "", fieldType);
+                if (indexed) {
+                    field.setTokenStream(new PreTokenizedTokenStream(tokens));
+                }
+                return field;
+            }
+            return new Field(name, value.toString(), fieldType);
+        default:
+            return new Field(name, value.toString(), fieldType);
+        }
+    }
+
+    /**
+     * Resets the value of a Lucene field previously built by
+     * {@link #newField(Object)}, so that the field instance can be reused.
+     *
+     * @param field
+     * @param value
+     * @return {@code false} if the value is not valid for this field
+     */
+    public boolean setValue(Field field, Object value) {
+        if (!accepts(value)) {
+            return false;
+        }
+        switch (type) {
+        case LONG:
+            field.setLongValue(((Number) value).longValue());
+            break;
+        case DOUBLE:
+            field.setDoubleValue(((Number) value).doubleValue());
+            break;
+        case STRING:
+            if (PreTokenizedTokenStream.isPreTokenized(value)) {
+                PreTokenizedTokenStream.Tokens tokens = PreTokenizedTokenStream.parse(value);
+                if (tokens == null) {
+                    return false;
+                }
+                field.setStringValue(stored ? tokens.value() : "");
+                if (indexed) {
+                    TokenStream tokenStream = field.tokenStreamValue();
+                    if (tokenStream instanceof PreTokenizedTokenStream) {
+                        ((PreTokenizedTokenStream) tokenStream).setTokens(tokens);
+                    } else {
+                        field.setTokenStream(new PreTokenizedTokenStream(tokens));
+                    }
+                }
+            } else {
+                field.setStringValue(value.toString());
+                if (field.tokenStreamValue() != null) {
+                    // back to analyzing the string value
+                    field.setTokenStream(null);
+                }
+            }
+            break;
+        default:
+            field.setStringValue(value.toString());
+            break;
+        }
+        return true;
+    }
+}
@@ -2,6 +2,8 @@ package lucene.spec;
 
 import java.util.Map;
 
+import org.apache.lucene.index.IndexOptions;
+
 import util.IndexUtils;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -74,13 +76,114 @@ public class FieldSpec extends BaseBo {
             if (isIndexed != null) {
                 fieldSpec.markIndexed(isIndexed.booleanValue());
             }
+
+            Boolean hasDocValues = DPathUtils.getValue(fieldData, FIELD_DOC_VALUES,
+                    Boolean.class);
+            if (hasDocValues != null) {
+                fieldSpec.markDocValues(hasDocValues.booleanValue());
+            }
+
+            Boolean hasNorms = DPathUtils.getValue(fieldData, FIELD_NORMS, Boolean.class);
+            if (hasNorms != null) {
+                fieldSpec.markNorms(hasNorms.booleanValue());
+            }
+
+            String indexOptions = DPathUtils.getValue(fieldData, FIELD_INDEX_OPTIONS,
+                    String.class);
+            if (indexOptions != null) {
+                if (parseIndexOptions(indexOptions) == null) {
+                    return null;
+                }
+                fieldSpec.indexOptions(indexOptions);
+            }
+
+            String termVectors = DPathUtils.getValue(fieldData, FIELD_TERM_VECTORS,
+                    String.class);
+            if (termVectors != null) {
+                if (TermVectors.fromName(termVectors) == null) {
+                    return null;
+                }
+                fieldSpec.termVectors(termVectors);
+            }
+
+            Number precisionStep = DPathUtils.getValue(fieldData, FIELD_PRECISION_STEP,
+                    Number.class);
+            if (precisionStep != null) {
+                if (precisionStep.intValue() < 1) {
+                    return null;
+                }
+                fieldSpec.precisionStep(precisionStep.intValue());
+            }
         }
         return fieldSpec;
     }
 
+    /**
+     * Term vectors options.
+     * 
+     * @since 0.1.1
+     */
+    public static enum TermVectors {
+        NO(false, false, false),
+
+        YES(true, false, false),
+
+        WITH_POSITIONS(true, true, false),
+
+        WITH_OFFSETS(true, false, true),
+
+        WITH_POSITIONS_OFFSETS(true, true, true);
+
+        public final boolean stored, positions, offsets;
+
+        private TermVectors(boolean stored, boolean positions, boolean offsets) {
+            this.stored = stored;
+            this.positions = positions;
+            this.offsets = offsets;
+        }
+
+        public static TermVectors fromName(String name) {
+            for (TermVectors value : values()) {
+                if (value.name().equalsIgnoreCase(name.trim())) {
+                    return value;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Parses index options: {@code docs}, {@code freqs}, {@code positions} or
+     * {@code offsets}.
+     * 
+     * @param name
+     * @return {@code null} if the name is invalid
+     * @since 0.1.1
+     */
+    public static IndexOptions parseIndexOptions(String name) {
+        String value = name != null ? name.trim().toLowerCase() : "";
+        switch (value) {
+        case "docs":
+            return IndexOptions.DOCS;
+        case "freqs":
+            return IndexOptions.DOCS_AND_FREQS;
+        case "positions":
+            return IndexOptions.DOCS_AND_FREQS_AND_POSITIONS;
+        case "offsets":
+            return IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS;
+        default:
+            return null;
+        }
+    }
+
     private final static String FIELD_TYPE = "type";
     private final static String FIELD_IS_STORED = "store";
     private final static String FIELD_IS_INDEXED = "index";
+    private final static String FIELD_DOC_VALUES = "docvalues";
+    private final static String FIELD_NORMS = "norms";
+    private final static String FIELD_INDEX_OPTIONS = "index_options";
+    private final static String FIELD_TERM_VECTORS = "term_vectors";
+    private final static String FIELD_PRECISION_STEP = "precision_step";
 
     private String name;
 
@@ -127,6 +230,101 @@ public class FieldSpec extends BaseBo {
         return this;
     }
 
+    /**
+     * A {@code long} field with doc values is kept as a numeric doc value
+     * only (not indexed, not stored), so that its value can be updated in
+     * place without re-indexing the document.
+     * 
+     * @return
+     * @since 0.1.1
+     */
+    @JsonIgnore
+    public boolean hasDocValues() {
+        Boolean result = getAttribute(FIELD_DOC_VALUES, Boolean.class);
+        return result != null ? result.booleanValue() && type() == Type.LONG : false;
+    }
+
+    public FieldSpec markDocValues(boolean value) {
+        setAttribute(FIELD_DOC_VALUES, value);
+        return this;
+    }
+
+    /**
+     * Are norms (length normalization, index-time boost) indexed for this
+     * field? Only applicable to {@code string} fields, which have norms by
+     * default; omitting them saves one byte per document and disables length
+     * normalization when scoring.
+     * 
+     * @return {@code null} if not specified (type's default)
+     * @since 0.1.1
+     */
+    @JsonIgnore
+    public Boolean hasNorms() {
+        return getAttribute(FIELD_NORMS, Boolean.class);
+    }
+
+    public FieldSpec markNorms(boolean value) {
+        setAttribute(FIELD_NORMS, value);
+        return this;
+    }
+
+    /**
+     * What is indexed in the postings: {@code docs} (matching only),
+     * {@code freqs} (scoring), {@code positions} (phrase queries, default for
+     * {@code string} fields) or {@code offsets}.
+     * 
+     * @return {@code null} if not specified (type's default)
+     * @since 0.1.1
+     */
+    @JsonIgnore
+    public IndexOptions indexOptions() {
+        String value = getAttribute(FIELD_INDEX_OPTIONS, String.class);
+        return value != null ? parseIndexOptions(value) : null;
+    }
+
+    public FieldSpec indexOptions(String value) {
+        setAttribute(FIELD_INDEX_OPTIONS, value != null ? value.trim().toLowerCase() : null);
+        return this;
+    }
+
+    /**
+     * Term vectors to store: {@code no} (default), {@code yes},
+     * {@code with_positions}, {@code with_offsets} or
+     * {@code with_positions_offsets}.
+     * 
+     * @return {@code null} if not specified
+     * @since 0.1.1
+     */
+    @JsonIgnore
+    public TermVectors termVectors() {
+        String value = getAttribute(FIELD_TERM_VECTORS, String.class);
+        return value != null ? TermVectors.fromName(value) : null;
+    }
+
+    public FieldSpec termVectors(String value) {
+        setAttribute(FIELD_TERM_VECTORS, value != null ? value.trim().toLowerCase() : null);
+        return this;
+    }
+
+    /**
+     * Precision step of a {@code long}/{@code double} field: larger steps
+     * index fewer terms per value (smaller index, faster indexing) at the
+     * cost of slower range queries; range queries must use the same step.
+     * 
+     * @return {@code 0} if not specified (Lucene's default)
+     * @since 0.1.1
+     */
+    @JsonIgnore
+    public int precisionStep() {
+        Number value = getAttribute(FIELD_PRECISION_STEP, Number.class);
+        return value != null && value.intValue() > 0 ? value.intValue() : 0;
+    }
+
+    public FieldSpec precisionStep(int value) {
+        setAttribute(FIELD_PRECISION_STEP, value);
+        return this;
+    }
+
     public boolean validateValue(Object value) {
         if (value == null) {
             return false;
@@ -138,6 +336,7 @@ public class FieldSpec extends BaseBo {
         case STRING:
             return true;
         case LONG:
+        case DOUBLE:
             return value instanceof Number;
         default:
             return false;
@@ -43,6 +43,24 @@ public class IndexSpec extends BaseBo {
             spec.fields(DPathUtils.getValue(requestData, ATTR_FIELDS, Map.class));
             spec.defaultSearchField(DPathUtils.getValue(requestData, ATTR_DEFAULT_SEARCH_FIELD,
                     String.class));
+            Map<String, Object> commitPolicy = DPathUtils.getValue(requestData,
+                    ATTR_COMMIT_POLICY, Map.class);
+            if (commitPolicy != null) {
+                spec.commitPolicy(CommitPolicy.newInstance(commitPolicy));
+            }
+            Map<String, Object> tuning = DPathUtils.getValue(requestData, ATTR_TUNING, Map.class);
+            if (tuning != null) {
+                spec.tuning(TuningProfile.newInstance(tuning));
+            }
+            Map<String, Object> maintenance = DPathUtils.getValue(requestData, ATTR_MAINTENANCE,
+                    Map.class);
+            if (maintenance != null) {
+                spec.maintenance(MaintenancePolicy.newInstance(maintenance));
+            }
+            Map<String, Object> codec = DPathUtils.getValue(requestData, ATTR_CODEC, Map.class);
+            if (codec != null) {
+                spec.codec(CodecSpec.newInstance(codec));
+            }
         }
         return spec;
     }
@@ -80,8 +98,20 @@ public class IndexSpec extends BaseBo {
      * @throws IOException
      */
     public static void saveSpec(final Directory dir, final IndexSpec spec) throws IOException {
+        saveSpec(dir, SerializationUtils.toJsonString(spec.toMap()));
+    }
+
+    /**
+     * Saves an index spec, already serialized to JSON, to a directory.
+     * 
+     * @param dir
+     * @param specAsJson
+     * @throws IOException
+     * @since 0.1.1
+     */
+    public static void saveSpec(final Directory dir, final String specAsJson)
+            throws IOException {
         try (IndexOutput output = dir.createOutput(SPEC_FILE, null)) {
-            String specAsJson = SerializationUtils.toJsonString(spec.toMap());
             output.writeString(specAsJson);
         }
     }
@@ -90,6 +120,11 @@ public class IndexSpec extends BaseBo {
     private final static String ATTR_DEFAULT_SEARCH_FIELD = "default_search_field";
     private final static String ATTR_SECRET = "secret";
     private final static String ATTR_FIELDS = "fields";
+    private final static String ATTR_COMMIT_POLICY = "commit_policy";
+    private final static String ATTR_SCHEMA_VERSION = "schema_version";
+    private final static String ATTR_TUNING = "tuning";
+    private final static String ATTR_MAINTENANCE = "maintenance";
+    private final static String ATTR_CODEC = "codec";
 
     /**
      * Merges with another spec.
@@ -121,6 +156,22 @@ public class IndexSpec extends BaseBo {
                     this.defaultSearchField(newDefaultSearchField);
                 }
             }
+            if (spec.getAttribute(ATTR_COMMIT_POLICY) != null
+                    && (override || this.getAttribute(ATTR_COMMIT_POLICY) == null)) {
+                this.commitPolicy(spec.commitPolicy());
+            }
+            if (spec.getAttribute(ATTR_TUNING) != null
+                    && (override || this.getAttribute(ATTR_TUNING) == null)) {
+                this.tuning(spec.tuning());
+            }
+            if (spec.getAttribute(ATTR_MAINTENANCE) != null
+                    && (override || this.getAttribute(ATTR_MAINTENANCE) == null)) {
+                this.maintenance(spec.maintenance());
+            }
+            if (spec.getAttribute(ATTR_CODEC) != null
+                    && (override || this.getAttribute(ATTR_CODEC) == null)) {
+                this.codec(spec.codec());
+            }
             Map<String, FieldSpec> existingFields = fields();
             Map<String, FieldSpec> newFields = spec.fields();
             if (newFields != null) {
@@ -166,6 +217,112 @@ public class IndexSpec extends BaseBo {
         return this;
     }
 
+    /**
+     * Version of the {@link Schema} this spec was last saved from.
+     * 
+     * @return
+     * @since 0.1.1
+     */
+    @JsonIgnore
+    public long schemaVersion() {
+        Number result = getAttribute(ATTR_SCHEMA_VERSION, Number.class);
+        return result != null ? result.longValue() : 0;
+    }
+
+    public IndexSpec schemaVersion(long version) {
+        setAttribute(ATTR_SCHEMA_VERSION, version);
+        return this;
+    }
+
+    private CommitPolicy commitPolicy;
+
+    /**
+     * Gets this index's commit/refresh policy.
+     * 
+     * @return
+     * @since 0.1.1
+     */
+    @SuppressWarnings("unchecked")
+    @JsonIgnore
+    public CommitPolicy commitPolicy() {
+        if (commitPolicy == null) {
+            commitPolicy = CommitPolicy.newInstance(getAttribute(ATTR_COMMIT_POLICY, Map.class));
+        }
+        return commitPolicy;
+    }
+
+    public IndexSpec commitPolicy(CommitPolicy commitPolicy) {
+        setAttribute(ATTR_COMMIT_POLICY, commitPolicy != null ? commitPolicy.toMap() : null);
+        return this;
+    }
+
+    private TuningProfile tuning;
+
+    /**
+     * Gets this index's index writer tuning profile.
+     * 
+     * @return
+     * @since 0.1.1
+     */
+    @SuppressWarnings("unchecked")
+    @JsonIgnore
+    public TuningProfile tuning() {
+        if (tuning == null) {
+            tuning = TuningProfile.newInstance(getAttribute(ATTR_TUNING, Map.class));
+        }
+        return tuning;
+    }
+
+    public IndexSpec tuning(TuningProfile tuning) {
+        setAttribute(ATTR_TUNING, tuning != null ? tuning.toMap() : null);
+        return this;
+    }
+
+    private MaintenancePolicy maintenance;
+
+    /**
+     * Gets this index's maintenance (merge) policy.
+     * 
+     * @return
+     * @since 0.1.1
+     */
+    @SuppressWarnings("unchecked")
+    @JsonIgnore
+    public MaintenancePolicy maintenance() {
+        if (maintenance == null) {
+            maintenance = MaintenancePolicy.newInstance(getAttribute(ATTR_MAINTENANCE,
+                    Map.class));
+        }
+        return maintenance;
+    }
+
+    public IndexSpec maintenance(MaintenancePolicy maintenance) {
+        setAttribute(ATTR_MAINTENANCE, maintenance != null ? maintenance.toMap() : null);
+        return this;
+    }
+
+    private CodecSpec codec;
+
+    /**
+     * Gets this index's codec (stored fields compression, per-field formats).
+     * 
+     * @return
+     * @since 0.1.1
+     */
+    @SuppressWarnings("unchecked")
+    @JsonIgnore
+    public CodecSpec codec() {
+        if (codec == null) {
+            codec = CodecSpec.newInstance(getAttribute(ATTR_CODEC, Map.class));
+        }
+        return codec;
+    }
+
+    public IndexSpec codec(CodecSpec codec) {
+        setAttribute(ATTR_CODEC, codec != null ? codec.toMap() : null);
+        return this;
+    }
+
     private Map<String, FieldSpec> fields;
 
     @SuppressWarnings("unchecked")
@@ -225,6 +382,14 @@ public class IndexSpec extends BaseBo {
         super.setAttribute(name, value);
         if (StringUtils.equals(name, ATTR_FIELDS)) {
             fields = null;
+        } else if (StringUtils.equals(name, ATTR_COMMIT_POLICY)) {
+            commitPolicy = null;
+        } else if (StringUtils.equals(name, ATTR_TUNING)) {
+            tuning = null;
+        } else if (StringUtils.equals(name, ATTR_MAINTENANCE)) {
+            maintenance = null;
+        } else if (StringUtils.equals(name, ATTR_CODEC)) {
+            codec = null;
         }
         return this;
     }
@@ -232,6 +397,10 @@ public class IndexSpec extends BaseBo {
     public IndexSpec fromMap(Map<String, Object> dataMap) {
         super.fromMap(dataMap);
         fields = null;
+        commitPolicy = null;
+        tuning = null;
+        maintenance = null;
+        codec = null;
         return this;
     }
 }
@@ -0,0 +1,228 @@
+package lucene.spec;
+
+import java.util.Calendar;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.github.ddth.commons.utils.DPathUtils;
+import com.github.ddth.dao.BaseBo;
+
+/**
+ * Maintenance policy of an index: when to merge away deleted documents.
+ *
+ * <p>
+ * Updating a document deletes its old version, deleted documents are only
+ * reclaimed when their segments get merged. A maintenance job runs:
+ * </p>
+ * <ul>
+ * <li>once per off-peak {@code window} (e.g. {@code "01:00-05:00"}, server
+ * local time, may span midnight): a force-merge down to
+ * {@code max_segments} segments if it is greater than 0, an expunge-deletes
+ * otherwise.</li>
+ * <li>any time the ratio of deleted documents reaches
+ * {@code deletes_pct_threshold} (percent, 0 disables): an
+ * expunge-deletes of the segments above the threshold. If a job leaves the
+ * ratio at or above the threshold, the trigger waits until the ratio has
+ * grown again (by a tenth of the threshold, at least 1 point).</li>
+ * </ul>
+ * <p>
+ * Merges are limited to {@code io_mb_per_sec} (0 means unlimited) while a
+ * maintenance job is running, to protect search latency. Conditions are
+ * checked every {@code check_interval_ms}.
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class MaintenancePolicy extends BaseBo {
+
+    public final static String JOB_EXPUNGE_DELETES = "expunge_deletes";
+    public final static String JOB_FORCE_MERGE = "force_merge";
+
+    public final static double DEFAULT_DELETES_PCT_THRESHOLD = 0;
+    public final static int DEFAULT_MAX_SEGMENTS = 0;
+    public final static double DEFAULT_IO_MB_PER_SEC = 20;
+    public final static long DEFAULT_CHECK_INTERVAL_MS = 60000;
+
+    public static boolean isValidJob(String job) {
+        return JOB_EXPUNGE_DELETES.equals(job) || JOB_FORCE_MERGE.equals(job);
+    }
+
+    public static MaintenancePolicy newInstance() {
+        return new MaintenancePolicy();
+    }
+
+    public static MaintenancePolicy newInstance(Map<String, Object> policyData) {
+        MaintenancePolicy policy = newInstance();
+        if (policyData != null) {
+            Number value = DPathUtils.getValue(policyData, FIELD_DELETES_PCT_THRESHOLD,
+                    Number.class);
+            if (value != null) {
+                policy.deletesPctThreshold(value.doubleValue());
+            }
+            String window = DPathUtils.getValue(policyData, FIELD_WINDOW, String.class);
+            if (!StringUtils.isBlank(window)) {
+                policy.window(window);
+            }
+            value = DPathUtils.getValue(policyData, FIELD_MAX_SEGMENTS, Number.class);
+            if (value != null) {
+                policy.maxSegments(value.intValue());
+            }
+            value = DPathUtils.getValue(policyData, FIELD_IO_MB_PER_SEC, Number.class);
+            if (value != null) {
+                policy.ioMBPerSec(value.doubleValue());
+            }
+            value = DPathUtils.getValue(policyData, FIELD_CHECK_INTERVAL_MS, Number.class);
+            if (value != null) {
+                policy.checkIntervalMs(value.longValue());
+            }
+        }
+        return policy;
+    }
+
+    private final static String FIELD_DELETES_PCT_THRESHOLD = "deletes_pct_threshold";
+    private final static String FIELD_WINDOW = "window";
+    private final static String FIELD_MAX_SEGMENTS = "max_segments";
+    private final static String FIELD_IO_MB_PER_SEC = "io_mb_per_sec";
+    private final static String FIELD_CHECK_INTERVAL_MS = "check_interval_ms";
+
+    private double getDouble(String attr, double defaultValue) {
+        Number value = getAttribute(attr, Number.class);
+        return value != null ? value.doubleValue() : defaultValue;
+    }
+
+    /**
+     * Runs an expunge-deletes when this percentage of documents are deleted;
+     * value not greater than 0 disables this trigger.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public double deletesPctThreshold() {
+        return getDouble(FIELD_DELETES_PCT_THRESHOLD, DEFAULT_DELETES_PCT_THRESHOLD);
+    }
+
+    public MaintenancePolicy deletesPctThreshold(double value) {
+        setAttribute(FIELD_DELETES_PCT_THRESHOLD, value);
+        return this;
+    }
+
+    /**
+     * Off-peak window, format {@code HH:mm-HH:mm}.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public String window() {
+        return getAttribute(FIELD_WINDOW, String.class);
+    }
+
+    public MaintenancePolicy window(String value) {
+        setAttribute(FIELD_WINDOW, value != null ? value.trim() : null);
+        return this;
+    }
+
+    /**
+     * Number of segments to force-merge down to in the off-peak window; value
+     * less than 1 means an expunge-deletes instead.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public int maxSegments() {
+        Number value = getAttribute(FIELD_MAX_SEGMENTS, Number.class);
+        return value != null ? value.intValue() : DEFAULT_MAX_SEGMENTS;
+    }
+
+    public MaintenancePolicy maxSegments(int value) {
+        setAttribute(FIELD_MAX_SEGMENTS, value);
+        return this;
+    }
+
+    /**
+     * Max merge IO rate while a maintenance job is running; value not greater
+     * than 0 means unlimited.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public double ioMBPerSec() {
+        return getDouble(FIELD_IO_MB_PER_SEC, DEFAULT_IO_MB_PER_SEC);
+    }
+
+    public MaintenancePolicy ioMBPerSec(double value) {
+        setAttribute(FIELD_IO_MB_PER_SEC, value);
+        return this;
+    }
+
+    /**
+     * Interval between two checks of the maintenance triggers.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public long checkIntervalMs() {
+        Number value = getAttribute(FIELD_CHECK_INTERVAL_MS, Number.class);
+        return value != null && value.longValue() > 0 ? value.longValue()
+                : DEFAULT_CHECK_INTERVAL_MS;
+    }
+
+    public MaintenancePolicy checkIntervalMs(long value) {
+        setAttribute(FIELD_CHECK_INTERVAL_MS, value);
+        return this;
+    }
+
+    /**
+     * Parses "HH:mm" to minutes of day.
+     */
+    private static int parseMinuteOfDay(String value) {
+        String[] tokens = value.trim().split(":");
+        int hour = Integer.parseInt(tokens[0].trim());
+        int minute = tokens.length > 1 ? Integer.parseInt(tokens[1].trim()) : 0;
+        if (hour < 0 || hour > 24 || minute < 0 || minute > 59) {
+            throw new IllegalArgumentException("Invalid time [" + value + "]");
+        }
+        return hour * 60 + minute;
+    }
+
+    /**
+     * Gets start of the off-peak window occurrence a timestamp falls in.
+     *
+     * @param timestamp
+     * @return start of the window occurrence (timestamp), or {@code -1} if
+     *         there is no (valid) window or the timestamp is outside the
+     *         window
+     */
+    public long windowStart(long timestamp) {
+        String window = window();
+        String[] tokens = window != null ? window.split("-") : null;
+        if (tokens == null || tokens.length != 2) {
+            return -1;
+        }
+        int start, end;
+        try {
+            start = parseMinuteOfDay(tokens[0]);
+            end = parseMinuteOfDay(tokens[1]);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(timestamp);
+        int now = cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE);
+        boolean inWindow = start <= end ? now >= start && now < end : now >= start || now < end;
+        if (!inWindow) {
+            return -1;
+        }
+        if (now < start) {
+            // window started yesterday
+            cal.add(Calendar.DAY_OF_MONTH, -1);
+        }
+        cal.set(Calendar.HOUR_OF_DAY, start / 60);
+        cal.set(Calendar.MINUTE, start % 60);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
+}
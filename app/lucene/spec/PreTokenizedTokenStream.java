@@ -0,0 +1,236 @@
+package lucene.spec;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+
+/**
+ * A {@link TokenStream} replaying tokens supplied with a document, so that a
+ * {@code string} field is indexed without running the index's analyzer.
+ *
+ * <p>
+ * A pre-tokenized field value is a map:
+ * </p>
+ *
+ * <pre>
+ * {
+ *   "value" (optional): "stored value, defaults to the terms joined by spaces",
+ *   "tokens": [
+ *     "term",
+ *     {"term": "term", "position_increment" (optional): 1,
+ *      "start_offset" (optional): 0, "end_offset" (optional): 4},
+ *     ...
+ *   ]
+ * }
+ * </pre>
+ *
+ * <p>
+ * Terms are indexed as they are (no lower-casing or any other
+ * normalization). Position increments default to {@code 1} ({@code 0} puts a
+ * token at the same position as the previous one, e.g. a synonym), the first
+ * token's increment must be at least {@code 1}. Offsets default to the
+ * token's offsets in the terms joined by spaces; start offsets must not go
+ * backwards.
+ * </p>
+ *
+ * <p>
+ * Not thread-safe; an instance can be reused for another document (see
+ * {@link #setTokens(Tokens)}) once the previous one has been indexed.
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public final class PreTokenizedTokenStream extends TokenStream {
+
+    public final static String FIELD_VALUE = "value";
+    public final static String FIELD_TOKENS = "tokens";
+    public final static String FIELD_TERM = "term";
+    public final static String FIELD_POSITION_INCREMENT = "position_increment";
+    public final static String FIELD_START_OFFSET = "start_offset";
+    public final static String FIELD_END_OFFSET = "end_offset";
+
+    /**
+     * Parsed tokens of a pre-tokenized field value.
+     */
+    public final static class Tokens {
+        private final String value;
+        private final String[] terms;
+        private final int[] positionIncrements, startOffsets, endOffsets;
+        private final int finalOffset;
+
+        private Tokens(String value, String[] terms, int[] positionIncrements,
+                int[] startOffsets, int[] endOffsets, int finalOffset) {
+            this.value = value;
+            this.terms = terms;
+            this.positionIncrements = positionIncrements;
+            this.startOffsets = startOffsets;
+            this.endOffsets = endOffsets;
+            this.finalOffset = finalOffset;
+        }
+
+        public int size() {
+            return terms.length;
+        }
+
+        /**
+         * Value to store: the supplied value, or the terms joined by spaces.
+         *
+         * @return
+         */
+        public String value() {
+            if (value != null) {
+                return value;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < terms.length; i++) {
+                if (i > 0) {
+                    sb.append(' ');
+                }
+                sb.append(terms[i]);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Checks if a field value is a pre-tokenized value (a map with a
+     * {@code tokens} entry).
+     *
+     * @param value
+     * @return
+     */
+    public static boolean isPreTokenized(Object value) {
+        return value instanceof Map && ((Map<?, ?>) value).containsKey(FIELD_TOKENS);
+    }
+
+    /**
+     * Parses a pre-tokenized field value.
+     *
+     * @param value
+     * @return {@code null} if the value is not a valid pre-tokenized value
+     */
+    public static Tokens parse(Object value) {
+        if (!isPreTokenized(value)) {
+            return null;
+        }
+        Map<?, ?> data = (Map<?, ?>) value;
+        Object storedValue = data.get(FIELD_VALUE);
+        Object tokenList = data.get(FIELD_TOKENS);
+        if ((storedValue != null && !(storedValue instanceof String))
+                || !(tokenList instanceof List)) {
+            return null;
+        }
+        List<?> tokens = (List<?>) tokenList;
+        int numTokens = tokens.size();
+        String[] terms = new String[numTokens];
+        int[] positionIncrements = new int[numTokens];
+        int[] startOffsets = new int[numTokens];
+        int[] endOffsets = new int[numTokens];
+        int lastStartOffset = 0, lastEndOffset = 0;
+        for (int i = 0; i < numTokens; i++) {
+            Object token = tokens.get(i);
+            Object term, positionIncrement = null, startOffset = null, endOffset = null;
+            if (token instanceof Map) {
+                Map<?, ?> tokenData = (Map<?, ?>) token;
+                term = tokenData.get(FIELD_TERM);
+                positionIncrement = tokenData.get(FIELD_POSITION_INCREMENT);
+                startOffset = tokenData.get(FIELD_START_OFFSET);
+                endOffset = tokenData.get(FIELD_END_OFFSET);
+            } else {
+                term = token;
+            }
+            if (!(term instanceof String) || ((String) term).length() == 0) {
+                return null;
+            }
+            terms[i] = (String) term;
+
+            if (positionIncrement != null && !(positionIncrement instanceof Number)) {
+                return null;
+            }
+            int posInc = positionIncrement != null ? ((Number) positionIncrement).intValue() : 1;
+            if (posInc < (i == 0 ? 1 : 0)) {
+                return null;
+            }
+            positionIncrements[i] = posInc;
+
+            if ((startOffset != null && !(startOffset instanceof Number))
+                    || (endOffset != null && !(endOffset instanceof Number))) {
+                return null;
+            }
+            int start = startOffset != null ? ((Number) startOffset).intValue()
+                    : (i == 0 ? 0 : lastEndOffset + 1);
+            int end = endOffset != null ? ((Number) endOffset).intValue() : start
+                    + terms[i].length();
+            if (start < lastStartOffset || end < start) {
+                return null;
+            }
+            startOffsets[i] = lastStartOffset = start;
+            endOffsets[i] = lastEndOffset = end;
+        }
+        int finalOffset = storedValue != null ? Math.max(((String) storedValue).length(),
+                lastEndOffset) : lastEndOffset;
+        return new Tokens((String) storedValue, terms, positionIncrements, startOffsets,
+                endOffsets, finalOffset);
+    }
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final PositionIncrementAttribute posIncAtt =
+            addAttribute(PositionIncrementAttribute.class);
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+    private Tokens tokens;
+    private int index;
+
+    public PreTokenizedTokenStream(Tokens tokens) {
+        setTokens(tokens);
+    }
+
+    /**
+     * Sets tokens to replay (for the next document).
+     *
+     * @param tokens
+     */
+    public void setTokens(Tokens tokens) {
+        this.tokens = tokens;
+        this.index = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean incrementToken() {
+        if (index >= tokens.size()) {
+            return false;
+        }
+        clearAttributes();
+        termAtt.setEmpty().append(tokens.terms[index]);
+        posIncAtt.setPositionIncrement(tokens.positionIncrements[index]);
+        offsetAtt.setOffset(tokens.startOffsets[index], tokens.endOffsets[index]);
+        index++;
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void end() throws IOException {
+        super.end();
+        offsetAtt.setOffset(tokens.finalOffset, tokens.finalOffset);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        index = 0;
+    }
+}
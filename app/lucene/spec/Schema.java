@@ -0,0 +1,172 @@
+package lucene.spec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, compiled view of an {@link IndexSpec}, used on the indexing and
+ * search paths.
+ *
+ * <p>
+ * A schema is never modified: adding a field creates a new schema with a
+ * higher version, which the index swaps in atomically. The version is
+ * persisted with the spec so that unsaved changes can be detected.
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class Schema {
+
+    /**
+     * Compiles a spec.
+     *
+     * @param spec
+     * @return
+     */
+    public static Schema compile(IndexSpec spec) {
+        return new Schema(spec.schemaVersion(), spec.defaultSearchField(), spec.commitPolicy(),
+                spec.maintenance(), new HashMap<String, FieldSpec>(spec.fields()));
+    }
+
+    private final long version;
+    private final String defaultSearchField;
+    private final CommitPolicy commitPolicy;
+    private final MaintenancePolicy maintenancePolicy;
+    private final Map<String, FieldSpec> fields;
+    private final Map<String, CompiledField> compiledFields;
+    private final String singleIdField;
+    private final List<CompiledField> docValuesFields;
+
+    private Schema(long version, String defaultSearchField, CommitPolicy commitPolicy,
+            MaintenancePolicy maintenancePolicy, Map<String, FieldSpec> fields) {
+        this.version = version;
+        this.defaultSearchField = defaultSearchField;
+        this.commitPolicy = commitPolicy;
+        this.maintenancePolicy = maintenancePolicy;
+        this.fields = Collections.unmodifiableMap(fields);
+
+        Map<String, CompiledField> compiledFields = new HashMap<String, CompiledField>();
+        String idField = null;
+        int numIdFields = 0;
+        for (Map.Entry<String, FieldSpec> entry : fields.entrySet()) {
+            CompiledField field = CompiledField.compile(entry.getKey(), entry.getValue());
+            compiledFields.put(field.name(), field);
+            if (field.type() == FieldSpec.Type.ID) {
+                idField = field.name();
+                numIdFields++;
+            }
+        }
+        List<CompiledField> docValuesFields = new ArrayList<CompiledField>();
+        for (CompiledField field : compiledFields.values()) {
+            if (field.hasDocValues()) {
+                docValuesFields.add(field);
+            }
+        }
+        this.compiledFields = compiledFields;
+        this.docValuesFields = Collections.unmodifiableList(docValuesFields);
+        this.singleIdField = numIdFields == 1 ? idField : null;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public String defaultSearchField() {
+        return defaultSearchField;
+    }
+
+    public CommitPolicy commitPolicy() {
+        return commitPolicy;
+    }
+
+    public MaintenancePolicy maintenancePolicy() {
+        return maintenancePolicy;
+    }
+
+    public Map<String, FieldSpec> fields() {
+        return fields;
+    }
+
+    /**
+     * Gets a field by name.
+     *
+     * @param name
+     * @return
+     */
+    public FieldSpec field(String name) {
+        FieldSpec field = fields.get(name);
+        return field != null ? field : fields.get(name.trim().toLowerCase());
+    }
+
+    /**
+     * Gets a compiled field by name.
+     *
+     * <p>
+     * Names are looked up as-is first, so that already normalized names (the
+     * common case) cost a single hash lookup and no allocation.
+     * </p>
+     *
+     * @param name
+     * @return
+     */
+    public CompiledField compiledField(String name) {
+        CompiledField field = compiledFields.get(name);
+        return field != null ? field : compiledFields.get(name.trim().toLowerCase());
+    }
+
+    /**
+     * Name of the single id field.
+     *
+     * @return the id field's name, or {@code null} if there is no id field or
+     *         the id is composite (multi-field)
+     */
+    public String singleIdField() {
+        return singleIdField;
+    }
+
+    /**
+     * Doc-values-only fields, which values are read from doc values rather
+     * than stored fields.
+     *
+     * @return
+     */
+    public List<CompiledField> docValuesFields() {
+        return docValuesFields;
+    }
+
+    /**
+     * Creates a new schema with an added field and a higher version.
+     *
+     * @param name
+     * @param field
+     * @return
+     */
+    public Schema withField(String name, FieldSpec field) {
+        Map<String, FieldSpec> newFields = new HashMap<String, FieldSpec>(fields);
+        newFields.put(name.trim().toLowerCase(), field);
+        return new Schema(version + 1, defaultSearchField, commitPolicy, maintenancePolicy,
+                newFields);
+    }
+
+    /**
+     * Creates a new schema compiled from a spec, keeping fields of this
+     * schema that the spec does not have, with a higher version.
+     *
+     * @param spec
+     * @return
+     */
+    public Schema recompile(IndexSpec spec) {
+        Map<String, FieldSpec> newFields = new HashMap<String, FieldSpec>(spec.fields());
+        for (Map.Entry<String, FieldSpec> entry : fields.entrySet()) {
+            if (!newFields.containsKey(entry.getKey())) {
+                newFields.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return new Schema(Math.max(version, spec.schemaVersion()) + 1, spec.defaultSearchField(),
+                spec.commitPolicy(), spec.maintenance(), newFields);
+    }
+}
@@ -0,0 +1,339 @@
+package lucene.spec;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LiveIndexWriterConfig;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.MergeScheduler;
+import org.apache.lucene.index.TieredMergePolicy;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.github.ddth.commons.utils.DPathUtils;
+import com.github.ddth.dao.BaseBo;
+
+/**
+ * Index writer tuning of an index.
+ *
+ * <p>
+ * A tuning profile starts from a named preset ({@code profile}):
+ * </p>
+ * <ul>
+ * <li>{@code default}: Lucene's defaults, compound files on.</li>
+ * <li>{@code write_heavy}: large RAM buffer, more segments per tier (fewer,
+ * bigger merges), no compound files.</li>
+ * <li>{@code read_mostly}: fewer segments per tier (more merging, faster
+ * searches), compound files on.</li>
+ * </ul>
+ * <p>
+ * and each setting of the preset can be overridden: {@code ram_buffer_mb},
+ * {@code max_buffered_docs}, {@code max_merged_segment_mb},
+ * {@code floor_segment_mb}, {@code segments_per_tier},
+ * {@code max_merge_at_once}, {@code merge_threads} and
+ * {@code compound_file}.
+ * </p>
+ * <p>
+ * All settings are applied to a running index writer (see
+ * {@link #applyTo(LiveIndexWriterConfig)}), no reopen needed.
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class TuningProfile extends BaseBo {
+
+    /**
+     * Named presets.
+     */
+    public static enum Preset {
+        DEFAULT(IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB, 5 * 1024, 10, 10, true),
+
+        WRITE_HEAVY(128, 5 * 1024, 20, 20, false),
+
+        READ_MOSTLY(IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB, 5 * 1024, 5, 5, true);
+
+        private final double ramBufferMB, maxMergedSegmentMB;
+        private final int segmentsPerTier, maxMergeAtOnce;
+        private final boolean compoundFile;
+
+        private Preset(double ramBufferMB, double maxMergedSegmentMB, int segmentsPerTier,
+                int maxMergeAtOnce, boolean compoundFile) {
+            this.ramBufferMB = ramBufferMB;
+            this.maxMergedSegmentMB = maxMergedSegmentMB;
+            this.segmentsPerTier = segmentsPerTier;
+            this.maxMergeAtOnce = maxMergeAtOnce;
+            this.compoundFile = compoundFile;
+        }
+
+        public static Preset fromName(String name) {
+            for (Preset preset : values()) {
+                if (preset.name().equalsIgnoreCase(name)) {
+                    return preset;
+                }
+            }
+            return null;
+        }
+    }
+
+    public final static double DEFAULT_FLOOR_SEGMENT_MB = 2;
+
+    /**
+     * {@link TieredMergePolicy}'s default ratio of the index size under which
+     * merged segments are written as compound files.
+     */
+    public final static double DEFAULT_NO_CFS_RATIO = TieredMergePolicy.DEFAULT_NO_CFS_RATIO;
+
+    public static TuningProfile newInstance() {
+        return new TuningProfile();
+    }
+
+    public static TuningProfile newInstance(Map<String, Object> tuningData) {
+        TuningProfile tuning = newInstance();
+        if (tuningData != null) {
+            String profile = DPathUtils.getValue(tuningData, FIELD_PROFILE, String.class);
+            if (!StringUtils.isBlank(profile)) {
+                tuning.profile(profile);
+            }
+            for (String field : NUMBER_FIELDS) {
+                Number value = DPathUtils.getValue(tuningData, field, Number.class);
+                if (value != null) {
+                    tuning.setAttribute(field, value);
+                }
+            }
+            Boolean compoundFile = DPathUtils.getValue(tuningData, FIELD_COMPOUND_FILE,
+                    Boolean.class);
+            if (compoundFile != null) {
+                tuning.compoundFile(compoundFile.booleanValue());
+            }
+        }
+        return tuning;
+    }
+
+    private final static String FIELD_PROFILE = "profile";
+    private final static String FIELD_RAM_BUFFER_MB = "ram_buffer_mb";
+    private final static String FIELD_MAX_BUFFERED_DOCS = "max_buffered_docs";
+    private final static String FIELD_MAX_MERGED_SEGMENT_MB = "max_merged_segment_mb";
+    private final static String FIELD_FLOOR_SEGMENT_MB = "floor_segment_mb";
+    private final static String FIELD_SEGMENTS_PER_TIER = "segments_per_tier";
+    private final static String FIELD_MAX_MERGE_AT_ONCE = "max_merge_at_once";
+    private final static String FIELD_MERGE_THREADS = "merge_threads";
+    private final static String FIELD_COMPOUND_FILE = "compound_file";
+
+    private final static String[] NUMBER_FIELDS = { FIELD_RAM_BUFFER_MB,
+            FIELD_MAX_BUFFERED_DOCS, FIELD_MAX_MERGED_SEGMENT_MB, FIELD_FLOOR_SEGMENT_MB,
+            FIELD_SEGMENTS_PER_TIER, FIELD_MAX_MERGE_AT_ONCE, FIELD_MERGE_THREADS };
+
+    private double getDouble(String attr, double defaultValue) {
+        Number value = getAttribute(attr, Number.class);
+        return value != null && value.doubleValue() > 0 ? value.doubleValue() : defaultValue;
+    }
+
+    private int getInt(String attr, int defaultValue) {
+        Number value = getAttribute(attr, Number.class);
+        return value != null ? value.intValue() : defaultValue;
+    }
+
+    /**
+     * Name of the preset this profile is based on.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public Preset preset() {
+        Preset preset = Preset.fromName(getAttribute(FIELD_PROFILE, String.class));
+        return preset != null ? preset : Preset.DEFAULT;
+    }
+
+    public TuningProfile profile(String name) {
+        setAttribute(FIELD_PROFILE, name != null ? name.trim().toLowerCase() : null);
+        return this;
+    }
+
+    /**
+     * Size of the index writer's RAM buffer; a new segment is flushed when
+     * it is full.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public double ramBufferMB() {
+        return getDouble(FIELD_RAM_BUFFER_MB, preset().ramBufferMB);
+    }
+
+    public TuningProfile ramBufferMB(double value) {
+        setAttribute(FIELD_RAM_BUFFER_MB, value);
+        return this;
+    }
+
+    /**
+     * Flushes a new segment when this number of documents are buffered;
+     * value less than 2 disables this threshold (default).
+     *
+     * @return
+     */
+    @JsonIgnore
+    public int maxBufferedDocs() {
+        int value = getInt(FIELD_MAX_BUFFERED_DOCS, IndexWriterConfig.DISABLE_AUTO_FLUSH);
+        return value >= 2 ? value : IndexWriterConfig.DISABLE_AUTO_FLUSH;
+    }
+
+    public TuningProfile maxBufferedDocs(int value) {
+        setAttribute(FIELD_MAX_BUFFERED_DOCS, value);
+        return this;
+    }
+
+    /**
+     * Max size of a segment produced by normal merges.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public double maxMergedSegmentMB() {
+        return getDouble(FIELD_MAX_MERGED_SEGMENT_MB, preset().maxMergedSegmentMB);
+    }
+
+    public TuningProfile maxMergedSegmentMB(double value) {
+        setAttribute(FIELD_MAX_MERGED_SEGMENT_MB, value);
+        return this;
+    }
+
+    /**
+     * Segments smaller than this size are considered this size when
+     * selecting merges.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public double floorSegmentMB() {
+        return getDouble(FIELD_FLOOR_SEGMENT_MB, DEFAULT_FLOOR_SEGMENT_MB);
+    }
+
+    public TuningProfile floorSegmentMB(double value) {
+        setAttribute(FIELD_FLOOR_SEGMENT_MB, value);
+        return this;
+    }
+
+    /**
+     * Number of segments allowed per tier; lower values mean more merging
+     * and fewer segments to search.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public int segmentsPerTier() {
+        int value = getInt(FIELD_SEGMENTS_PER_TIER, preset().segmentsPerTier);
+        return value >= 2 ? value : preset().segmentsPerTier;
+    }
+
+    public TuningProfile segmentsPerTier(int value) {
+        setAttribute(FIELD_SEGMENTS_PER_TIER, value);
+        return this;
+    }
+
+    /**
+     * Max number of segments merged at once by normal merges.
+     *
+     * @return
+     */
+    @JsonIgnore
+    public int maxMergeAtOnce() {
+        int value = getInt(FIELD_MAX_MERGE_AT_ONCE, preset().maxMergeAtOnce);
+        return value >= 2 ? value : preset().maxMergeAtOnce;
+    }
+
+    public TuningProfile maxMergeAtOnce(int value) {
+        setAttribute(FIELD_MAX_MERGE_AT_ONCE, value);
+        return this;
+    }
+
+    /**
+     * Max number of concurrent merge threads; value less than 1 lets Lucene
+     * choose based on the number of CPU cores and disk type (default).
+     *
+     * @return
+     */
+    @JsonIgnore
+    public int mergeThreads() {
+        int value = getInt(FIELD_MERGE_THREADS, 0);
+        return value > 0 ? value : ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS;
+    }
+
+    public TuningProfile mergeThreads(int value) {
+        setAttribute(FIELD_MERGE_THREADS, value);
+        return this;
+    }
+
+    /**
+     * Writes small segments as compound files (fewer open files, slightly
+     * slower indexing).
+     *
+     * @return
+     */
+    @JsonIgnore
+    public boolean isCompoundFile() {
+        Boolean result = getAttribute(FIELD_COMPOUND_FILE, Boolean.class);
+        return result != null ? result.booleanValue() : preset().compoundFile;
+    }
+
+    public TuningProfile compoundFile(boolean value) {
+        setAttribute(FIELD_COMPOUND_FILE, value);
+        return this;
+    }
+
+    /**
+     * Applies this profile to an index writer's config. Works with both a
+     * new {@link IndexWriterConfig} and the live config of an open index
+     * writer.
+     *
+     * @param config
+     */
+    public void applyTo(LiveIndexWriterConfig config) {
+        // RAM buffer first: both flush triggers can not be disabled at once
+        config.setRAMBufferSizeMB(ramBufferMB());
+        config.setMaxBufferedDocs(maxBufferedDocs());
+        config.setUseCompoundFile(isCompoundFile());
+
+        // the index writer keeps the merge policy/scheduler instances it was
+        // opened with, they are re-configured in place
+        MergePolicy mp = config.getMergePolicy();
+        if (mp instanceof TieredMergePolicy) {
+            TieredMergePolicy tmp = (TieredMergePolicy) mp;
+            tmp.setMaxMergedSegmentMB(maxMergedSegmentMB());
+            tmp.setFloorSegmentMB(floorSegmentMB());
+            tmp.setSegmentsPerTier(segmentsPerTier());
+            tmp.setMaxMergeAtOnce(maxMergeAtOnce());
+            tmp.setNoCFSRatio(isCompoundFile() ? DEFAULT_NO_CFS_RATIO : 0.0);
+        }
+        MergeScheduler ms = config.getMergeScheduler();
+        if (ms instanceof ConcurrentMergeScheduler) {
+            int numThreads = mergeThreads();
+            // Lucene's rule of thumb: allow a few more pending merges than
+            // threads before stalling indexing
+            int maxMerges = numThreads > 0 ? numThreads + 5
+                    : ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS;
+            ((ConcurrentMergeScheduler) ms).setMaxMergesAndThreads(maxMerges, numThreads);
+        }
+    }
+
+    /**
+     * Effective settings of this profile (preset values included).
+     *
+     * @return
+     */
+    public Map<String, Object> toEffectiveMap() {
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put(FIELD_PROFILE, preset().name().toLowerCase());
+        result.put(FIELD_RAM_BUFFER_MB, ramBufferMB());
+        result.put(FIELD_MAX_BUFFERED_DOCS, maxBufferedDocs());
+        result.put(FIELD_MAX_MERGED_SEGMENT_MB, maxMergedSegmentMB());
+        result.put(FIELD_FLOOR_SEGMENT_MB, floorSegmentMB());
+        result.put(FIELD_SEGMENTS_PER_TIER, segmentsPerTier());
+        result.put(FIELD_MAX_MERGE_AT_ONCE, maxMergeAtOnce());
+        result.put(FIELD_MERGE_THREADS, mergeThreads());
+        result.put(FIELD_COMPOUND_FILE, isCompoundFile());
+        return result;
+    }
+}
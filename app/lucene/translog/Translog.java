@@ -0,0 +1,451 @@
+package lucene.translog;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import lucene.action.BaseAction;
+import play.Logger;
+import util.Constants;
+
+import com.github.ddth.commons.utils.SerializationUtils;
+
+/**
+ * Append-only, segmented write-ahead log of an index's actions.
+ *
+ * <p>
+ * Each action is assigned a sequence number when appended. Entries are
+ * written to segment files {@code translog-<first-seq>.tlog} under the
+ * translog's directory; a new segment is started when the current one
+ * exceeds the configured size. Segments whose entries have all been
+ * committed to the index are removed by {@link #trim(long)}.
+ * </p>
+ *
+ * <p>
+ * Appends only write entries, fsyncs happen outside the translog's lock (see
+ * {@link #syncUpTo(long)}): one fsync covers all entries written before it,
+ * so concurrent appends share fsyncs (group commit).
+ * </p>
+ *
+ * <p>
+ * Entry format:
+ * {@code [int payload-length][long seq][byte type][payload][int crc32]}.
+ * </p>
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class Translog {
+
+    /**
+     * When appended entries are fsync'ed to disk.
+     */
+    public enum Durability {
+        /**
+         * Fsync before each append returns.
+         */
+        REQUEST,
+        /**
+         * Fsync periodically, at a configured interval.
+         */
+        INTERVAL,
+        /**
+         * Never fsync explicitly, rely on the OS to flush its cache.
+         */
+        ASYNC;
+    }
+
+    private final static String SEGMENT_PREFIX = "translog-";
+    private final static String SEGMENT_SUFFIX = ".tlog";
+    private final static int ENTRY_OVERHEAD = 4 + 8 + 1 + 4;
+
+    private final static byte TYPE_ACTION = 1;
+    private final static byte TYPE_CANCEL = 2;
+
+    private final static String FIELD_CLASS = "class";
+    private final static String FIELD_DATA = "data";
+
+    private File storageDir;
+    private Durability durability = Durability.REQUEST;
+    private long segmentSize = 64 * 1024 * 1024;
+
+    private long lastSeq = 0;
+    private File currentSegmentFile;
+    private FileChannel currentSegment;
+    private long currentSegmentLastSeq = -1;
+    /* number of entries written so far, and the number covered by an fsync */
+    private long numWritten = 0;
+    private volatile long numSynced = 0;
+    private final Object syncLock = new Object();
+
+    public Translog(File storageDir) {
+        this.storageDir = storageDir;
+    }
+
+    public File getStorageDir() {
+        return storageDir;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public Translog setDurability(Durability durability) {
+        this.durability = durability != null ? durability : Durability.REQUEST;
+        return this;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    public Translog setSegmentSize(long segmentSize) {
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    /**
+     * Initialization method: scans existing segments to find the last used
+     * sequence number.
+     *
+     * @return
+     * @throws IOException
+     */
+    synchronized public Translog init() throws IOException {
+        storageDir.mkdirs();
+        for (File segment : listSegments()) {
+            long seq = readSegment(segment, 0, null);
+            if (seq > lastSeq) {
+                lastSeq = seq;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Destroy method.
+     */
+    synchronized public void destroy() {
+        try {
+            closeCurrentSegment();
+        } catch (Exception e) {
+            Logger.warn(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Gets the last assigned sequence number.
+     *
+     * @return
+     */
+    synchronized public long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Makes sure sequence numbers assigned from now on are greater than the
+     * specified one (e.g. the sequence number recorded in the index's last
+     * commit, in case all segments have been trimmed).
+     *
+     * @param seq
+     */
+    synchronized public void ensureSeqAfter(long seq) {
+        if (lastSeq < seq) {
+            lastSeq = seq;
+        }
+    }
+
+    /*----------------------------------------------------------------------*/
+
+    private File[] listSegments() {
+        File[] segments = storageDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                return file.isFile() && name.startsWith(SEGMENT_PREFIX)
+                        && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (segments == null) {
+            return new File[0];
+        }
+        Arrays.sort(segments, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(segmentFirstSeq(a), segmentFirstSeq(b));
+            }
+        });
+        return segments;
+    }
+
+    private static long segmentFirstSeq(File segment) {
+        String name = segment.getName();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length()
+                    - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void openNewSegment(long firstSeq) throws IOException {
+        File file = new File(storageDir, String.format("%s%020d%s", SEGMENT_PREFIX, firstSeq,
+                SEGMENT_SUFFIX));
+        currentSegment = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        currentSegmentFile = file;
+        currentSegmentLastSeq = -1;
+    }
+
+    private void closeCurrentSegment() throws IOException {
+        if (currentSegment != null) {
+            try {
+                if (durability != Durability.ASYNC) {
+                    currentSegment.force(false);
+                }
+            } finally {
+                currentSegment.close();
+                currentSegment = null;
+                currentSegmentFile = null;
+            }
+        }
+    }
+
+    private void writeEntry(long seq, byte type, byte[] payload) throws IOException {
+        if (currentSegment == null) {
+            openNewSegment(seq);
+        } else if (type == TYPE_ACTION && currentSegment.size() >= segmentSize) {
+            closeCurrentSegment();
+            openNewSegment(seq);
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer buff = ByteBuffer.allocate(ENTRY_OVERHEAD + payload.length);
+        buff.putInt(payload.length).putLong(seq).put(type).put(payload);
+        crc.update(buff.array(), 4, 8 + 1 + payload.length);
+        buff.putInt((int) crc.getValue());
+        buff.flip();
+        while (buff.hasRemaining()) {
+            currentSegment.write(buff);
+        }
+        currentSegmentLastSeq = seq;
+    }
+
+    /**
+     * Appends an action to the log, without waiting for it to be fsync'ed: the
+     * caller must call {@link #syncUpTo(long)} with the returned value, once
+     * out of any lock, before acknowledging the action.
+     *
+     * @param action
+     * @return a ticket for {@link #syncUpTo(long)}; the sequence number
+     *         assigned to the action is set to the action
+     *         ({@link BaseAction#seq(long)})
+     * @throws IOException
+     */
+    synchronized public long append(BaseAction action) throws IOException {
+        Map<String, Object> entry = new LinkedHashMap<String, Object>();
+        entry.put(FIELD_CLASS, action.getClass().getName());
+        entry.put(FIELD_DATA, action.toMap());
+        byte[] payload = SerializationUtils.toJsonString(entry).getBytes(Constants.UTF8);
+        long seq = lastSeq + 1;
+        writeEntry(seq, TYPE_ACTION, payload);
+        lastSeq = seq;
+        action.seq(seq);
+        return ++numWritten;
+    }
+
+    /**
+     * Marks a previously appended action as cancelled (e.g. it could not be
+     * put to the action queue), so that it will not be replayed.
+     *
+     * @param seq
+     * @return a ticket for {@link #syncUpTo(long)}
+     * @throws IOException
+     */
+    synchronized public long cancel(long seq) throws IOException {
+        writeEntry(seq, TYPE_CANCEL, Constants.EMPTY);
+        return ++numWritten;
+    }
+
+    /**
+     * Makes sure an appended entry is on disk, according to the translog's
+     * durability: with {@link Durability#REQUEST}, fsyncs unless an fsync that
+     * started after the entry was written has already covered it. Called
+     * outside of any lock; concurrent callers wait for one fsync instead of
+     * issuing one each.
+     *
+     * @param ticket
+     *            returned by {@link #append(BaseAction)} or
+     *            {@link #cancel(long)}
+     * @throws IOException
+     */
+    public void syncUpTo(long ticket) throws IOException {
+        if (durability != Durability.REQUEST || numSynced >= ticket) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (numSynced < ticket) {
+                // covers this entry and all entries written while waiting
+                forceWritten();
+            }
+        }
+    }
+
+    /**
+     * Fsyncs the current segment to disk.
+     *
+     * @throws IOException
+     */
+    public void sync() throws IOException {
+        synchronized (syncLock) {
+            forceWritten();
+        }
+    }
+
+    /**
+     * Fsyncs entries written so far, called with {@link #syncLock} held.
+     */
+    private void forceWritten() throws IOException {
+        FileChannel channel;
+        long upTo;
+        synchronized (this) {
+            channel = currentSegment;
+            upTo = numWritten;
+        }
+        if (channel != null) {
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // segment has just been rolled, and synced when closed
+            }
+        }
+        numSynced = upTo;
+    }
+
+    /**
+     * Removes segments whose entries have all been committed to the index.
+     *
+     * @param committedSeq
+     *            all entries with sequence number up to (and including) this
+     *            value have been committed
+     * @throws IOException
+     */
+    synchronized public void trim(long committedSeq) throws IOException {
+        if (currentSegment != null && currentSegmentLastSeq >= 0
+                && currentSegmentLastSeq <= committedSeq) {
+            // everything in the current segment has been committed, roll over
+            closeCurrentSegment();
+        }
+        File[] segments = listSegments();
+        for (int i = 0; i < segments.length; i++) {
+            File segment = segments[i];
+            if (segment.equals(currentSegmentFile)) {
+                break;
+            }
+            long maxSeqInSegment = i + 1 < segments.length ? segmentFirstSeq(segments[i + 1]) - 1
+                    : lastSeq;
+            if (maxSeqInSegment <= committedSeq) {
+                if (!segment.delete()) {
+                    Logger.warn("Cannot delete translog segment [" + segment + "]");
+                }
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reads actions that were appended after a sequence number, in order.
+     * Cancelled actions are skipped.
+     *
+     * @param afterSeq
+     * @return map of {@code sequence number -> action}
+     * @throws IOException
+     */
+    synchronized public Map<Long, BaseAction> readAfter(long afterSeq) throws IOException {
+        Map<Long, BaseAction> result = new LinkedHashMap<Long, BaseAction>();
+        for (File segment : listSegments()) {
+            readSegment(segment, afterSeq, result);
+        }
+        return result;
+    }
+
+    /**
+     * Reads a segment file, stops at the first corrupted/partial entry.
+     *
+     * @param segment
+     * @param afterSeq
+     * @param result
+     *            if not {@code null}, actions with seq greater than
+     *            {@code afterSeq} are put into this map
+     * @return the last seq found in the segment
+     * @throws IOException
+     */
+    private long readSegment(File segment, long afterSeq, Map<Long, BaseAction> result)
+            throws IOException {
+        long maxSeq = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "r")) {
+            long fileLength = raf.length();
+            while (raf.getFilePointer() + ENTRY_OVERHEAD <= fileLength) {
+                int length = raf.readInt();
+                if (length < 0 || raf.getFilePointer() + length + 8 + 1 + 4 > fileLength) {
+                    Logger.warn("Truncated entry in translog segment [" + segment + "]");
+                    break;
+                }
+                byte[] data = new byte[8 + 1 + length];
+                raf.readFully(data);
+                int checksum = raf.readInt();
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                if ((int) crc.getValue() != checksum) {
+                    Logger.warn("Corrupted entry in translog segment [" + segment + "]");
+                    break;
+                }
+                ByteBuffer buff = ByteBuffer.wrap(data);
+                long seq = buff.getLong();
+                byte type = buff.get();
+                maxSeq = Math.max(maxSeq, seq);
+                if (result == null || seq <= afterSeq) {
+                    continue;
+                }
+                if (type == TYPE_CANCEL) {
+                    result.remove(seq);
+                } else if (type == TYPE_ACTION) {
+                    BaseAction action = deserialize(new String(data, 9, length, Constants.UTF8));
+                    if (action != null) {
+                        result.put(seq, action);
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            Logger.warn("Truncated entry in translog segment [" + segment + "]");
+        }
+        return maxSeq;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BaseAction deserialize(String json) {
+        try {
+            Map<String, Object> entry = SerializationUtils.fromJsonString(json, Map.class);
+            Class<?> clazz = Class.forName(entry.get(FIELD_CLASS).toString());
+            Map<String, Object> data = (Map<String, Object>) entry.get(FIELD_DATA);
+            BaseAction action = (BaseAction) clazz.getConstructor(String.class).newInstance(
+                    (String) null);
+            action.fromMap(data);
+            return action;
+        } catch (Exception e) {
+            Logger.warn("Cannot deserialize translog entry: " + e.getMessage(), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package lucene.translog;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import play.Logger;
+import play.Play;
+import util.IndexUtils;
+
+/**
+ * Factory that creates {@link Translog} objects, one per index, stored under
+ * a root directory on local disk.
+ *
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class TranslogFactory {
+
+    private String rootStoragePath;
+    private Translog.Durability durability = Translog.Durability.REQUEST;
+    private long syncIntervalMs = 1000;
+    private long segmentSize = 64 * 1024 * 1024;
+
+    private Map<String, Translog> translogs = new ConcurrentHashMap<String, Translog>();
+
+    public String getRootStoragePath() {
+        return rootStoragePath;
+    }
+
+    public TranslogFactory setRootStoragePath(String rootStoragePath) {
+        this.rootStoragePath = rootStoragePath;
+        return this;
+    }
+
+    public Translog.Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * When to fsync translog entries: {@code request}, {@code interval} or
+     * {@code async}.
+     *
+     * @param durability
+     * @return
+     */
+    public TranslogFactory setDurability(String durability) {
+        this.durability = Translog.Durability.valueOf(durability.trim().toUpperCase());
+        return this;
+    }
+
+    public long getSyncIntervalMs() {
+        return syncIntervalMs;
+    }
+
+    /**
+     * Fsync interval, used when durability is {@code interval}.
+     *
+     * @param syncIntervalMs
+     * @return
+     */
+    public TranslogFactory setSyncIntervalMs(long syncIntervalMs) {
+        this.syncIntervalMs = syncIntervalMs;
+        return this;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    public TranslogFactory setSegmentSize(long segmentSize) {
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    public TranslogFactory init() {
+        if (durability == Translog.Durability.INTERVAL) {
+            syncThread = new SyncThread();
+            syncThread.start();
+        }
+        return this;
+    }
+
+    public void destroy() {
+        if (syncThread != null) {
+            try {
+                syncThread.stopExecution();
+            } catch (Exception e) {
+                // EMPTY
+            } finally {
+                syncThread = null;
+            }
+        }
+    }
+
+    private SyncThread syncThread;
+
+    private final class SyncThread extends Thread {
+        private volatile boolean running = true;
+
+        public SyncThread() {
+            super("TranslogSyncThread");
+            setDaemon(true);
+        }
+
+        public void stopExecution() {
+            this.running = false;
+            interrupt();
+        }
+
+        public void run() {
+            while (running && !isInterrupted()) {
+                try {
+                    Thread.sleep(syncIntervalMs > 0 ? syncIntervalMs : 1000);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                for (Translog translog : translogs.values()) {
+                    try {
+                        translog.sync();
+                    } catch (Exception e) {
+                        Logger.warn(e.getMessage(), e);
+                    }
+                }
+            }
+        }
+    }
+
+    /*----------------------------------------------------------------------*/
+
+    private File getStorageDir() {
+        if (rootStoragePath.startsWith("/")) {
+            return new File(rootStoragePath);
+        } else {
+            File dir = Play.application().path();
+            return new File(dir, rootStoragePath);
+        }
+    }
+
+    /**
+     * Opens the translog of an index.
+     *
+     * @param indexName
+     * @return
+     * @throws IOException
+     */
+    public Translog openTranslog(String indexName) throws IOException {
+        String name = IndexUtils.normalizeName(indexName);
+        Translog translog = new Translog(new File(getStorageDir(), name));
+        translog.setDurability(durability).setSegmentSize(segmentSize).init();
+        translogs.put(name, translog);
+        return translog;
+    }
+
+    /**
+     * Lists names of indices that have translog data on disk.
+     *
+     * @return
+     */
+    public List<String> listIndices() {
+        List<String> result = new ArrayList<String>();
+        File[] dirs = getStorageDir().listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isDirectory();
+            }
+        });
+        if (dirs != null) {
+            for (File dir : dirs) {
+                String[] files = dir.list();
+                if (files != null && files.length > 0 && IndexUtils.isValidName(dir.getName())) {
+                    result.add(dir.getName());
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,59 @@
+package util;
+
+/**
+ * Thrown when an action cannot be accepted because the action queue is full;
+ * the client should retry after {@link #getRetryAfterMs()}.
+ * 
+ * @author Thanh Nguyen <btnguyen2k@gmail.com>
+ * @since 0.1.1
+ */
+public class QueueFullException extends IndexException {
+
+    private static final long serialVersionUID = 1L;
+
+    public final static int STATUS_TOO_MANY_REQUESTS = 429;
+
+    private long retryAfterMs;
+    private long numScheduled = -1;
+
+    public QueueFullException(String message, long retryAfterMs) {
+        super(STATUS_TOO_MANY_REQUESTS, message);
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    /**
+     * @param message
+     * @param retryAfterMs
+     * @param numScheduled
+     *            number of documents of the request that have been accepted
+     *            before the queue filled up
+     */
+    public QueueFullException(String message, long retryAfterMs, long numScheduled) {
+        this(message, retryAfterMs);
+        this.numScheduled = numScheduled;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    /**
+     * Number of documents of a partially accepted request that have been
+     * scheduled, {@code -1} if the request has been rejected as a whole.
+     * 
+     * @return
+     */
+    public long getNumScheduled() {
+        return numScheduled;
+    }
+
+    /**
+     * Retry-after hint in whole seconds (at least 1), as used by HTTP's
+     * {@code Retry-After} header.
+     * 
+     * @return
+     */
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (retryAfterMs + 999) / 1000);
+    }
+}
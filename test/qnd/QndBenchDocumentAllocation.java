@@ -0,0 +1,119 @@
+package qnd;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lucene.engine.DocumentTemplate;
+import lucene.spec.CompiledField;
+import lucene.spec.FieldSpec;
+import lucene.spec.IndexSpec;
+import lucene.spec.Schema;
+
+import org.apache.lucene.analysis.core.SimpleAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+
+/**
+ * Compares bytes allocated per document when building documents with new
+ * {@link Field} instances versus reusing them via {@link DocumentTemplate}.
+ * Allocated bytes are measured with
+ * {@code com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ */
+public class QndBenchDocumentAllocation {
+
+    static final int NUM_DOCS = 200000;
+    static final int NUM_ROUNDS = 3;
+
+    static final com.sun.management.ThreadMXBean THREAD_MX =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static Schema buildSchema() {
+        IndexSpec spec = IndexSpec.newInstance("bench");
+        spec.field("id", FieldSpec.newInstance("id", FieldSpec.Type.ID));
+        spec.field("title", FieldSpec.newInstance("title", FieldSpec.Type.STRING));
+        spec.field("modified", FieldSpec.newInstance("modified", FieldSpec.Type.LONG));
+        spec.field("price", FieldSpec.newInstance("price", FieldSpec.Type.DOUBLE));
+        return Schema.compile(spec);
+    }
+
+    static List<Map<String, Object>> buildDocsData() {
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 1000; i++) {
+            Map<String, Object> docData = new HashMap<String, Object>();
+            docData.put("id", String.valueOf(i));
+            docData.put("title", "document number " + i);
+            docData.put("modified", System.currentTimeMillis());
+            docData.put("price", i * 1.5);
+            result.add(docData);
+        }
+        return result;
+    }
+
+    static Document buildNew(Schema schema, Map<String, Object> docData) {
+        Document doc = new Document();
+        for (Map.Entry<String, Object> entry : docData.entrySet()) {
+            CompiledField field = schema.compiledField(entry.getKey());
+            doc.add(field.newField(entry.getValue()));
+        }
+        return doc;
+    }
+
+    static Document buildReused(Schema schema, DocumentTemplate template,
+            Map<String, Object> docData) {
+        Document doc = template.reset(schema);
+        for (Map.Entry<String, Object> entry : docData.entrySet()) {
+            CompiledField field = schema.compiledField(entry.getKey());
+            doc.add(template.field(field, entry.getValue()));
+        }
+        return doc;
+    }
+
+    static void run(String name, Schema schema, List<Map<String, Object>> docsData, boolean reuse,
+            IndexWriter iw) throws Exception {
+        DocumentTemplate template = new DocumentTemplate();
+        long threadId = Thread.currentThread().getId();
+        long bytes1 = THREAD_MX.getThreadAllocatedBytes(threadId);
+        long t1 = System.nanoTime();
+        long checksum = 0;
+        for (int i = 0; i < NUM_DOCS; i++) {
+            Map<String, Object> docData = docsData.get(i % docsData.size());
+            Document doc = reuse ? buildReused(schema, template, docData) : buildNew(schema,
+                    docData);
+            if (iw != null) {
+                iw.updateDocument(new Term("id", (String) docData.get("id")), doc);
+            }
+            checksum += doc.getFields().size();
+        }
+        long duration = System.nanoTime() - t1;
+        long bytes = THREAD_MX.getThreadAllocatedBytes(threadId) - bytes1;
+        System.out.println(name + ": " + (bytes / NUM_DOCS) + " bytes/doc, "
+                + (duration / NUM_DOCS) + " ns/doc (checksum " + checksum + ")");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Schema schema = buildSchema();
+        List<Map<String, Object>> docsData = buildDocsData();
+        for (int round = 1; round <= NUM_ROUNDS; round++) {
+            System.out.println("Round " + round);
+            run("  build, new fields        ", schema, docsData, false, null);
+            run("  build, reused fields     ", schema, docsData, true, null);
+            for (boolean reuse : new boolean[] { false, true }) {
+                try (Directory dir = new RAMDirectory();
+                        IndexWriter iw = new IndexWriter(dir, new IndexWriterConfig(
+                                new SimpleAnalyzer()))) {
+                    run(reuse ? "  build+index, reused fields" : "  build+index, new fields   ",
+                            schema, docsData, reuse, iw);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package qnd;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import lucene.spec.CodecSpec;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.analysis.core.SimpleAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import util.Constants;
+
+/**
+ * Compares index size and stored-document retrieval latency of the
+ * {@code best_speed} and {@code best_compression} stored fields modes (see
+ * {@link CodecSpec}).
+ *
+ * <p>
+ * Usage: {@code QndBenchStoredFieldsCodec [corpus file]}, the corpus file
+ * has one document per line; a synthetic corpus is generated if omitted.
+ * </p>
+ */
+public class QndBenchStoredFieldsCodec {
+
+    static final int NUM_DOCS = 100000;
+    static final int NUM_LOOKUPS = 100000;
+    static final String[] WORDS = { "lucene", "server", "index", "search", "query", "document",
+            "field", "term", "writer", "reader", "commit", "merge", "segment", "codec",
+            "compression", "postings", "stored", "latency", "throughput", "replica" };
+
+    static List<String> loadCorpus(String[] args) throws Exception {
+        List<String> corpus = new ArrayList<String>();
+        if (args.length > 0) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(args[0]), Constants.UTF8))) {
+                String line;
+                while ((line = reader.readLine()) != null && corpus.size() < NUM_DOCS) {
+                    if (line.trim().length() > 0) {
+                        corpus.add(line);
+                    }
+                }
+            }
+            return corpus;
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < NUM_DOCS; i++) {
+            StringBuilder content = new StringBuilder();
+            for (int j = 0, n = 50 + random.nextInt(450); j < n; j++) {
+                content.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            corpus.add(content.toString());
+        }
+        return corpus;
+    }
+
+    static long build(File path, String storedFields, List<String> corpus) throws Exception {
+        IndexWriterConfig iwc = new IndexWriterConfig(new SimpleAnalyzer());
+        iwc.setCodec(CodecSpec.newInstance().storedFields(storedFields).newCodec());
+        long t1 = System.currentTimeMillis();
+        try (Directory dir = FSDirectory.open(path.toPath());
+                IndexWriter iw = new IndexWriter(dir, iwc)) {
+            for (int i = 0, n = corpus.size(); i < n; i++) {
+                Document doc = new Document();
+                doc.add(new StringField("id", String.valueOf(i), Field.Store.YES));
+                doc.add(new TextField("content", corpus.get(i), Field.Store.NO));
+                doc.add(new StoredField("content_stored", corpus.get(i)));
+                iw.addDocument(doc);
+            }
+            iw.forceMerge(1);
+            iw.commit();
+        }
+        return System.currentTimeMillis() - t1;
+    }
+
+    static double lookup(File path, int numDocs) throws Exception {
+        Random random = new Random(2);
+        try (Directory dir = FSDirectory.open(path.toPath());
+                DirectoryReader reader = DirectoryReader.open(dir)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            // warm up
+            for (int i = 0; i < NUM_LOOKUPS / 10; i++) {
+                searcher.doc(random.nextInt(numDocs));
+            }
+            long t1 = System.nanoTime();
+            for (int i = 0; i < NUM_LOOKUPS; i++) {
+                searcher.doc(random.nextInt(numDocs));
+            }
+            return (System.nanoTime() - t1) / 1000.0 / NUM_LOOKUPS;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> corpus = loadCorpus(args);
+        File tempDir = Files.createTempDirectory("bench-codec").toFile();
+        try {
+            for (String mode : new String[] { CodecSpec.STORED_FIELDS_BEST_SPEED,
+                    CodecSpec.STORED_FIELDS_BEST_COMPRESSION }) {
+                File path = new File(tempDir, mode);
+                long buildMs = build(path, mode, corpus);
+                long size = FileUtils.sizeOfDirectory(path);
+                double lookupMicros = lookup(path, corpus.size());
+                System.out.println(String.format(
+                        "%-16s: %d docs, build %.2f sec, size %.2f MB, doc() %.1f us/lookup",
+                        mode, corpus.size(), buildMs / 1000.0, size / 1048576.0, lookupMicros));
+            }
+        } finally {
+            FileUtils.deleteQuietly(tempDir);
+        }
+    }
+}
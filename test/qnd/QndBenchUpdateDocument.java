@@ -0,0 +1,88 @@
+package qnd;
+
+import java.util.Random;
+
+import org.apache.lucene.analysis.core.SimpleAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+
+/**
+ * Compares bulk-load throughput of "delete by BooleanQuery + add" (old
+ * engine behavior) versus "updateDocument by id term" (single-id indices).
+ */
+public class QndBenchUpdateDocument {
+
+    static final int NUM_DOCS = 100000;
+    static final int NUM_ROUNDS = 3;
+    static final String[] WORDS = { "lucene", "server", "index", "search", "query", "document",
+            "field", "term", "writer", "reader", "commit", "merge" };
+
+    static Document buildDoc(Random random, int id) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            content.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        Document doc = new Document();
+        doc.add(new StringField("id", String.valueOf(id), Field.Store.YES));
+        doc.add(new LongField("modified", System.currentTimeMillis(), Field.Store.NO));
+        doc.add(new TextField("content", content.toString(), Field.Store.NO));
+        return doc;
+    }
+
+    static long runDeleteByQuery(IndexWriter iw, Random random) throws Exception {
+        long t1 = System.currentTimeMillis();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            BooleanQuery q = new BooleanQuery();
+            q.add(new TermQuery(new Term("id", String.valueOf(i))), Occur.FILTER);
+            iw.deleteDocuments(q);
+            iw.addDocument(buildDoc(random, i));
+        }
+        iw.commit();
+        return System.currentTimeMillis() - t1;
+    }
+
+    static long runUpdateByTerm(IndexWriter iw, Random random) throws Exception {
+        long t1 = System.currentTimeMillis();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            iw.updateDocument(new Term("id", String.valueOf(i)), buildDoc(random, i));
+        }
+        iw.commit();
+        return System.currentTimeMillis() - t1;
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int round = 1; round <= NUM_ROUNDS; round++) {
+            for (boolean useTerm : new boolean[] { false, true }) {
+                Random random = new Random(round);
+                try (Directory dir = new RAMDirectory();
+                        IndexWriter iw = new IndexWriter(dir, new IndexWriterConfig(
+                                new SimpleAnalyzer()))) {
+                    // initial load, then overwrite every document once
+                    for (int i = 0; i < NUM_DOCS; i++) {
+                        iw.addDocument(buildDoc(random, i));
+                    }
+                    iw.commit();
+                    long duration = useTerm ? runUpdateByTerm(iw, random) : runDeleteByQuery(
+                            iw, random);
+                    System.out.println("Round " + round + " - "
+                            + (useTerm ? "updateDocument(Term)     " : "deleteDocuments(Query)+add")
+                            + ": " + NUM_DOCS + " docs in " + duration / 1000.0 + " sec ("
+                            + (NUM_DOCS * 1000L / Math.max(duration, 1)) + " docs/sec), numDocs="
+                            + iw.numDocs());
+                }
+            }
+        }
+    }
+
+}